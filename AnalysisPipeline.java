@@ -0,0 +1,276 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * AnalysisPipeline class analyses every position of the games of a PGN file on several threads.
+ *
+ * One thread reads the games with a PgnReader, worker threads replay each game and hand every position
+ * after the opening plies to their Analyzer, and one thread writes a line per position as results arrive.
+ * The stages are joined by bounded queues, so a slow stage holds the others back instead of filling the heap,
+ * and memory use stays flat however large the file is. Lines come out in the order the workers finish,
+ * each one carries the game number and ply so they can be sorted afterwards.
+ *
+ * Usage: java AnalysisPipeline [-threads N] [-depth N] [-nodes N] [-skip N] games.pgn results.tsv
+ * with -depth 0 for the static evaluation only.
+ */
+public class AnalysisPipeline {
+    private static final int QUEUE_SIZE = 1024;
+    // ends a queue, compared by identity
+    private static final Job END_OF_GAMES = new Job(0, null);
+    private static final String END_OF_RESULTS = new String("end");
+
+    /**
+     * Analyzer interface scores one position, each worker thread has its own
+     */
+    public interface Analyzer {
+        /**
+         * @param position the position, it must be the same position when the method returns
+         * @return the result columns written after the FEN, tab separated
+         */
+        String analyze(Position position);
+    }
+
+    private final int threads;
+    private final Supplier<Analyzer> analyzers;
+    private int skipPlies;
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong positions = new AtomicLong();
+    private final AtomicLong badGames = new AtomicLong();
+
+    /**
+     * Constructor for the AnalysisPipeline class
+     * @param threads the number of worker threads
+     * @param analyzers makes the analyzer of each worker
+     */
+    public AnalysisPipeline(int threads, Supplier<Analyzer> analyzers) {
+        this.threads = Math.max(1, threads);
+        this.analyzers = analyzers;
+    }
+
+    /**
+     * @return analyzers that give the static evaluation from the side to move's point of view
+     */
+    public static Supplier<Analyzer> evaluation() {
+        return () -> position -> Integer.toString(Evaluation.evaluate(position));
+    }
+
+    /**
+     * @param depth the search depth
+     * @param nodeLimit the node limit per position
+     * @param hashMb the transposition table size of each worker
+     * @return analyzers that search each position and give the score and the best move; the moves that
+     * led to the position are not seen, so a repetition of an earlier position is not scored as a draw
+     */
+    public static Supplier<Analyzer> search(int depth, long nodeLimit, int hashMb) {
+        return () -> {
+            // one search per worker, reused for every position so its pawn table and move lists are kept
+            TranspositionTable table = new TranspositionTable(hashMb);
+            Position searched = new Position();
+            Search search = new Search(searched, table);
+            return position -> {
+                CompactPosition.of(position).copyTo(searched);
+                // entries of earlier positions become the first to be replaced
+                table.newSearch();
+                SearchResult result = search.search(depth, nodeLimit);
+                return result.getScore() + "\t" + Move.toString(result.getBestMove());
+            };
+        };
+    }
+
+    /**
+     * Leave out the first plies of every game, which are mostly book moves
+     * @param skipPlies the number of plies
+     */
+    public void setSkipPlies(int skipPlies) {
+        this.skipPlies = Math.max(0, skipPlies);
+    }
+
+    public long getGames() {
+        return games.get();
+    }
+
+    public long getPositions() {
+        return positions.get();
+    }
+
+    /**
+     * @return the number of games with an illegal or unreadable move, they are analysed up to that move
+     */
+    public long getBadGames() {
+        return badGames.get();
+    }
+
+    /**
+     * Analyse all the games of a reader
+     * @param reader the games
+     * @param out receives one line per position: game number, ply, FEN and the analyzer's columns
+     * @throws IOException if the games cannot be read or the results cannot be written
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void run(PgnReader reader, Writer out) throws IOException, InterruptedException {
+        BlockingQueue<Job> jobs = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        BlockingQueue<String> results = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        AtomicReference<IOException> writeError = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (String line = results.take(); line != END_OF_RESULTS; line = results.take()) {
+                    // after a failed write the lines are still taken so the workers never block
+                    if (writeError.get() == null) {
+                        try {
+                            out.write(line);
+                        } catch (IOException e) {
+                            writeError.set(e);
+                        }
+                    }
+                }
+                if (writeError.get() == null) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                writeError.set(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "analysis-writer");
+        writer.start();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> work(jobs, results), "analysis-worker-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        try {
+            long number = 0;
+            for (PgnGame game = reader.next(); game != null && writeError.get() == null; game = reader.next()) {
+                jobs.put(new Job(++number, game));
+            }
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                jobs.put(END_OF_GAMES);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            results.put(END_OF_RESULTS);
+            writer.join();
+        }
+        if (writeError.get() != null) {
+            throw writeError.get();
+        }
+    }
+
+    private void work(BlockingQueue<Job> jobs, BlockingQueue<String> results) {
+        Analyzer analyzer = analyzers.get();
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        try {
+            for (Job job = jobs.take(); job != END_OF_GAMES; job = jobs.take()) {
+                games.incrementAndGet();
+                try {
+                    analyse(job.game, job.number, analyzer, buffer, results);
+                } catch (RuntimeException e) {
+                    // a broken game must not stop the worker, the reader would wait for it forever
+                    badGames.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void analyse(PgnGame game, long number, Analyzer analyzer, int[] buffer, BlockingQueue<String> results)
+            throws InterruptedException {
+        Position position;
+        try {
+            position = game.startPosition();
+        } catch (IllegalArgumentException e) {
+            badGames.incrementAndGet();
+            return;
+        }
+        int ply = 0;
+        for (String san : game.sanMoves()) {
+            int move = Move.parseSan(position, san, buffer);
+            if (move == Move.NONE) {
+                badGames.incrementAndGet();
+                return;
+            }
+            position.makeMove(move);
+            ply++;
+            if (ply > skipPlies) {
+                String line = number + "\t" + ply + "\t" + position.toFen() + "\t" + analyzer.analyze(position) + "\n";
+                positions.incrementAndGet();
+                results.put(line);
+            }
+        }
+    }
+
+    /**
+     * Job class is a game with its number in the file
+     */
+    private static final class Job {
+        final long number;
+        final PgnGame game;
+
+        Job(long number, PgnGame game) {
+            this.number = number;
+            this.game = game;
+        }
+    }
+
+    /**
+     * Analyse a PGN file from the command line and print the throughput
+     * @param args [-threads N] [-depth N] [-nodes N] [-skip N] games.pgn results.tsv
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = 0;
+        long nodes = Long.MAX_VALUE;
+        int skip = 0;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-nodes":
+                    nodes = Long.parseLong(args[++i]);
+                    break;
+                case "-skip":
+                    skip = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+                    break;
+            }
+        }
+        if (files.size() != 2) {
+            throw new IllegalArgumentException("Usage: java AnalysisPipeline [options] games.pgn results.tsv");
+        }
+        AnalysisPipeline pipeline = new AnalysisPipeline(threads, depth > 0 ? search(depth, nodes, 16) : evaluation());
+        pipeline.setSkipPlies(skip);
+        long start = System.nanoTime();
+        try (PgnReader reader = new PgnReader(Paths.get(files.get(0)));
+                BufferedWriter out = Files.newBufferedWriter(Paths.get(files.get(1)))) {
+            pipeline.run(reader, out);
+            double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+            System.out.printf("%d games, %d positions in %.1f s: %.0f games/s, %.0f positions/s%n", pipeline.getGames(),
+                    pipeline.getPositions(), seconds, pipeline.getGames() / seconds, pipeline.getPositions() / seconds);
+            System.out.println("Games with a bad move: " + pipeline.getBadGames()
+                    + ", games too long to read: " + reader.getSkippedGames());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * AnalysisResult class holds the analysis of one position submitted to a BatchAnalyzer:
+ * the position, its best lines with their scores and principal variations, and what the search cost.
+ */
+public final class AnalysisResult {
+    private final long id;
+    private final CompactPosition position;
+    private final List<SearchResult> lines;
+    private final long nodes;
+    private final long elapsedNanos;
+
+    /**
+     * Constructor for the AnalysisResult class
+     * @param id the number the position was given when it was submitted, counting from 1
+     * @param position the position analysed
+     * @param lines the best lines of the last completed depth, best first
+     * @param nodes the number of nodes searched
+     * @param elapsedNanos the time the search took, in nanoseconds
+     */
+    public AnalysisResult(long id, CompactPosition position, SearchResult[] lines, long nodes, long elapsedNanos) {
+        this.id = id;
+        this.position = position;
+        this.lines = Collections.unmodifiableList(Arrays.asList(lines.clone()));
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public CompactPosition getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the lines, best first; empty when the position has no legal move
+     */
+    public List<SearchResult> getLines() {
+        return lines;
+    }
+
+    /**
+     * @return the move of the best line, or Move.NONE when there is no legal move
+     */
+    public int getBestMove() {
+        return lines.isEmpty() ? Move.NONE : lines.get(0).getBestMove();
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(position.toFen());
+        for (int i = 0; i < lines.size(); i++) {
+            text.append("\n  ").append(i + 1).append(". ").append(lines.get(i));
+        }
+        return text.toString();
+    }
+}
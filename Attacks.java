@@ -0,0 +1,345 @@
+/**
+ * Attacks class gives the squares attacked by each kind of chess piece on a bitboard.
+ * Squares are numbered from 0 (a1) to 63 (h8), so bit n of a bitboard stands for square n.
+ *
+ * All answers come from tables built once when the class is loaded. Knight, king and pawn attacks
+ * are one entry per square. Rook and bishop attacks use magic bitboards: the blockers on the lines
+ * of a square are multiplied by a magic number and shifted, which gives a unique index into a table
+ * of attack sets, so a slider query is a multiply, a shift and an array load.
+ * The tables also hold the squares between two squares and the whole line through them, used for pins.
+ *
+ * The magic numbers below were found with findMagic; run "java Attacks" to search for a new set.
+ */
+public final class Attacks {
+    // masks used to stop shifts from wrapping around the edge of the board
+    static final long FILE_A = 0x0101010101010101L;
+    static final long FILE_B = FILE_A << 1;
+    static final long FILE_G = FILE_A << 6;
+    static final long FILE_H = FILE_A << 7;
+    static final long NOT_A = ~FILE_A;
+    static final long NOT_AB = ~(FILE_A | FILE_B);
+    static final long NOT_H = ~FILE_H;
+    static final long NOT_GH = ~(FILE_G | FILE_H);
+
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    private static final long[][] PAWN = new long[2][64];
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    // relevant blocker squares of each square, the edge squares never change the attacks
+    private static final long[] ROOK_MASK = new long[64];
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final long[] ROOK_MAGIC = {
+        0x2080002080400010L, 0x00C0002001401000L, 0x2100110008402002L, 0x0880080081041000L,
+        0x0200020020041008L, 0x2300040008010012L, 0x0C00283004008201L, 0x0180010000407A80L,
+        0x0168800080400020L, 0x0010400040201000L, 0x1001002001001048L, 0x1001002408100100L,
+        0x0801000408010012L, 0x4001000209000400L, 0x08A20004C8020001L, 0x2002801145002280L,
+        0x0080860021004200L, 0x001000C009402002L, 0x00B0002004002800L, 0x100A808010020800L,
+        0x9400808004000800L, 0x0090808004000200L, 0x0000040010810208L, 0x2000020000448534L,
+        0x4104400480008033L, 0x0000810100204000L, 0x0440430900200010L, 0x4600240900100100L,
+        0x0804080100110004L, 0x0001000300080400L, 0x0004084400011002L, 0x0023040200008041L,
+        0x0580050043002080L, 0x0400804002802008L, 0x0001002001004010L, 0x0080200A02001040L,
+        0x600D480280802400L, 0x400B800201800C00L, 0x2408211004004208L, 0x0200211082000844L,
+        0x0020804010208000L, 0x5030004020104000L, 0xA042084080220010L, 0x4088080010008080L,
+        0x5002080100110004L, 0x2012002010040400L, 0x0040318210440008L, 0x0120941040820001L,
+        0x1000800100402100L, 0x0040002010004840L, 0x8108450020001900L, 0x0200204008120200L,
+        0x0080800C00180180L, 0x0885000400420900L, 0x230802011008C400L, 0x3801740891432200L,
+        0x0A00250212024082L, 0x0000882040001105L, 0x0042102082000A42L, 0xC401210810000501L,
+        0x0241001002480005L, 0x0081000400880241L, 0x0000009008024124L, 0x0048122980410402L
+    };
+    private static final long[] BISHOP_MAGIC = {
+        0x1862221006220044L, 0x2104A14202020060L, 0x2804081220444001L, 0x2102408900010001L,
+        0x0002021000040002L, 0x08C3100805004300L, 0x1084040124920050L, 0x8900440043382010L,
+        0x2401410802140040L, 0x0901200454208020L, 0x0000090216020541L, 0x1283844040800804L,
+        0x0521840420000803L, 0x0800010402400C40L, 0x0000408E10100404L, 0x0009810048420800L,
+        0x2004211004286808L, 0x13080A1001380080L, 0x0008801004220020L, 0x0024000802480800L,
+        0x1461001190400401L, 0x0020400200500440L, 0x0003000409019000L, 0x000C20820D011802L,
+        0x000804002164100CL, 0x00048400A0011404L, 0x5018110308044100L, 0x0048A00804010020L,
+        0x0007840000802000L, 0x8808A20075004220L, 0x8014040000822100L, 0x110C03000E251101L,
+        0x0081094820202010L, 0x0008041000044100L, 0x00C1202808940800L, 0x8108100821040400L,
+        0x1240010010010041L, 0x0810004080011000L, 0x00A20C0401804A00L, 0x40014C0020050500L,
+        0x5805082012042480L, 0x2004022144031000L, 0x2082002024204808L, 0x0800004200800800L,
+        0x0410020204100A02L, 0x80C1204080804101L, 0x0010104E01800042L, 0x000800810C400208L,
+        0x100080B008201210L, 0x8000440605112101L, 0x000202008C440040L, 0x9004002210442200L,
+        0x2032014088222045L, 0x0C00202222C20000L, 0x0140040820A50100L, 0x0222104C29024018L,
+        0x0200110121202004L, 0x0800104200B00802L, 0x0000401424020801L, 0x4000000004208840L,
+        0x0802E00040104100L, 0x03000020A0424080L, 0x0011C00408188121L, 0x0848020822040013L
+    };
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final int[] BISHOP_SHIFT = new int[64];
+    // start of each square's slice in the shared attack arrays
+    private static final int[] ROOK_OFFSET = new int[64];
+    private static final int[] BISHOP_OFFSET = new int[64];
+    private static final long[] ROOK_ATTACKS;
+    private static final long[] BISHOP_ATTACKS;
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            long b = 1L << sq;
+            KNIGHT[sq] = ((b << 17) & NOT_A) | ((b << 15) & NOT_H)
+                    | ((b << 10) & NOT_AB) | ((b << 6) & NOT_GH)
+                    | ((b >>> 17) & NOT_H) | ((b >>> 15) & NOT_A)
+                    | ((b >>> 10) & NOT_GH) | ((b >>> 6) & NOT_AB);
+            long sides = ((b << 1) & NOT_A) | ((b >>> 1) & NOT_H);
+            long row = b | sides;
+            KING[sq] = sides | (row << 8) | (row >>> 8);
+            PAWN[Position.WHITE][sq] = ((b << 7) & NOT_H) | ((b << 9) & NOT_A);
+            PAWN[Position.BLACK][sq] = ((b >>> 9) & NOT_H) | ((b >>> 7) & NOT_A);
+            ROOK_MASK[sq] = relevantMask(sq, true);
+            BISHOP_MASK[sq] = relevantMask(sq, false);
+        }
+        int rookSize = 0;
+        int bishopSize = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            ROOK_OFFSET[sq] = rookSize;
+            ROOK_SHIFT[sq] = 64 - Long.bitCount(ROOK_MASK[sq]);
+            rookSize += 1 << Long.bitCount(ROOK_MASK[sq]);
+            BISHOP_OFFSET[sq] = bishopSize;
+            BISHOP_SHIFT[sq] = 64 - Long.bitCount(BISHOP_MASK[sq]);
+            bishopSize += 1 << Long.bitCount(BISHOP_MASK[sq]);
+        }
+        ROOK_ATTACKS = new long[rookSize];
+        BISHOP_ATTACKS = new long[bishopSize];
+        for (int sq = 0; sq < 64; sq++) {
+            fillSlice(sq, true, ROOK_MASK[sq], ROOK_MAGIC[sq], ROOK_SHIFT[sq], ROOK_ATTACKS, ROOK_OFFSET[sq]);
+            fillSlice(sq, false, BISHOP_MASK[sq], BISHOP_MAGIC[sq], BISHOP_SHIFT[sq],
+                    BISHOP_ATTACKS, BISHOP_OFFSET[sq]);
+        }
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                int df = (b & 7) - (a & 7);
+                int dr = (b >>> 3) - (a >>> 3);
+                if (a == b || !(df == 0 || dr == 0 || Math.abs(df) == Math.abs(dr))) {
+                    continue;
+                }
+                int stepFile = Integer.signum(df);
+                int stepRank = Integer.signum(dr);
+                BETWEEN[a][b] = ray(a, 1L << b, stepFile, stepRank) & ~(1L << b);
+                LINE[a][b] = ray(a, 0L, stepFile, stepRank) | ray(a, 0L, -stepFile, -stepRank) | (1L << a);
+            }
+        }
+    }
+
+    private Attacks() {
+    }
+
+    /**
+     * Return the squares attacked by a pawn
+     * @param color the color of the pawn
+     * @param square the square of the pawn
+     * @return bitboard of the attacked squares
+     */
+    public static long pawnAttacks(int color, int square) {
+        return PAWN[color][square];
+    }
+
+    /**
+     * Return the squares attacked by a knight
+     * @param square the square of the knight
+     * @return bitboard of the attacked squares
+     */
+    public static long knightAttacks(int square) {
+        return KNIGHT[square];
+    }
+
+    /**
+     * Return the squares attacked by a king
+     * @param square the square of the king
+     * @return bitboard of the attacked squares
+     */
+    public static long kingAttacks(int square) {
+        return KING[square];
+    }
+
+    /**
+     * Return the squares attacked by a bishop, stopping at the first blocker on each diagonal
+     * @param square the square of the bishop
+     * @param occupied bitboard of all occupied squares
+     * @return bitboard of the attacked squares
+     */
+    public static long bishopAttacks(int square, long occupied) {
+        int index = (int) (((occupied & BISHOP_MASK[square]) * BISHOP_MAGIC[square]) >>> BISHOP_SHIFT[square]);
+        return BISHOP_ATTACKS[BISHOP_OFFSET[square] + index];
+    }
+
+    /**
+     * Return the squares attacked by a rook, stopping at the first blocker on each line
+     * @param square the square of the rook
+     * @param occupied bitboard of all occupied squares
+     * @return bitboard of the attacked squares
+     */
+    public static long rookAttacks(int square, long occupied) {
+        int index = (int) (((occupied & ROOK_MASK[square]) * ROOK_MAGIC[square]) >>> ROOK_SHIFT[square]);
+        return ROOK_ATTACKS[ROOK_OFFSET[square] + index];
+    }
+
+    /**
+     * Return the squares attacked by a queen
+     * @param square the square of the queen
+     * @param occupied bitboard of all occupied squares
+     * @return bitboard of the attacked squares
+     */
+    public static long queenAttacks(int square, long occupied) {
+        return bishopAttacks(square, occupied) | rookAttacks(square, occupied);
+    }
+
+    /**
+     * Return the squares strictly between two squares on the same rank, file or diagonal
+     * @param a the first square
+     * @param b the second square
+     * @return bitboard of the squares in between, empty if the squares are not aligned
+     */
+    public static long between(int a, int b) {
+        return BETWEEN[a][b];
+    }
+
+    /**
+     * Return the full line (rank, file or diagonal) running through two squares
+     * @param a the first square
+     * @param b the second square
+     * @return bitboard of the whole line including both squares, empty if the squares are not aligned
+     */
+    public static long line(int a, int b) {
+        return LINE[a][b];
+    }
+
+    /**
+     * Return the squares whose occupancy can change the attacks of a slider, the last square
+     * of each ray is left out because a piece there never blocks anything behind it
+     */
+    private static long relevantMask(int square, boolean rook) {
+        long mask = 0L;
+        int[][] directions = rook ? new int[][] {{1, 0}, {-1, 0}, {0, 1}, {0, -1}}
+                : new int[][] {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+        for (int[] d : directions) {
+            int f = (square & 7) + d[0];
+            int r = (square >>> 3) + d[1];
+            while (f + d[0] >= 0 && f + d[0] < 8 && r + d[1] >= 0 && r + d[1] < 8) {
+                mask |= 1L << (r * 8 + f);
+                f += d[0];
+                r += d[1];
+            }
+        }
+        return mask;
+    }
+
+    private static long slowAttacks(int square, long occupied, boolean rook) {
+        if (rook) {
+            return ray(square, occupied, 1, 0) | ray(square, occupied, -1, 0)
+                    | ray(square, occupied, 0, 1) | ray(square, occupied, 0, -1);
+        }
+        return ray(square, occupied, 1, 1) | ray(square, occupied, 1, -1)
+                | ray(square, occupied, -1, 1) | ray(square, occupied, -1, -1);
+    }
+
+    /**
+     * Fill the table slice of one square using its magic number
+     * @throws IllegalStateException if the magic maps two subsets with different attacks to one slot
+     */
+    private static void fillSlice(int square, boolean rook, long mask, long magic, int shift,
+                                  long[] table, int offset) {
+        boolean[] filled = new boolean[1 << (64 - shift)];
+        // walk all subsets of the mask
+        long subset = 0L;
+        do {
+            int index = (int) ((subset * magic) >>> shift);
+            long attacks = slowAttacks(square, subset, rook);
+            if (filled[index] && table[offset + index] != attacks) {
+                throw new IllegalStateException("Bad magic for square " + square);
+            }
+            filled[index] = true;
+            table[offset + index] = attacks;
+            subset = (subset - mask) & mask;
+        } while (subset != 0);
+    }
+
+    /**
+     * Try random sparse numbers until one maps every blocker subset of the square
+     * to a slot holding its attacks without a harmful collision
+     */
+    private static long findMagic(int square, boolean rook, long mask, int shift, long[] seed) {
+        int size = 1 << Long.bitCount(mask);
+        long[] table = new long[size];
+        long[] occupancies = new long[size];
+        long[] attacks = new long[size];
+        // walk all subsets of the mask
+        long subset = 0L;
+        for (int i = 0; i < size; i++) {
+            occupancies[i] = subset;
+            attacks[i] = slowAttacks(square, subset, rook);
+            subset = (subset - mask) & mask;
+        }
+        int[] used = new int[size];
+        for (int attempt = 1; ; attempt++) {
+            long magic = random(seed) & random(seed) & random(seed);
+            if (Long.bitCount((mask * magic) >>> 56) < 6) {
+                continue;
+            }
+            boolean ok = true;
+            for (int i = 0; i < size && ok; i++) {
+                int index = (int) ((occupancies[i] * magic) >>> shift);
+                if (used[index] != attempt) {
+                    used[index] = attempt;
+                    table[index] = attacks[i];
+                } else if (table[index] != attacks[i]) {
+                    ok = false;
+                }
+            }
+            if (ok) {
+                return magic;
+            }
+        }
+    }
+
+    /**
+     * Search for a new set of magic numbers and print them as Java arrays
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        long[] seed = {System.nanoTime() | 1};
+        for (boolean rook : new boolean[] {true, false}) {
+            StringBuilder text = new StringBuilder(rook ? "ROOK_MAGIC" : "BISHOP_MAGIC");
+            for (int sq = 0; sq < 64; sq++) {
+                long mask = rook ? ROOK_MASK[sq] : BISHOP_MASK[sq];
+                long magic = findMagic(sq, rook, mask, 64 - Long.bitCount(mask), seed);
+                text.append(sq % 4 == 0 ? "\n    " : " ").append(String.format("0x%016XL,", magic));
+            }
+            System.out.println(text);
+        }
+    }
+
+    // xorshift64 generator
+    private static long random(long[] seed) {
+        long x = seed[0];
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed[0] = x;
+        return x;
+    }
+
+    /**
+     * Walk from a square in one direction until the edge of the board or the first blocker
+     * @param square the starting square
+     * @param occupied bitboard of all occupied squares
+     * @param df the file step
+     * @param dr the rank step
+     * @return bitboard of the squares reached, including the blocker
+     */
+    static long ray(int square, long occupied, int df, int dr) {
+        long attacks = 0L;
+        int f = (square & 7) + df;
+        int r = (square >>> 3) + dr;
+        while (f >= 0 && f < 8 && r >= 0 && r < 8) {
+            long b = 1L << (r * 8 + f);
+            attacks |= b;
+            if ((occupied & b) != 0) {
+                break;
+            }
+            f += df;
+            r += dr;
+        }
+        return attacks;
+    }
+}
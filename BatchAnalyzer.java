@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * BatchAnalyzer class analyses positions for an analysis service: each submitted position gets its best
+ * few lines (MultiPV) with scores and principal variations, searched within a depth, node and time limit.
+ *
+ * Positions wait in one queue and a fixed number of worker threads take them in order, each searching
+ * one position at a time with its own Search and Position, which it reuses for every position. The workers
+ * either share one transposition table or each have their own. submit hands back a future that completes
+ * as soon as its position is done, so results arrive one by one without waiting for the whole batch;
+ * analyzeAll runs a whole list and calls back as each one completes.
+ *
+ * The caller's positions are never changed: a snapshot is taken when a position is submitted,
+ * so the moves that led to it are not seen and a repetition of an earlier position is not scored as a draw.
+ *
+ * Usage: java BatchAnalyzer [-threads N] [-depth N] [-nodes N] [-movetime MS] [-multipv N] [-hash MB] [-shared]
+ * positions.txt analyses one FEN per line and prints the positions per second.
+ */
+public class BatchAnalyzer implements AutoCloseable {
+    // ends the queue, compared by identity
+    private static final Job END = new Job(0, null, 0, 0, null, 0, null);
+
+    private final BlockingQueue<Job> jobs = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile int depth = ComputerPlayer.DEFAULT_DEPTH;
+    private volatile long nodeLimit = Long.MAX_VALUE;
+    private volatile TimeControl timeControl = TimeControl.INFINITE;
+    private volatile int multiPv = 1;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong nodes = new AtomicLong();
+    // System.nanoTime of the first submission and of the latest completion, 0 before them
+    private final AtomicLong firstSubmitTime = new AtomicLong();
+    private volatile long lastCompletionTime;
+    private boolean closed;
+
+    /**
+     * Constructor for the BatchAnalyzer class
+     * @param threads the number of worker threads, at least 1
+     * @param hashMb the transposition table size, of the shared table or of each worker's table
+     * @param sharedTable true for one table shared by all the workers, false for one table per worker
+     */
+    public BatchAnalyzer(int threads, int hashMb, boolean sharedTable) {
+        TranspositionTable shared = sharedTable ? new TranspositionTable(hashMb) : null;
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            TranspositionTable table = shared != null ? shared : new TranspositionTable(hashMb);
+            Thread worker = new Thread(() -> work(table), "batch-analyzer-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Set the search depth of the positions submitted from now on
+     * @param depth the depth in plies
+     */
+    public void setDepth(int depth) {
+        this.depth = Math.max(1, Math.min(depth, Search.MAX_PLY));
+    }
+
+    /**
+     * Set the node limit of the positions submitted from now on
+     * @param nodeLimit the number of nodes after which a search stops
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Set the time each position submitted from now on may take
+     * @param moveTimeMs the time in milliseconds, 0 for no time limit
+     */
+    public void setMoveTime(long moveTimeMs) {
+        this.timeControl = moveTimeMs > 0 ? TimeControl.moveTime(moveTimeMs) : TimeControl.INFINITE;
+    }
+
+    /**
+     * Set how many best lines the positions submitted from now on get
+     * @param multiPv the number of lines, at least 1
+     */
+    public void setMultiPv(int multiPv) {
+        this.multiPv = Math.max(1, multiPv);
+    }
+
+    /**
+     * Queue a position for analysis
+     * @param position the position, it is not changed and may be changed as soon as the method returns
+     * @return the future result, completed by a worker thread when the position is done
+     */
+    public CompletableFuture<AnalysisResult> submit(Position position) {
+        CompletableFuture<AnalysisResult> future = new CompletableFuture<>();
+        Job job = new Job(nextId.getAndIncrement(), CompactPosition.of(position), depth, nodeLimit, timeControl,
+                multiPv, future);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("BatchAnalyzer is closed");
+            }
+            firstSubmitTime.compareAndSet(0, System.nanoTime());
+            jobs.add(job);
+        }
+        return future;
+    }
+
+    /**
+     * Analyse a list of positions and wait for all of them
+     * @param positions the positions, they are not changed
+     * @param onResult called on a worker thread as each position completes, in the order they complete, or null
+     * @return the results in the order of the positions
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<AnalysisResult> analyzeAll(List<Position> positions, Consumer<AnalysisResult> onResult)
+            throws InterruptedException {
+        List<CompletableFuture<AnalysisResult>> futures = new ArrayList<>();
+        for (Position position : positions) {
+            CompletableFuture<AnalysisResult> future = submit(position);
+            futures.add(onResult == null ? future : future.thenApply(result -> {
+                onResult.accept(result);
+                return result;
+            }));
+        }
+        List<AnalysisResult> results = new ArrayList<>();
+        for (CompletableFuture<AnalysisResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Analysis failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the number of positions analysed so far
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return the number of positions waiting for a worker
+     */
+    public int getQueued() {
+        return jobs.size();
+    }
+
+    /**
+     * @return the nodes searched for all the positions analysed so far
+     */
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    /**
+     * @return the positions analysed per second, from the first submission to the latest completion
+     */
+    public double getPositionsPerSecond() {
+        long start = firstSubmitTime.get();
+        long end = lastCompletionTime;
+        return start == 0 || end <= start ? 0 : completed.get() * 1e9 / (end - start);
+    }
+
+    /**
+     * Let the workers finish the queued positions and stop them. When the calling thread is interrupted
+     * while it waits, it stops waiting and keeps its interrupt flag set; the workers still finish the queue.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = 0; i < workers.size(); i++) {
+                jobs.add(END);
+            }
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work(TranspositionTable table) {
+        Position position = new Position();
+        Search search = new Search(position, table);
+        try {
+            for (Job job = jobs.take(); job != END; job = jobs.take()) {
+                try {
+                    job.position.copyTo(position);
+                    // entries of earlier positions become the first to be replaced
+                    table.newSearch();
+                    search.setMultiPv(job.multiPv);
+                    long start = System.nanoTime();
+                    SearchResult best = search.search(job.depth, job.nodeLimit, job.timeControl);
+                    long end = System.nanoTime();
+                    AnalysisResult result = new AnalysisResult(job.id, job.position, search.getLines(),
+                            best.getNodes(), end - start);
+                    nodes.addAndGet(best.getNodes());
+                    completed.incrementAndGet();
+                    lastCompletionTime = end;
+                    job.future.complete(result);
+                } catch (RuntimeException e) {
+                    // a failed position must not stop the worker, the positions behind it would never complete
+                    job.future.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Job class is a position waiting for analysis with the limits it was submitted with
+     */
+    private static final class Job {
+        final long id;
+        final CompactPosition position;
+        final int depth;
+        final long nodeLimit;
+        final TimeControl timeControl;
+        final int multiPv;
+        final CompletableFuture<AnalysisResult> future;
+
+        Job(long id, CompactPosition position, int depth, long nodeLimit, TimeControl timeControl, int multiPv,
+                CompletableFuture<AnalysisResult> future) {
+            this.id = id;
+            this.position = position;
+            this.depth = depth;
+            this.nodeLimit = nodeLimit;
+            this.timeControl = timeControl;
+            this.multiPv = multiPv;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Analyse the positions of a file, one FEN per line, printing each result as it completes
+     * @param args [-threads N] [-depth N] [-nodes N] [-movetime MS] [-multipv N] [-hash MB] [-shared] positions.txt
+     * @throws IOException if the file cannot be read
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = ComputerPlayer.DEFAULT_DEPTH;
+        long nodes = Long.MAX_VALUE;
+        long moveTime = 0;
+        int multiPv = 1;
+        int hash = TranspositionTable.DEFAULT_SIZE_MB;
+        boolean shared = false;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-nodes":
+                    nodes = Long.parseLong(args[++i]);
+                    break;
+                case "-movetime":
+                    moveTime = Long.parseLong(args[++i]);
+                    break;
+                case "-multipv":
+                    multiPv = Integer.parseInt(args[++i]);
+                    break;
+                case "-hash":
+                    hash = Integer.parseInt(args[++i]);
+                    break;
+                case "-shared":
+                    shared = true;
+                    break;
+                default:
+                    file = args[i];
+                    break;
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Usage: java BatchAnalyzer [options] positions.txt");
+        }
+        List<Position> positions = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file))) {
+            if (!line.trim().isEmpty()) {
+                positions.add(Position.fromFen(line));
+            }
+        }
+        try (BatchAnalyzer analyzer = new BatchAnalyzer(threads, hash, shared)) {
+            analyzer.setDepth(depth);
+            analyzer.setNodeLimit(nodes);
+            analyzer.setMoveTime(moveTime);
+            analyzer.setMultiPv(multiPv);
+            analyzer.analyzeAll(positions, result -> {
+                synchronized (System.out) {
+                    System.out.println(result.getId() + " " + result);
+                }
+            });
+            System.out.printf("%d positions, %d nodes: %.1f positions/s%n", analyzer.getCompleted(),
+                    analyzer.getNodes(), analyzer.getPositionsPerSecond());
+        }
+    }
+}
@@ -1,31 +1,88 @@
 import java.util.ArrayList;
-import javax.swing.JOptionPane;
 
 /**
  * ChessBoard class represents a chess board and all the chess pieces on it.
- * The class provides methods for moving pieces, checking the game status (check, checkmate, stalemate), 
- * and handling pawn promotion.
+ * The class provides methods for moving pieces, checking the game status (check, checkmate, stalemate and the other draws), 
+ * and handling pawn promotion through a pluggable PromotionPolicy.
+ * The game state lives in a bitboard Position; the ChessPiece objects are only a view of it
+ * kept for the user interface and the tests.
  */
 public class ChessBoard {
+    // the bitboard position every query and move runs on
+    private Position position;
     private ChessPiece[][] board;
     private ArrayList<ChessPiece> whitePieces;
     private ArrayList<ChessPiece> blackPieces;
-    private boolean whiteTurn;
+    // decides what a pawn reaching the last row becomes
+    private PromotionPolicy promotionPolicy = PromotionPolicy.defaultPolicy();
+    // move generations run by the board's own queries
+    private final EngineStatistics statistics = new EngineStatistics();
 
     // constructor of the ChessBoard class
     public ChessBoard() {
+    // Create the bitboard position
+    position = new Position();
     // Create a 2D array to represent the board
     board = new ChessPiece[8][8];
     // Create an ArrayList to store the white pieces
     whitePieces = new ArrayList<>();
     // Create an ArrayList to store the black pieces
     blackPieces = new ArrayList<>();
-    // Set whiteTurn to true, indicating that it's the white player's turn
-    whiteTurn = true;
     // initialize the board with the chess pieces
     initializeBoard();
     }
 
+    /**
+     * Convert board coordinates to a square index of the bitboard position.
+     * x is the file, y = 0 is black's back row and y = 7 is white's back row.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the square index, 0 (a1) to 63 (h8)
+     */
+    static int toSquare(int x, int y) {
+        return (7 - y) * 8 + x;
+    }
+
+    /**
+     * @return the bitboard position behind this board
+     */
+    public Position getPosition() {
+        return position;
+    }
+
+    public PromotionPolicy getPromotionPolicy() {
+        return promotionPolicy;
+    }
+
+    /**
+     * Set how pawns reaching the last row are promoted
+     * @param promotionPolicy the policy, such as PromotionPolicy.QUEEN on a headless machine
+     */
+    public void setPromotionPolicy(PromotionPolicy promotionPolicy) {
+        this.promotionPolicy = promotionPolicy;
+    }
+
+    /**
+     * @return the board view indexed by [x][y]
+     */
+    public ChessPiece[][] getBoard() {
+        return board;
+    }
+
+    /**
+     * @return the list of white pieces on the board
+     */
+    public ArrayList<ChessPiece> getWhitePieces() {
+        return whitePieces;
+    }
+
+    /**
+     * @return the list of black pieces on the board
+     */
+    public ArrayList<ChessPiece> getBlackPieces() {
+        return blackPieces;
+    }
+
     /**
      * Initialize the chess board with the chess pieces in their starting positions,
      * initialize the board and add the pieces to the board
@@ -63,8 +120,45 @@ public class ChessBoard {
             // add the black pieces to the board
             board[piece.getX()][piece.getY()] = piece;
         }
+        // set up the same pieces on the bitboard position
+        position.setStartPosition();
     }
   
+    /**
+     * Set up the position described by a FEN string and rebuild the pieces from it
+     * @param fen the FEN string, the move clocks may be left out
+     * @throws IllegalArgumentException if the string is not a valid FEN
+     */
+    public void setFen(String fen) {
+        // a bad string leaves the position, and so the board, as it was
+        position.setFen(fen);
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                board[x][y] = null;
+            }
+        }
+        whitePieces.clear();
+        blackPieces.clear();
+        for (int square = 0; square < 64; square++) {
+            int piece = position.pieceAt(square);
+            if (piece == Position.NO_PIECE) {
+                continue;
+            }
+            int x = square & 7;
+            int y = 7 - (square >>> 3);
+            ChessPiece view = createPiece(Position.typeOf(piece), Position.colorOf(piece) == Position.WHITE, x, y);
+            (view.isWhite() ? whitePieces : blackPieces).add(view);
+            board[x][y] = view;
+        }
+    }
+
+    /**
+     * @return the FEN string of the position on the board
+     */
+    public String toFen() {
+        return position.toFen();
+    }
+
     /**
      * Return the chess piece at the specified position
      * @param x the x-coordinate of the position
@@ -72,6 +166,10 @@ public class ChessBoard {
      * @return the chess piece at the specified position, or null if there is no piece
      */
     public ChessPiece getPieceAt(int x, int y) {
+        // empty squares are answered by the bitboard position alone
+        if (position.pieceAt(toSquare(x, y)) == Position.NO_PIECE) {
+            return null;
+        }
         // return the chess piece at the specified position
         return board[x][y];
     }
@@ -85,63 +183,204 @@ public class ChessBoard {
      * @return true if the move is successful, false otherwise
      */
     public boolean movePiece(int x1, int y1, int x2, int y2) {
-        //get the chess piece at the starting position
-        ChessPiece piece = getPieceAt(x1, y1);
-        // return false if there is no piece at the starting position
-        if (piece == null) {
-            return false;
+        // the position rejects empty squares, the opponent's pieces and illegal targets
+        int from = toSquare(x1, y1);
+        int to = toSquare(x2, y2);
+        int move = findLegalMove(from, to, Position.QUEEN);
+        // pawns reaching the last row become the piece the promotion policy chooses
+        if (Move.isPromotion(move)) {
+            move = findLegalMove(from, to, promotionPolicy.choosePromotion(position, from, to));
         }
-        // return false if the player is trying to move the opponent's piece
-        if (whiteTurn != piece.isWhite()) {
+        return playMove(move);
+    }
+
+    /**
+     * Play a packed move, such as one found by the search, and update the piece view
+     * @param move the packed move
+     * @return true if the move is legal and was played, false otherwise
+     */
+    public boolean playMove(int move) {
+        if (move == Move.NONE) {
             return false;
         }
-        // check if the piece can move to the ending coordinates
-        if (!piece.canMove(x2, y2)) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int promotion = Move.isPromotion(move) ? Move.promotion(move) : Position.QUEEN;
+        if (findLegalMove(from, to, promotion) != move) {
             return false;
         }
-        // check if there is a piece at the ending position
-        ChessPiece capturedPiece = getPieceAt(x2, y2);
-        // remove the captured piece from the list of pieces
-        if (capturedPiece != null) {
-            if (capturedPiece.isWhite()) {
-                whitePieces.remove(capturedPiece);
-            } else {
-                blackPieces.remove(capturedPiece);
-            }
+        // play the move on the bitboard position
+        int type = Position.typeOf(position.pieceAt(from));
+        position.makeMove(move);
+        // bring the piece view in line with the position
+        updateView(type, promotion, from & 7, 7 - (from >>> 3), to & 7, 7 - (to >>> 3));
+        return true;
+    }
+
+    /**
+     * Update the ChessPiece view after a move was played on the position
+     * @param type the type of the moved piece
+     * @param promotion the piece type a pawn on the last row was promoted to
+     * @param x1 the x-coordinate of the starting position
+     * @param y1 the y-coordinate of the starting position
+     * @param x2 the x-coordinate of the ending position
+     * @param y2 the y-coordinate of the ending position
+     */
+    private void updateView(int type, int promotion, int x1, int y1, int x2, int y2) {
+        ChessPiece piece = board[x1][y1];
+        // a pawn moving diagonally onto an empty square captures en passant
+        if (type == Position.PAWN && x1 != x2 && board[x2][y2] == null) {
+            dropFromView(x2, y1);
         }
-        // update the chess board
+        dropFromView(x2, y2);
         board[x1][y1] = null;
         board[x2][y2] = piece;
         piece.setX(x2);
         piece.setY(y2);
-        // switch the turn
-        whiteTurn = !whiteTurn;
-        return true;
+        // castling moves the rook next to the king
+        if (type == Position.KING && Math.abs(x2 - x1) == 2) {
+            int rookX1 = x2 > x1 ? 7 : 0;
+            int rookX2 = x2 > x1 ? 5 : 3;
+            ChessPiece rook = board[rookX1][y1];
+            board[rookX1][y1] = null;
+            board[rookX2][y1] = rook;
+            rook.setX(rookX2);
+        }
+        // a pawn on the last row was promoted by the position
+        if (type == Position.PAWN && (y2 == 0 || y2 == 7)) {
+            dropFromView(x2, y2);
+            ChessPiece promoted = createPiece(promotion, piece.isWhite(), x2, y2);
+            (promoted.isWhite() ? whitePieces : blackPieces).add(promoted);
+            board[x2][y2] = promoted;
+        }
     }
 
     /**
-     * Method to check if the game is in checkmate state
-     * @return true if the game is in checkmate, false otherwise
+     * Create the view object of a piece
+     * @param type the piece type
+     * @param white the color of the piece
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the new chess piece
      */
-    public boolean isCheckmate() {
-        // list of opponent's pieces
-        ArrayList<ChessPiece> pieces;
-        ChessPiece king;
-        // check whose turn it is
-        if (whiteTurn) {
-            pieces = blackPieces;
-            king = findKing(whitePieces);
+    private ChessPiece createPiece(int type, boolean white, int x, int y) {
+        switch (type) {
+            case Position.PAWN:
+                return new Pawn(this, white, x, y);
+            case Position.KNIGHT:
+                return new Knight(this, white, x, y);
+            case Position.BISHOP:
+                return new Bishop(this, white, x, y);
+            case Position.ROOK:
+                return new Rook(this, white, x, y);
+            case Position.KING:
+                return new King(this, white, x, y);
+            default:
+                return new Queen(this, white, x, y);
+        }
+    }
+
+    /**
+     * Remove a piece from the view only
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     */
+    private void dropFromView(int x, int y) {
+        ChessPiece piece = board[x][y];
+        if (piece != null) {
+            (piece.isWhite() ? whitePieces : blackPieces).remove(piece);
+            board[x][y] = null;
+        }
+    }
+
+    /**
+     * Add a piece to the board
+     * @param piece the piece to add
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     */
+    public void addPiece(ChessPiece piece, int x, int y) {
+        removePiece(x, y);
+        piece.setX(x);
+        piece.setY(y);
+        board[x][y] = piece;
+        (piece.isWhite() ? whitePieces : blackPieces).add(piece);
+        position.put(pieceCode(piece), toSquare(x, y));
+        position.refreshCheckers();
+    }
+
+    /**
+     * Remove the piece at the specified position from the board
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     */
+    public void removePiece(int x, int y) {
+        dropFromView(x, y);
+        position.remove(toSquare(x, y));
+        position.refreshCheckers();
+    }
+
+    /**
+     * Translate a ChessPiece object into the piece code of the bitboard position
+     * @param piece the chess piece
+     * @return the piece code
+     */
+    private static int pieceCode(ChessPiece piece) {
+        int type;
+        if (piece instanceof Pawn) {
+            type = Position.PAWN;
+        } else if (piece instanceof Knight) {
+            type = Position.KNIGHT;
+        } else if (piece instanceof Bishop) {
+            type = Position.BISHOP;
+        } else if (piece instanceof Rook) {
+            type = Position.ROOK;
+        } else if (piece instanceof Queen) {
+            type = Position.QUEEN;
         } else {
-            pieces = whitePieces;
-            king = findKing(blackPieces);
+            type = Position.KING;
         }
-        // check if any of the opponent's pieces can move to the king's position
-        for (ChessPiece piece : pieces) {
-            if (piece.canMove(king.getX(), king.getY())) {
-                return true;
-            }
+        return Position.piece(piece.isWhite() ? Position.WHITE : Position.BLACK, type);
+    }
+
+    /**
+     * @return a copy of the counters of the move generations run by the board's moves and status checks
+     */
+    public EngineStatistics getStatistics() {
+        return statistics.copy();
+    }
+
+    /**
+     * Find the legal move between two squares, counting the move generation it takes
+     */
+    private int findLegalMove(int from, int to, int promotion) {
+        if (EngineStatistics.ENABLED) {
+            statistics.moveGenerations++;
         }
-        return false;
+        return position.findLegalMove(from, to, promotion);
+    }
+
+    private boolean isLegal(int from, int to) {
+        return findLegalMove(from, to, Position.QUEEN) != Move.NONE;
+    }
+
+    /**
+     * Get the game status of the position, counting the move generation it takes
+     */
+    private int status() {
+        if (EngineStatistics.ENABLED) {
+            statistics.moveGenerations++;
+        }
+        return position.status();
+    }
+
+    /**
+     * Method to check if the game is in checkmate state
+     * @return true if the game is in checkmate, false otherwise
+     */
+    public boolean isCheckmate() {
+        // the side to move is in check and has no legal move
+        return status() == Position.CHECKMATE;
     }
 
     /**
@@ -150,15 +389,8 @@ public class ChessBoard {
      * @return true if the king is in check, false otherwise
      */
     public boolean isCheck(boolean whiteTurn) {
-        ArrayList<ChessPiece> opponentPieces = whiteTurn ? blackPieces : whitePieces;
-        ChessPiece king = findKing(whiteTurn ? whitePieces : blackPieces);
-        // check if any of the opponent's pieces can move to the king's position
-        for (ChessPiece piece : opponentPieces) {
-            if (piece.canMove(king.getX(), king.getY())) {
-                return true;
-            }
-        }
-        return false;
+        // probe the attacks on the king square
+        return position.isInCheck(whiteTurn ? Position.WHITE : Position.BLACK);
     }
 
     /**
@@ -167,12 +399,12 @@ public class ChessBoard {
      * @return the king piece
      */
     private ChessPiece findKing(ArrayList<ChessPiece> pieces) {
-        for (ChessPiece piece : pieces) {
-            if (piece instanceof King) {
-                return piece;
-            }
+        // the position keeps the king squares, no need to scan the list
+        int square = position.kingSquare(pieces == whitePieces ? Position.WHITE : Position.BLACK);
+        if (square == Position.NO_SQUARE) {
+            return null;
         }
-        return null;
+        return board[square & 7][7 - (square >>> 3)];
     }
 
     /**
@@ -180,24 +412,26 @@ public class ChessBoard {
      * @return true if the game is in stalemate, false otherwise
      */
     public boolean isStalemate() {
-        ArrayList<ChessPiece> pieces;
-        // check whose turn it is
-        if (whiteTurn) {
-            pieces = whitePieces;
-        } else {
-            pieces = blackPieces;
-        }
-        // check if any legal move can be made by the current player
-        for (ChessPiece piece : pieces) {
-            ArrayList<Integer[]> moves = piece.getMoves();
-            for (Integer[] move : moves) {
-                int x = move[0], y = move[1];
-                if (isLegalMove(piece, x, y)) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        // the side to move is not in check but cannot make any legal move
+        return status() == Position.STALEMATE;
+    }
+
+    /**
+     * Method to check if the game is drawn by stalemate, threefold repetition, the fifty-move rule
+     * or insufficient material
+     * @return true if the game is a draw, false otherwise
+     */
+    public boolean isDraw() {
+        int status = status();
+        return status != Position.CHECKMATE && Position.isGameOver(status);
+    }
+
+    /**
+     * Method to get the number of halfmoves since the last capture or pawn move
+     * @return the halfmove clock, the game is drawn when it reaches 100
+     */
+    public int getHalfmoveClock() {
+        return position.halfmoveClock();
     }
 
     /**
@@ -205,15 +439,18 @@ public class ChessBoard {
      * @return 1 if the game is in check state, 2 if the game is in checkmate state, 0 otherwise
      */
     public int checkCheckMate() {
-        ChessPiece king = findKing(whiteTurn ? whitePieces : blackPieces);
-        if (isCheck(whiteTurn)) {
-            if (isCheckmate()) {
-                return 2;
-            } else {
-                return 1;
-            }
-        }
-        return 0;
+        int status = status();
+        return status == Position.CHECK || status == Position.CHECKMATE ? status : 0;
+    }
+
+    /**
+     * Method to get the game status of the side to move with a single legal move pass.
+     * The position keeps the hash of every position played, so repetitions are found
+     * by scanning back to the last capture or pawn move.
+     * @return Position.ONGOING, CHECK, CHECKMATE, STALEMATE, REPETITION, FIFTY_MOVES or INSUFFICIENT_MATERIAL
+     */
+    public int getGameStatus() {
+        return status();
     }
 
     /**
@@ -228,7 +465,7 @@ public class ChessBoard {
             // remove the pawn from the board
             removePiece(pawn.getX(), pawn.getY());
             // prompt the user to choose a piece to promote the pawn to
-            ChessPiece newPiece = promptForPromotion();
+            ChessPiece newPiece = promptForPromotion(pawn.isWhite(), x, y);
             // add the new piece to the board
             addPiece(newPiece, x, y);
         }
@@ -276,43 +513,22 @@ public class ChessBoard {
      * @return true if the move is legal, false otherwise
      */
     public boolean isLegalMove(ChessPiece piece, int x, int y) {
-        // check if the piece can move to the target position
-        if (!piece.canMove(x, y)) {
-            return false;
-        }
-        // check if the move puts the king of the current player to check
-        ChessPiece king = findKing(whiteTurn ? whitePieces : blackPieces);
-        movePiece(piece.getX(), piece.getY(), x, y);
-        if (isCheck(whiteTurn)) {
-            movePiece(x, y, piece.getX(), piece.getY());
-            return false;
-        }
-        movePiece(x, y, piece.getX(), piece.getY());
-        return true;
+        // the position checks the target and that the king is not left in check
+        return isLegal(toSquare(piece.getX(), piece.getY()), toSquare(x, y));
     }
 
     /**
-    * Method to prompt the user to choose a piece to promote the pawn to
-    * @return the new piece the user selected
+    * Method to ask the promotion policy which piece to promote the pawn to
+    * @param white the color of the promoted pawn
+    * @param x the x coordinate of the new piece
+    * @param y the y coordinate of the new piece
+    * @return the new piece the policy selected
     */
-    private ChessPiece promptForPromotion() {
-        String[] options = {"Queen", "Rook", "Bishop", "Knight"};
-        int choice = JOptionPane.showOptionDialog(null, "Choose a piece to promote the pawn to",
-                "Pawn Promotion", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
-                null, options, options[0]);
-
-        switch(choice) {
-            case 0:
-                return new Queen(pawn.isWhite(), x, y);
-            case 1:
-                return new Rook(pawn.isWhite(), x, y);
-            case 2:
-                return new Bishop(pawn.isWhite(), x, y);
-            case 3:
-                return new Knight(pawn.isWhite(), x, y);
-            default:
-                return null;
-        }
+    private ChessPiece promptForPromotion(boolean white, int x, int y) {
+        int to = toSquare(x, y);
+        // the square behind the promotion square, where the pawn came from
+        int from = white ? to - 8 : to + 8;
+        return createPiece(promotionPolicy.choosePromotion(position, from, to), white, x, y);
     }
 
     /**
@@ -355,27 +571,8 @@ public class ChessBoard {
      * @return true if the move is valid, false otherwise
      */
     public boolean isValidMove(int x1, int y1, int x2, int y2) {
-        ChessPiece piece = board[x1][y1];
-        // check if the piece is not null
-        if (piece == null) {
-            return false;
-        }
-        // check if the piece is the correct color
-        if (whiteTurn != piece.isWhite()) {
-            return false;
-        }
-        // check if the piece can move to the target position
-        if (!piece.canMove(x2, y2)) {
-            return false;
-        }
-        // check if the move puts the king of the current player in check
-        movePiece(x1, y1, x2, y2);
-        if (isCheck(whiteTurn)) {
-            movePiece(x2, y2, x1, y1);
-            return false;
-        }
-        movePiece(x2, y2, x1, y1);
-        return true;
+        // the position checks the piece, its color, the target and king safety
+        return isLegal(toSquare(x1, y1), toSquare(x2, y2));
     }
   }
     
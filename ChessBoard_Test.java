@@ -185,5 +185,28 @@ public class ChessBoardTest {
         assertFalse(chessBoard.isLegalMove(piece, 4, 4));
     }
 
+    /**
+     * Test that setFen rebuilds the pieces and toFen gives the same string back
+     */
+    @Test
+    public void testFen() {
+        ChessBoard chessBoard = new ChessBoard();
+        String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+        chessBoard.setFen(fen);
+        assertEquals(fen, chessBoard.toFen());
+        assertEquals(16, chessBoard.getWhitePieces().size());
+        assertEquals(16, chessBoard.getBlackPieces().size());
+        assertTrue(chessBoard.getPieceAt(4, 7) instanceof King);
+        assertTrue(chessBoard.getPieceAt(5, 5) instanceof Queen);
+        assertNull(chessBoard.getPieceAt(1, 7));
+        // a bad string leaves the board as it was
+        try {
+            chessBoard.setFen("not a fen");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(fen, chessBoard.toFen());
+        }
+    }
+
 }
 
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/**
+ * CompactPosition class is an immutable snapshot of a Position in eight bitboards and one int,
+ * about a tenth of the memory of a Position with its undo stacks. It is what a GameServer keeps
+ * for each game between moves: a move is checked and played on a pooled Position set from the
+ * snapshot, and the result is stored as a new snapshot.
+ */
+public final class CompactPosition {
+    private static final int CASTLING_SHIFT = 1;
+    private static final int EN_PASSANT_SHIFT = 5;
+    private static final int HALFMOVE_SHIFT = 12;
+    private static final int FULLMOVE_SHIFT = 20;
+    // the clocks are capped to fit their bits, which is far beyond any draw rule
+    private static final int MAX_HALFMOVES = 255;
+    private static final int MAX_FULLMOVES = 4095;
+
+    // squares of each color
+    private final long white;
+    private final long black;
+    // squares of each piece type, in type order from pawns to kings
+    private final long[] types;
+    // bit 0 the side to move, 1-4 the castling rights, 5-11 the en passant square + 1,
+    // 12-19 the halfmove clock, 20-31 the fullmove number
+    private final int state;
+
+    private CompactPosition(long white, long black, long[] types, int state) {
+        this.white = white;
+        this.black = black;
+        this.types = types;
+        this.state = state;
+    }
+
+    /**
+     * Take a snapshot of a position, the moves played on it are not kept
+     * @param position the position
+     * @return the snapshot
+     */
+    public static CompactPosition of(Position position) {
+        long[] types = new long[6];
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            types[type] = position.pieces[type] | position.pieces[type + 6];
+        }
+        int state = position.sideToMove
+                | position.castlingRights << CASTLING_SHIFT
+                | (position.enPassantSquare + 1) << EN_PASSANT_SHIFT
+                | Math.min(position.halfmoveClock, MAX_HALFMOVES) << HALFMOVE_SHIFT
+                | Math.min(position.fullmoveNumber, MAX_FULLMOVES) << FULLMOVE_SHIFT;
+        return new CompactPosition(position.occupancy[Position.WHITE], position.occupancy[Position.BLACK], types, state);
+    }
+
+    /**
+     * @param fen a FEN string
+     * @return the snapshot of the position the string describes
+     */
+    public static CompactPosition fromFen(String fen) {
+        return of(Position.fromFen(fen));
+    }
+
+    /**
+     * Set a position to this snapshot, with no moves to take back
+     * @param position the position to overwrite
+     */
+    public void copyTo(Position position) {
+        position.clear();
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            place(position, Position.piece(Position.WHITE, type), types[type] & white);
+            place(position, Position.piece(Position.BLACK, type), types[type] & black);
+        }
+        position.sideToMove = sideToMove();
+        position.castlingRights = castlingRights();
+        position.enPassantSquare = enPassantSquare();
+        position.halfmoveClock = halfmoveClock();
+        position.fullmoveNumber = fullmoveNumber();
+        position.key = Zobrist.compute(position);
+        position.refreshCheckers();
+    }
+
+    private static void place(Position position, int piece, long squares) {
+        while (squares != 0) {
+            position.put(piece, Long.numberOfTrailingZeros(squares));
+            squares &= squares - 1;
+        }
+    }
+
+    /**
+     * @return a new Position set to this snapshot
+     */
+    public Position toPosition() {
+        Position position = new Position();
+        copyTo(position);
+        return position;
+    }
+
+    public int sideToMove() {
+        return state & 1;
+    }
+
+    public int castlingRights() {
+        return (state >>> CASTLING_SHIFT) & 15;
+    }
+
+    public int enPassantSquare() {
+        return ((state >>> EN_PASSANT_SHIFT) & 127) - 1;
+    }
+
+    public int halfmoveClock() {
+        return (state >>> HALFMOVE_SHIFT) & 255;
+    }
+
+    public int fullmoveNumber() {
+        return state >>> FULLMOVE_SHIFT;
+    }
+
+    /**
+     * @param color the color
+     * @param type the piece type
+     * @return the squares of the pieces of that color and type
+     */
+    public long pieces(int color, int type) {
+        return types[type] & (color == Position.WHITE ? white : black);
+    }
+
+    public String toFen() {
+        return toPosition().toFen();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CompactPosition)) {
+            return false;
+        }
+        CompactPosition that = (CompactPosition) other;
+        return white == that.white && black == that.black && state == that.state && Arrays.equals(types, that.types);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(white) + Long.hashCode(black)) + 31 * Arrays.hashCode(types) + state;
+    }
+
+    @Override
+    public String toString() {
+        return toFen();
+    }
+}
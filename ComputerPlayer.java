@@ -1,14 +1,55 @@
-import path.to.ChessBoard;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 /**
  * ComputerPlayer class represents a computer player in the chess game.
  * The class provides a method for the computer to make a move.
+ * Moves are chosen by an alpha-beta Search on a copy of the board's position,
+ * run on several threads sharing one transposition table when more than one thread is set.
+ * In the opening a move from the opening book is played instead, without searching, when one is set,
+ * and positions in the endgame tables are played from the tables.
+ * analyze gives the best few moves of a position with their scores instead of playing one.
  */
 public class ComputerPlayer {
+    // default search depth in plies
+    public static final int DEFAULT_DEPTH = 5;
+    // default number of nodes after which the search stops
+    public static final long DEFAULT_NODE_LIMIT = 2000000;
+
     // reference to the chess board
     private ChessBoard chessBoard;
     // color of the computer player
     private boolean isWhite;
+    // maximum search depth
+    private int depth = DEFAULT_DEPTH;
+    // maximum number of nodes per search
+    private long nodeLimit = DEFAULT_NODE_LIMIT;
+    // time allowed per search
+    private TimeControl timeControl = TimeControl.INFINITE;
+    // results of earlier searches, kept from move to move
+    private TranspositionTable table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+    // number of search threads
+    private int threads = 1;
+    // the search threads, created on first use
+    private ParallelSearch parallelSearch;
+    // opening book, or null to always search
+    private PolyglotBook book;
+    // number of plies from the start of the game the book is used for
+    private int bookDepth;
+    // picks among the book moves
+    private final Random random = new Random();
+    // endgame tables, or null
+    private Tablebases tablebases;
+    // counters of all the completed searches
+    private final EngineStatistics totalStatistics = new EngineStatistics();
+
+    /**
+     * Constructor for a computer player that is not tied to a board,
+     * use getMove to ask it for moves
+     */
+    public ComputerPlayer() {
+    }
 
     /**
      * Constructor for the ComputerPlayer class
@@ -22,24 +63,197 @@ public class ComputerPlayer {
         this.isWhite = isWhite;
     }
 
+    /**
+     * Set the maximum search depth
+     * @param depth the depth in plies, at least 1
+     */
+    public void setDepth(int depth) {
+        this.depth = Math.max(1, Math.min(depth, Search.MAX_PLY));
+    }
+
+    /**
+     * Set the maximum number of nodes searched per move
+     * @param nodeLimit the node limit
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Set the time each search may use, the search deepens until the time or the depth runs out
+     * @param timeControl the time control, TimeControl.INFINITE for none
+     */
+    public void setTimeControl(TimeControl timeControl) {
+        this.timeControl = timeControl;
+    }
+
+    /**
+     * Set the memory used by the transposition table, this clears the table
+     * @param sizeMb the size in megabytes
+     */
+    public void setHashSize(int sizeMb) {
+        table = new TranspositionTable(sizeMb);
+        resetThreads();
+    }
+
+    /**
+     * Set the number of threads used for each search
+     * @param threads the thread count, at least 1
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        resetThreads();
+    }
+
+    /**
+     * Play moves from an opening book while the game is young
+     * @param book the book, it can be shared with other players; null to stop using a book
+     * @param bookDepth the number of plies from the start of the game the book is used for
+     */
+    public void setBook(PolyglotBook book, int bookDepth) {
+        this.book = book;
+        this.bookDepth = bookDepth;
+    }
+
+    /**
+     * Play positions found in the endgame tables from the tables and use them inside the search
+     * @param tablebases the tables, they can be shared with other players; null to stop using them
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+        if (parallelSearch != null) {
+            parallelSearch.setTablebases(tablebases);
+        }
+    }
+
+    private void resetThreads() {
+        if (parallelSearch != null) {
+            parallelSearch.shutdown();
+            parallelSearch = null;
+        }
+    }
+
+    /**
+     * Search a position for the best move of the side to move
+     * @param position the position, it is not changed
+     * @return the best move and its score
+     */
+    public SearchResult search(Position position) {
+        if (book != null && gamePly(position) < bookDepth) {
+            int move = book.choose(position, random);
+            if (move != Move.NONE) {
+                return new SearchResult(move, 0, 0, 0, new int[] {move});
+            }
+        }
+        if (tablebases != null) {
+            // probed on a copy so the caller's position is never touched
+            Position copy = new Position(position);
+            int move = tablebases.bestMove(copy);
+            if (move != Move.NONE) {
+                return new SearchResult(move, tablebases.probe(copy), 0, 0, new int[] {move});
+            }
+        }
+        if (parallelSearch == null) {
+            parallelSearch = new ParallelSearch(table, threads);
+            parallelSearch.setTablebases(tablebases);
+        }
+        parallelSearch.setMultiPv(1);
+        SearchResult result = parallelSearch.search(position, depth, nodeLimit, timeControl);
+        addStatistics();
+        return result;
+    }
+
+    /**
+     * Search a position for its best moves, each with its own score and principal variation,
+     * within the depth, node and time limits of this player. The root is always searched, never played
+     * from the book or the endgame tables.
+     * @param position the position, it is not changed
+     * @param multiPv the number of moves to find
+     * @return the lines of the last completed depth, best first, fewer when there are fewer legal moves
+     */
+    public List<SearchResult> analyze(Position position, int multiPv) {
+        if (parallelSearch == null) {
+            parallelSearch = new ParallelSearch(table, threads);
+            parallelSearch.setTablebases(tablebases);
+        }
+        parallelSearch.setMultiPv(multiPv);
+        parallelSearch.search(position, depth, nodeLimit, timeControl);
+        addStatistics();
+        return Arrays.asList(parallelSearch.getLines());
+    }
+
+    private void addStatistics() {
+        EngineStatistics last = parallelSearch.getStatistics();
+        synchronized (totalStatistics) {
+            // the searches ran one after the other, so their times add up
+            long elapsed = totalStatistics.elapsedNanos + last.elapsedNanos;
+            totalStatistics.add(last);
+            totalStatistics.elapsedNanos = elapsed;
+        }
+    }
+
+    /**
+     * Return the counters of the search in progress or, when idle, of the last search, summed over the threads
+     * @return the counters, all zero before the first search
+     */
+    public EngineStatistics getStatistics() {
+        ParallelSearch searching = parallelSearch;
+        return searching == null ? new EngineStatistics() : searching.getStatistics();
+    }
+
+    /**
+     * @return the counters of all the searches this player completed
+     */
+    public EngineStatistics getTotalStatistics() {
+        synchronized (totalStatistics) {
+            return totalStatistics.copy();
+        }
+    }
+
+    /**
+     * @return the number of plies played since the start of the game
+     */
+    private static int gamePly(Position position) {
+        return 2 * (position.fullmoveNumber() - 1) + position.sideToMove();
+    }
+
+    /**
+     * Abort a search running on another thread, it then returns its best move so far
+     */
+    public void stop() {
+        ParallelSearch running = parallelSearch;
+        if (running != null) {
+            running.stop();
+        }
+    }
+
+    /**
+     * Return the move the computer would play on a board
+     * @param board the chess board
+     * @return the move as {x1, y1, x2, y2}, or null if there is no legal move
+     */
+    public int[] getMove(ChessBoard board) {
+        int move = search(board.getPosition()).getBestMove();
+        if (move == Move.NONE) {
+            return null;
+        }
+        int from = Move.from(move);
+        int to = Move.to(move);
+        return new int[] {from & 7, 7 - (from >>> 3), to & 7, 7 - (to >>> 3)};
+    }
+
     /**
      * Makes a move for the computer player.
-     * Generates random coordinates for the move and check if the move is valid.
-     * If the move is valid, it makes the move on the chess board.
-     */
-    public void makeMove() {
-        // generate random x1, y1, x2, y2
-        int x1 = (int)(Math.random() * 8);
-        int y1 = (int)(Math.random() * 8);
-        int x2 = (int)(Math.random() * 8);
-        int y2 = (int)(Math.random() * 8);
-        // check if the move is valid
-        MoveValidation moveValidation = chessBoard.new MoveValidation();
-        if (!moveValidation.isValidMove(x1, y1, x2, y2)) {
-            makeMove();
-            return;
+     * Searches the board's position for the best move and plays it on the chess board.
+     * @return the result of the search, or null if it is not the computer's turn
+     */
+    public SearchResult makeMove() {
+        if ((chessBoard.getPosition().sideToMove() == Position.WHITE) != isWhite) {
+            return null;
         }
+        SearchResult result = search(chessBoard.getPosition());
         // make the move
-        chessBoard.movePiece(x1, y1, x2, y2);
+        chessBoard.playMove(result.getBestMove());
+        return result;
     }
 }
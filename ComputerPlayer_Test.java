@@ -1,9 +1,13 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
-import ChessBoard;
-import ComputerPlayer;
 
-public class ComputerPlayerTest {
+public class ComputerPlayer_Test {
 
     @Test
     public void testGetMove() {
@@ -22,4 +26,251 @@ public class ComputerPlayerTest {
         ChessPiece piece = board.getPieceAt(move[0], move[1]);
         assertTrue(board.isLegalMove(piece, move[2], move[3]));
     }
+
+    /**
+     * Test that the search finds a mate in one
+     */
+    @Test
+    public void testFindsMateInOne() {
+        ComputerPlayer player = new ComputerPlayer();
+        player.setDepth(3);
+        // white mates with the rook on the back rank
+        Position position = Position.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        SearchResult result = player.search(position);
+        assertEquals("a1a8", Move.toString(result.getBestMove()));
+        assertEquals(Search.MATE - 1, result.getScore());
+    }
+
+    /**
+     * Test that the search wins a hanging queen and leaves the position unchanged
+     */
+    @Test
+    public void testCapturesHangingQueen() {
+        ComputerPlayer player = new ComputerPlayer();
+        player.setDepth(4);
+        String fen = "rnb1kbnr/pppp1ppp/8/4p1q1/3P4/2N5/PPP1PPPP/R1BQKBNR w KQkq - 0 1";
+        Position position = Position.fromFen(fen);
+        SearchResult result = player.search(position);
+        assertEquals("c1g5", Move.toString(result.getBestMove()));
+        assertTrue(result.getScore() > 500);
+        assertEquals(fen, position.toFen());
+    }
+
+    /**
+     * Test that the node limit stops the search with a legal move
+     */
+    @Test
+    public void testNodeLimit() {
+        ComputerPlayer player = new ComputerPlayer();
+        player.setDepth(20);
+        player.setNodeLimit(5000);
+        Position position = Position.fromFen(Position.START_FEN);
+        SearchResult result = player.search(position);
+        assertTrue(result.getNodes() <= 5000);
+        assertTrue(position.isLegal(Move.from(result.getBestMove()), Move.to(result.getBestMove())));
+    }
+
+    /**
+     * Test that a search on several threads still finds the mate
+     */
+    @Test
+    public void testParallelSearch() {
+        ComputerPlayer player = new ComputerPlayer();
+        player.setDepth(4);
+        player.setThreads(4);
+        Position position = Position.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        SearchResult result = player.search(position);
+        assertEquals("a1a8", Move.toString(result.getBestMove()));
+        assertEquals(Search.MATE - 1, result.getScore());
+    }
+
+    /**
+     * Test that the helper threads are stopped when the main search fails, so the next search still runs
+     */
+    @Test
+    public void testParallelSearchFailure() {
+        ParallelSearch search = new ParallelSearch(new TranspositionTable(1), 3);
+        Position position = Position.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        search.setListener(iteration -> {
+            throw new IllegalStateException("listener failed");
+        });
+        try {
+            search.search(Position.fromFen(Position.START_FEN), 4, Long.MAX_VALUE);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("listener failed", e.getMessage());
+        }
+        search.setListener(null);
+        SearchResult result = search.search(position, 4, Long.MAX_VALUE);
+        assertEquals("a1a8", Move.toString(result.getBestMove()));
+        search.shutdown();
+    }
+
+    /**
+     * Test that a one ply search does not take a pawn its queen is lost for on the next move
+     */
+    @Test
+    public void testQuiescence() {
+        ComputerPlayer player = new ComputerPlayer();
+        player.setDepth(1);
+        Position position = Position.fromFen("4k3/8/4p3/3p4/8/8/8/3QK3 w - - 0 1");
+        SearchResult result = player.search(position);
+        assertNotEquals("d1d5", Move.toString(result.getBestMove()));
+        assertTrue(result.getScore() > 500);
+    }
+
+    /**
+     * Test the static exchange evaluation on the standard examples
+     */
+    @Test
+    public void testStaticExchange() {
+        // the rook wins the undefended pawn
+        Position rook = Position.fromFen("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1");
+        int rxe5 = Move.parse(rook, "e1e5");
+        assertTrue(StaticExchange.isAtLeast(rook, rxe5, 0));
+        assertTrue(StaticExchange.isAtLeast(rook, rxe5, 100));
+        assertFalse(StaticExchange.isAtLeast(rook, rxe5, 101));
+        // the knight takes a pawn and is taken, the rest of the exchange does not get it back
+        Position knight = Position.fromFen("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1");
+        int nxe5 = Move.parse(knight, "d3e5");
+        assertFalse(StaticExchange.isAtLeast(knight, nxe5, 0));
+        assertTrue(StaticExchange.isAtLeast(knight, nxe5, 100 - 325));
+        // a bishop takes a knight defended only by a king, the king cannot take back into the queen's line
+        Position king = Position.fromFen("8/4k3/5n2/8/3B4/8/1Q6/4K3 w - - 0 1");
+        assertTrue(StaticExchange.isAtLeast(king, Move.parse(king, "d4f6"), 325));
+        Position noQueen = Position.fromFen("8/4k3/5n2/8/3B4/8/8/4K3 w - - 0 1");
+        assertFalse(StaticExchange.isAtLeast(noQueen, Move.parse(noQueen, "d4f6"), 1));
+        assertTrue(StaticExchange.isAtLeast(noQueen, Move.parse(noQueen, "d4f6"), 0));
+    }
+
+    /**
+     * Test that the counters of a search add up over the threads and the searches
+     */
+    @Test
+    public void testStatistics() {
+        ComputerPlayer player = new ComputerPlayer();
+        player.setDepth(4);
+        player.setThreads(2);
+        Position position = Position.fromFen(Position.START_FEN);
+        SearchResult result = player.search(position);
+        EngineStatistics statistics = player.getStatistics();
+        assertEquals(result.getNodes(), statistics.getNodes());
+        if (EngineStatistics.ENABLED) {
+            assertTrue(statistics.getBetaCutoffs() > 0);
+            assertTrue(statistics.getFirstMoveCutoffs() <= statistics.getBetaCutoffs());
+            assertTrue(statistics.getHashHits() <= statistics.getHashProbes());
+            assertTrue(statistics.getMoveGenerations() > 0);
+        }
+        player.search(position);
+        assertEquals(statistics.getNodes() + player.getStatistics().getNodes(),
+                player.getTotalStatistics().getNodes());
+    }
+
+    /**
+     * Test that a search with a fixed move time returns in time with a completed iteration
+     */
+    @Test
+    public void testMoveTime() {
+        ComputerPlayer player = new ComputerPlayer();
+        player.setDepth(Search.MAX_PLY);
+        player.setNodeLimit(Long.MAX_VALUE);
+        player.setTimeControl(TimeControl.moveTime(200));
+        Position position = Position.fromFen(Position.START_FEN);
+        long start = System.currentTimeMillis();
+        SearchResult result = player.search(position);
+        // the search was stopped by the clock, the bound only catches a search that never stops
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertTrue(result.getDepth() >= 1 && result.getDepth() < Search.MAX_PLY);
+        assertNotEquals(Move.NONE, position.findLegalMove(Move.from(result.getBestMove()),
+                Move.to(result.getBestMove()), Position.QUEEN));
+    }
+
+    /**
+     * Test that the clock time control never gives a move more time than is left, even with a large increment
+     */
+    @Test
+    public void testClock() {
+        TimeControl control = TimeControl.clock(1500, 2000, 0);
+        assertTrue(control.getHardLimitMs() < 1500 - TimeControl.MOVE_OVERHEAD_MS);
+        assertTrue(control.getSoftLimitMs() <= control.getHardLimitMs());
+        control = TimeControl.clock(60000, 0, 0);
+        assertEquals(59980 / 30, control.getSoftLimitMs());
+        assertTrue(control.getHardLimitMs() > control.getSoftLimitMs());
+        control = TimeControl.clock(10, 5000, 1);
+        assertTrue(control.getHardLimitMs() >= 1);
+        assertTrue(control.getSoftLimitMs() <= control.getHardLimitMs());
+        // more moves to go than the default share the time over all of them
+        assertEquals(59980 / 40, TimeControl.clock(60000, 0, 40).getSoftLimitMs());
+        control = TimeControl.clock(1000, 0, 1);
+        assertTrue(control.getHardLimitMs() < 1000 - TimeControl.MOVE_OVERHEAD_MS);
+    }
+
+    /**
+     * Test that analyze finds several different lines, best first, without changing the position
+     */
+    @Test
+    public void testMultiPv() {
+        ComputerPlayer player = new ComputerPlayer();
+        player.setDepth(4);
+        String fen = "rnb1kbnr/pppp1ppp/8/4p1q1/3P4/2N5/PPP1PPPP/R1BQKBNR w KQkq - 0 1";
+        Position position = Position.fromFen(fen);
+        List<SearchResult> lines = player.analyze(position, 3);
+        assertEquals(3, lines.size());
+        assertEquals("c1g5", Move.toString(lines.get(0).getBestMove()));
+        assertEquals(fen, position.toFen());
+        Set<Integer> moves = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            SearchResult line = lines.get(i);
+            assertEquals(4, line.getDepth());
+            assertEquals(line.getBestMove(), line.getPv()[0]);
+            assertTrue(moves.add(line.getBestMove()));
+            if (i > 0) {
+                assertTrue(line.getScore() <= lines.get(i - 1).getScore());
+            }
+        }
+        // the queen capture is far ahead of the other moves
+        assertTrue(lines.get(0).getScore() - lines.get(1).getScore() > 500);
+        // there are only two legal moves
+        assertEquals(2, player.analyze(Position.fromFen("7k/8/8/8/8/8/8/K6r w - - 0 1"), 5).size());
+    }
+
+    /**
+     * Test that a batch is analysed on several workers with results reported as they complete
+     */
+    @Test
+    public void testBatchAnalyzer() throws Exception {
+        List<Position> positions = new ArrayList<>();
+        positions.add(Position.fromFen(Position.START_FEN));
+        positions.add(Position.fromFen("rnb1kbnr/pppp1ppp/8/4p1q1/3P4/2N5/PPP1PPPP/R1BQKBNR w KQkq - 0 1"));
+        positions.add(Position.fromFen("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1"));
+        // checkmated, nothing to analyse
+        positions.add(Position.fromFen("R5k1/5ppp/8/8/8/8/5PPP/6K1 b - - 0 1"));
+        List<AnalysisResult> reported = Collections.synchronizedList(new ArrayList<>());
+        try (BatchAnalyzer analyzer = new BatchAnalyzer(2, 4, true)) {
+            analyzer.setDepth(3);
+            analyzer.setMultiPv(2);
+            List<AnalysisResult> results = analyzer.analyzeAll(positions, reported::add);
+            assertEquals(4, results.size());
+            assertEquals(4, reported.size());
+            assertEquals(4, analyzer.getCompleted());
+            assertTrue(analyzer.getPositionsPerSecond() > 0);
+            assertEquals(2, results.get(0).getLines().size());
+            assertEquals("c1g5", Move.toString(results.get(1).getBestMove()));
+            assertEquals("a1a8", Move.toString(results.get(2).getBestMove()));
+            assertEquals(Search.MATE - 1, results.get(2).getLines().get(0).getScore());
+            assertEquals(Move.NONE, results.get(3).getBestMove());
+            for (int i = 0; i < positions.size(); i++) {
+                assertEquals(i + 1, results.get(i).getId());
+                assertEquals(positions.get(i).toFen(), results.get(i).getPosition().toFen());
+            }
+
+            // a single position with its own future and a node limit
+            analyzer.setMultiPv(1);
+            analyzer.setDepth(Search.MAX_PLY);
+            analyzer.setNodeLimit(20000);
+            AnalysisResult result = analyzer.submit(positions.get(0)).get();
+            assertEquals(1, result.getLines().size());
+            assertTrue(result.getNodes() <= 20000);
+        }
+    }
 }
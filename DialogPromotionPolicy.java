@@ -0,0 +1,20 @@
+import javax.swing.JOptionPane;
+
+/**
+ * DialogPromotionPolicy class asks the user which piece to promote to with a Swing dialog.
+ * It needs a display, use PromotionPolicy.QUEEN or another policy on a headless machine.
+ */
+public class DialogPromotionPolicy implements PromotionPolicy {
+    // dialog options and the piece type of each
+    private static final String[] OPTIONS = {"Queen", "Rook", "Bishop", "Knight"};
+    private static final int[] TYPES = {Position.QUEEN, Position.ROOK, Position.BISHOP, Position.KNIGHT};
+
+    @Override
+    public int choosePromotion(Position position, int from, int to) {
+        int choice = JOptionPane.showOptionDialog(null, "Choose a piece to promote the pawn to",
+                "Pawn Promotion", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+                null, OPTIONS, OPTIONS[0]);
+        // closing the dialog keeps the queen
+        return choice >= 0 ? TYPES[choice] : Position.QUEEN;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * EngineStatistics class counts what a search thread or a board spends its work on: nodes, quiescence nodes,
+ * beta cutoffs and how many of them came from the first move, transposition table probes and hits, and
+ * move generations.
+ *
+ * Each Search owns one object and is the only thread writing it, so the counters are plain fields
+ * with no locking; add() sums the objects of several threads when the numbers are asked for.
+ * Counting is switched off by starting the JVM with -Dchess.statistics=false: ENABLED is then a
+ * constant false and the JIT compiler removes every counting statement from the search.
+ */
+public final class EngineStatistics {
+    // false when the JVM was started with -Dchess.statistics=false
+    public static final boolean ENABLED = !"false".equals(System.getProperty("chess.statistics"));
+
+    long nodes;
+    // nodes of the quiescence search, included in nodes
+    long quiescenceNodes;
+    long betaCutoffs;
+    // beta cutoffs produced by the first move searched
+    long firstMoveCutoffs;
+    long hashProbes;
+    long hashHits;
+    long moveGenerations;
+    // time spent, in nanoseconds
+    long elapsedNanos;
+
+    /**
+     * Set all the counters back to zero
+     */
+    public void reset() {
+        nodes = 0;
+        quiescenceNodes = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        hashProbes = 0;
+        hashHits = 0;
+        moveGenerations = 0;
+        elapsedNanos = 0;
+    }
+
+    /**
+     * Add the counters of another thread; the time is the longest of the two, as threads run side by side
+     * @param other the counters to add
+     * @return this object
+     */
+    public EngineStatistics add(EngineStatistics other) {
+        nodes += other.nodes;
+        quiescenceNodes += other.quiescenceNodes;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        hashProbes += other.hashProbes;
+        hashHits += other.hashHits;
+        moveGenerations += other.moveGenerations;
+        elapsedNanos = Math.max(elapsedNanos, other.elapsedNanos);
+        return this;
+    }
+
+    /**
+     * @return a copy of the counters as they are now
+     */
+    public EngineStatistics copy() {
+        return new EngineStatistics().add(this);
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    public long getHashProbes() {
+        return hashProbes;
+    }
+
+    public long getHashHits() {
+        return hashHits;
+    }
+
+    public long getMoveGenerations() {
+        return moveGenerations;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the share of beta cutoffs made by the first move, a measure of the move ordering
+     */
+    public double getFirstMoveCutoffRate() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    /**
+     * @return the share of transposition table probes that found an entry
+     */
+    public double getHashHitRate() {
+        return hashProbes == 0 ? 0 : (double) hashHits / hashProbes;
+    }
+
+    /**
+     * @return the nodes searched per second
+     */
+    public long getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : (long) (nodes * 1e9 / elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes %d qnodes %d nps %d cutoffs %d first %.1f%% hash %d hits %.1f%% movegen %d",
+                nodes, quiescenceNodes, getNodesPerSecond(), betaCutoffs, 100 * getFirstMoveCutoffRate(),
+                hashProbes, 100 * getHashHitRate(), moveGenerations);
+    }
+}
@@ -0,0 +1,632 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Evaluation class scores a position from the point of view of the side to move.
+ * The score is the material balance plus a piece-square bonus for each piece, in centipawns.
+ *
+ * Every piece has a midgame and an endgame value. The score blends the two by the game phase,
+ * which falls from 24 with all the minor and major pieces on the board to 0 with none of them.
+ * Position keeps the midgame sum, the endgame sum and the phase up to date in put and remove,
+ * so evaluate only reads three fields instead of scanning the board.
+ *
+ * On top of that come the pawn structure terms (passed, doubled, isolated and backward pawns) and
+ * the pawn shield in front of each king. They only depend on the pawns and the king squares, so the
+ * search looks them up in a PawnTable by the pawn key and computes them once per pawn structure.
+ * Midgame and endgame pawn scores travel packed in one int, see pack.
+ *
+ * The weights are plain arrays so a tuner can change them; call rebuild afterwards.
+ * TexelTuner tunes them from labelled positions and writes them to a weights file, which is read
+ * when the class is loaded: the file named by -Dchess.weights, or evaluation.txt in the working
+ * directory when it exists.
+ */
+public final class Evaluation {
+    // phase of a position with all the minor and major pieces
+    public static final int MAX_PHASE = 24;
+    // weights file read at startup when it exists
+    public static final String WEIGHTS_FILE = System.getProperty("chess.weights", "evaluation.txt");
+
+    // the terms of the evaluation, numbered for the tuner; each has a midgame and an endgame weight
+    // material by piece type
+    static final int TERM_MATERIAL = 0;
+    // piece-square tables by piece type and table index
+    static final int TERM_TABLES = TERM_MATERIAL + 6;
+    // passed pawns by relative rank
+    static final int TERM_PASSED = TERM_TABLES + 6 * 64;
+    static final int TERM_DOUBLED = TERM_PASSED + 8;
+    static final int TERM_ISOLATED = TERM_DOUBLED + 1;
+    static final int TERM_BACKWARD = TERM_ISOLATED + 1;
+    // pawn shield by distance from the king, midgame only
+    static final int TERM_SHIELD = TERM_BACKWARD + 1;
+    static final int TERM_COUNT = TERM_SHIELD + 2;
+
+    // value of each piece type in centipawns, midgame and endgame
+    public static final int[] MG_VALUES = {82, 337, 365, 477, 1025, 0};
+    public static final int[] EG_VALUES = {94, 281, 297, 512, 936, 0};
+    // how much each piece type counts towards the game phase
+    public static final int[] PHASE_WEIGHTS = {0, 1, 1, 2, 4, 0};
+
+    // piece-square tables from white's point of view, the first row is the 8th rank
+    public static final int[][] MG_TABLES = {
+        {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             10,  10,  20,  30,  30,  20,  10,  10,
+              5,   5,  10,  25,  25,  10,   5,   5,
+              0,   0,   0,  20,  20,   0,   0,   0,
+              5,  -5, -10,   0,   0, -10,  -5,   5,
+              5,  10,  10, -20, -20,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0
+        },
+        {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50
+        },
+        {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20
+        },
+        {
+              0,   0,   0,   0,   0,   0,   0,   0,
+              5,  10,  10,  10,  10,  10,  10,   5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+              0,   0,   0,   5,   5,   0,   0,   0
+        },
+        {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+              0,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   5,   5,   5,   5,   5,   0, -10,
+            -10,   0,   5,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20
+        },
+        {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+             20,  20,   0,   0,   0,   0,  20,  20,
+             20,  30,  10,   0,   0,  10,  30,  20
+        }
+    };
+
+    // in the endgame pawns are worth more as they advance and the king belongs in the centre
+    public static final int[][] EG_TABLES = {
+        {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             80,  80,  80,  80,  80,  80,  80,  80,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             30,  30,  30,  30,  30,  30,  30,  30,
+             15,  15,  15,  15,  15,  15,  15,  15,
+              5,   5,   5,   5,   5,   5,   5,   5,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0
+        },
+        {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50
+        },
+        {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,  10,  10,  10,  10,   5, -10,
+            -10,   5,  10,  10,  10,  10,   5, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20
+        },
+        {
+              5,   5,   5,   5,   5,   5,   5,   5,
+             10,  10,  10,  10,  10,  10,  10,  10,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0
+        },
+        {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+            -10,   5,  10,  10,  10,  10,   5, -10,
+             -5,   5,  10,  15,  15,  10,   5,  -5,
+             -5,   5,  10,  15,  15,  10,   5,  -5,
+            -10,   5,  10,  10,  10,  10,   5, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20
+        },
+        {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50
+        }
+    };
+
+    // bonus of a passed pawn by its rank counted from its own side, midgame and endgame
+    public static final int[] PASSED_MG = {0, 0, 5, 10, 20, 35, 60, 0};
+    public static final int[] PASSED_EG = {0, 10, 15, 25, 45, 75, 120, 0};
+    // midgame and endgame penalty of a pawn with a pawn of its own side in front of it
+    public static final int[] DOUBLED = {-10, -20};
+    // midgame and endgame penalty of a pawn with no pawn of its own side on the files next to it
+    public static final int[] ISOLATED = {-10, -15};
+    // midgame and endgame penalty of a pawn behind the pawns next to it that cannot safely move up
+    public static final int[] BACKWARD = {-8, -10};
+    // midgame bonus of a pawn one and two ranks in front of its king, on the king's file or next to it
+    public static final int[] SHIELD = {15, 8};
+
+    // the squares of each file
+    static final long[] FILES = new long[8];
+    // the squares of the files next to each file
+    static final long[] ADJACENT_FILES = new long[8];
+    // the squares in front of a pawn on its file, by color and square
+    static final long[][] FORWARD = new long[2][64];
+    // the squares in front of a pawn on its file and the files next to it, a pawn with no enemy pawn there is passed
+    static final long[][] PASSED_SPAN = new long[2][64];
+    // the squares next to a pawn and behind them, a pawn with no pawn of its own side there may be backward
+    static final long[][] SUPPORT_SPAN = new long[2][64];
+
+    // value plus bonus of each piece code on each square, negative for black pieces
+    static final int[][] MG = new int[12][64];
+    static final int[][] EG = new int[12][64];
+    // phase weight of each piece code
+    static final int[] PHASE = new int[12];
+
+    static {
+        loadStartupWeights();
+        for (int file = 0; file < 8; file++) {
+            FILES[file] = 0x0101010101010101L << file;
+        }
+        for (int file = 0; file < 8; file++) {
+            ADJACENT_FILES[file] = (file > 0 ? FILES[file - 1] : 0L) | (file < 7 ? FILES[file + 1] : 0L);
+        }
+        for (int square = 0; square < 64; square++) {
+            int file = square & 7;
+            int rank = square >>> 3;
+            // ranks above and below the square
+            long above = rank == 7 ? 0L : -1L << (8 * (rank + 1));
+            long below = rank == 0 ? 0L : -1L >>> (8 * (8 - rank));
+            FORWARD[Position.WHITE][square] = FILES[file] & above;
+            FORWARD[Position.BLACK][square] = FILES[file] & below;
+            PASSED_SPAN[Position.WHITE][square] = (FILES[file] | ADJACENT_FILES[file]) & above;
+            PASSED_SPAN[Position.BLACK][square] = (FILES[file] | ADJACENT_FILES[file]) & below;
+            SUPPORT_SPAN[Position.WHITE][square] = ADJACENT_FILES[file] & ~above;
+            SUPPORT_SPAN[Position.BLACK][square] = ADJACENT_FILES[file] & ~below;
+        }
+        rebuild();
+    }
+
+    private Evaluation() {
+    }
+
+    /**
+     * Recompute the per-piece tables from the weights. Positions set up before the call keep
+     * their old sums until they are set up again.
+     */
+    public static void rebuild() {
+        for (int piece = 0; piece < 12; piece++) {
+            int type = Position.typeOf(piece);
+            boolean white = Position.colorOf(piece) == Position.WHITE;
+            for (int square = 0; square < 64; square++) {
+                // the tables start at the 8th rank, flip the square for white
+                int index = white ? square ^ 56 : square;
+                int mg = MG_VALUES[type] + MG_TABLES[type][index];
+                int eg = EG_VALUES[type] + EG_TABLES[type][index];
+                MG[piece][square] = white ? mg : -mg;
+                EG[piece][square] = white ? eg : -eg;
+            }
+            PHASE[piece] = PHASE_WEIGHTS[type];
+        }
+    }
+
+    /**
+     * Evaluate a position, computing the pawn terms
+     * @param position the position
+     * @return the score in centipawns, positive when the side to move is better
+     */
+    public static int evaluate(Position position) {
+        return evaluate(position, null);
+    }
+
+    /**
+     * Evaluate a position, taking the pawn terms from a pawn table
+     * @param position the position
+     * @param pawnTable the pawn table of the calling thread, or null to compute the pawn terms
+     * @return the score in centipawns, positive when the side to move is better
+     */
+    public static int evaluate(Position position, PawnTable pawnTable) {
+        int pawns = pawnTable != null ? pawnTable.probe(position) : evaluatePawns(position);
+        int score = taper(position.mgScore() + mg(pawns), position.egScore() + eg(pawns), position.phase());
+        if (position.sideToMove() != Position.WHITE) {
+            score = -score;
+        }
+        // debug cross-check, only runs with assertions enabled (java -ea)
+        assert score == evaluateFull(position) : "incremental evaluation is out of date: " + position.toFen();
+        return score;
+    }
+
+    /**
+     * Evaluate a position by scanning every piece, for checking the incremental sums
+     * @param position the position
+     * @return the score in centipawns, positive when the side to move is better
+     */
+    public static int evaluateFull(Position position) {
+        int mg = 0;
+        int eg = 0;
+        int phase = 0;
+        long occupied = position.occupied();
+        while (occupied != 0) {
+            int square = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            int piece = position.pieceAt(square);
+            mg += MG[piece][square];
+            eg += EG[piece][square];
+            phase += PHASE[piece];
+        }
+        int pawns = evaluatePawns(position);
+        int score = taper(mg + mg(pawns), eg + eg(pawns), phase);
+        return position.sideToMove() == Position.WHITE ? score : -score;
+    }
+
+    /**
+     * Compute the pawn structure and pawn shield terms
+     * @param position the position
+     * @return the midgame and endgame scores from white's point of view, packed
+     */
+    public static int evaluatePawns(Position position) {
+        return evaluatePawnStructure(position) + evaluateShelter(position);
+    }
+
+    /**
+     * Compute the passed, doubled, isolated and backward pawn terms, which depend on the pawns only
+     * @param position the position
+     * @return the midgame and endgame scores from white's point of view, packed
+     */
+    static int evaluatePawnStructure(Position position) {
+        return pawnStructure(position, Position.WHITE, null) - pawnStructure(position, Position.BLACK, null);
+    }
+
+    /**
+     * Compute the pawn shield terms, which depend on the pawns and the king squares
+     * @param position the position
+     * @return the midgame and endgame scores from white's point of view, packed
+     */
+    static int evaluateShelter(Position position) {
+        return shelter(position, Position.WHITE, null) - shelter(position, Position.BLACK, null);
+    }
+
+    /**
+     * @param trace when not null, receives the number of times each pawn term counts, minus for black
+     */
+    private static int pawnStructure(Position position, int color, int[] trace) {
+        int sign = color == Position.WHITE ? 1 : -1;
+        long ours = position.pieces(color, Position.PAWN);
+        long theirs = position.pieces(color ^ 1, Position.PAWN);
+        int mg = 0;
+        int eg = 0;
+        long pawns = ours;
+        while (pawns != 0) {
+            int square = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            int file = square & 7;
+            if ((ours & FORWARD[color][square]) != 0) {
+                // only the front pawn of a doubled pair can be passed
+                mg += DOUBLED[0];
+                eg += DOUBLED[1];
+                if (trace != null) {
+                    trace[TERM_DOUBLED] += sign;
+                }
+            } else if ((theirs & PASSED_SPAN[color][square]) == 0) {
+                int rank = color == Position.WHITE ? square >>> 3 : 7 - (square >>> 3);
+                mg += PASSED_MG[rank];
+                eg += PASSED_EG[rank];
+                if (trace != null) {
+                    trace[TERM_PASSED + rank] += sign;
+                }
+            }
+            if ((ours & ADJACENT_FILES[file]) == 0) {
+                mg += ISOLATED[0];
+                eg += ISOLATED[1];
+                if (trace != null) {
+                    trace[TERM_ISOLATED] += sign;
+                }
+            } else if ((ours & SUPPORT_SPAN[color][square]) == 0) {
+                // no pawn can come up to defend it and an enemy pawn guards the square in front
+                int stop = color == Position.WHITE ? square + 8 : square - 8;
+                if ((Attacks.pawnAttacks(color, stop) & theirs) != 0) {
+                    mg += BACKWARD[0];
+                    eg += BACKWARD[1];
+                    if (trace != null) {
+                        trace[TERM_BACKWARD] += sign;
+                    }
+                }
+            }
+        }
+        return pack(mg, eg);
+    }
+
+    private static int shelter(Position position, int color, int[] trace) {
+        int king = position.kingSquares[color];
+        if (king == Position.NO_SQUARE) {
+            return 0;
+        }
+        long shield = position.pieces(color, Position.PAWN) & (FILES[king & 7] | ADJACENT_FILES[king & 7]);
+        int forward = color == Position.WHITE ? 1 : -1;
+        int mg = 0;
+        for (int i = 0; i < SHIELD.length; i++) {
+            int rank = (king >>> 3) + forward * (i + 1);
+            if (rank >= 0 && rank < 8) {
+                int pawns = Long.bitCount(shield & (0xFFL << (8 * rank)));
+                mg += SHIELD[i] * pawns;
+                if (trace != null) {
+                    trace[TERM_SHIELD + i] += color == Position.WHITE ? pawns : -pawns;
+                }
+            }
+        }
+        return pack(mg, 0);
+    }
+
+    /**
+     * Count how many times each term of the evaluation applies to a position, white minus black,
+     * so the midgame sum is the sum of the counts times the midgame weights and the same for the endgame
+     * @param position the position
+     * @param counts receives the count of each term, TERM_COUNT entries
+     * @return the game phase, not capped at MAX_PHASE
+     */
+    static int trace(Position position, int[] counts) {
+        Arrays.fill(counts, 0);
+        int phase = 0;
+        long occupied = position.occupied();
+        while (occupied != 0) {
+            int square = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            int piece = position.pieceAt(square);
+            int type = Position.typeOf(piece);
+            boolean white = Position.colorOf(piece) == Position.WHITE;
+            int sign = white ? 1 : -1;
+            counts[TERM_MATERIAL + type] += sign;
+            counts[TERM_TABLES + type * 64 + (white ? square ^ 56 : square)] += sign;
+            phase += PHASE[piece];
+        }
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            pawnStructure(position, color, counts);
+            shelter(position, color, counts);
+        }
+        return phase;
+    }
+
+    /**
+     * @param term a term number, TERM_MATERIAL to TERM_COUNT - 1
+     * @param endgame true for the endgame weight
+     * @return false for the weights that are fixed: the king's material and the endgame pawn shield
+     */
+    static boolean isTunable(int term, boolean endgame) {
+        return term != TERM_MATERIAL + Position.KING && !(endgame && term >= TERM_SHIELD);
+    }
+
+    /**
+     * @param term a term number, TERM_MATERIAL to TERM_COUNT - 1
+     * @param endgame true for the endgame weight
+     * @return the weight of the term
+     */
+    static int getWeight(int term, boolean endgame) {
+        if (term < TERM_TABLES) {
+            return (endgame ? EG_VALUES : MG_VALUES)[term - TERM_MATERIAL];
+        } else if (term < TERM_PASSED) {
+            return (endgame ? EG_TABLES : MG_TABLES)[(term - TERM_TABLES) / 64][(term - TERM_TABLES) % 64];
+        } else if (term < TERM_DOUBLED) {
+            return (endgame ? PASSED_EG : PASSED_MG)[term - TERM_PASSED];
+        } else if (term == TERM_DOUBLED) {
+            return DOUBLED[endgame ? 1 : 0];
+        } else if (term == TERM_ISOLATED) {
+            return ISOLATED[endgame ? 1 : 0];
+        } else if (term == TERM_BACKWARD) {
+            return BACKWARD[endgame ? 1 : 0];
+        }
+        return endgame ? 0 : SHIELD[term - TERM_SHIELD];
+    }
+
+    /**
+     * Change the weight of a term, call rebuild when all the weights are set
+     * @param term a term number, TERM_MATERIAL to TERM_COUNT - 1
+     * @param endgame true for the endgame weight
+     * @param weight the new weight, ignored for a weight that is not tunable
+     */
+    static void setWeight(int term, boolean endgame, int weight) {
+        if (!isTunable(term, endgame)) {
+            return;
+        }
+        if (term < TERM_TABLES) {
+            (endgame ? EG_VALUES : MG_VALUES)[term - TERM_MATERIAL] = weight;
+        } else if (term < TERM_PASSED) {
+            (endgame ? EG_TABLES : MG_TABLES)[(term - TERM_TABLES) / 64][(term - TERM_TABLES) % 64] = weight;
+        } else if (term < TERM_DOUBLED) {
+            (endgame ? PASSED_EG : PASSED_MG)[term - TERM_PASSED] = weight;
+        } else if (term == TERM_DOUBLED) {
+            DOUBLED[endgame ? 1 : 0] = weight;
+        } else if (term == TERM_ISOLATED) {
+            ISOLATED[endgame ? 1 : 0] = weight;
+        } else if (term == TERM_BACKWARD) {
+            BACKWARD[endgame ? 1 : 0] = weight;
+        } else {
+            SHIELD[term - TERM_SHIELD] = weight;
+        }
+    }
+
+    /**
+     * @return the weight arrays by the names they have in a weights file, in file order
+     */
+    private static Map<String, int[]> weightArrays() {
+        Map<String, int[]> arrays = new LinkedHashMap<>();
+        arrays.put("MG_VALUES", MG_VALUES);
+        arrays.put("EG_VALUES", EG_VALUES);
+        for (int type = 0; type < 6; type++) {
+            arrays.put("MG_TABLES[" + type + "]", MG_TABLES[type]);
+        }
+        for (int type = 0; type < 6; type++) {
+            arrays.put("EG_TABLES[" + type + "]", EG_TABLES[type]);
+        }
+        arrays.put("PASSED_MG", PASSED_MG);
+        arrays.put("PASSED_EG", PASSED_EG);
+        arrays.put("DOUBLED", DOUBLED);
+        arrays.put("ISOLATED", ISOLATED);
+        arrays.put("BACKWARD", BACKWARD);
+        arrays.put("SHIELD", SHIELD);
+        return arrays;
+    }
+
+    /**
+     * Write the weights to a file, one array per line as NAME = v1, v2, ...
+     * @param file the file
+     * @param comment a line written first after a #, or null
+     * @throws IOException if the file cannot be written
+     */
+    public static void saveWeights(Path file, String comment) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            if (comment != null) {
+                out.write("# " + comment);
+                out.newLine();
+            }
+            for (Map.Entry<String, int[]> entry : weightArrays().entrySet()) {
+                StringBuilder line = new StringBuilder(entry.getKey()).append(" =");
+                int[] values = entry.getValue();
+                for (int i = 0; i < values.length; i++) {
+                    line.append(i == 0 ? " " : ", ").append(values[i]);
+                }
+                out.write(line.toString());
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Read the weights from a file written by saveWeights and rebuild the tables. Arrays missing from the file
+     * keep their weights; nothing is changed when the file has an error. Positions set up before the call keep
+     * their old sums until they are set up again.
+     * @param file the file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line names an unknown array or has the wrong number of values
+     */
+    public static void loadWeights(Path file) throws IOException {
+        Map<String, int[]> arrays = weightArrays();
+        Map<int[], int[]> loaded = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int equals = line.indexOf('=');
+            int[] array = equals < 0 ? null : arrays.get(line.substring(0, equals).trim());
+            if (array == null) {
+                throw new IllegalArgumentException("Invalid weights line: " + line);
+            }
+            String[] fields = line.substring(equals + 1).split(",");
+            if (fields.length != array.length) {
+                throw new IllegalArgumentException("Expected " + array.length + " weights: " + line);
+            }
+            int[] values = new int[array.length];
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Integer.parseInt(fields[i].trim());
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weights line: " + line, e);
+            }
+            loaded.put(array, values);
+        }
+        for (Map.Entry<int[], int[]> entry : loaded.entrySet()) {
+            System.arraycopy(entry.getValue(), 0, entry.getKey(), 0, entry.getKey().length);
+        }
+        rebuild();
+    }
+
+    /**
+     * Read the weights file named by WEIGHTS_FILE when it exists; the built-in weights stay when it cannot be read
+     */
+    private static void loadStartupWeights() {
+        Path file = Paths.get(WEIGHTS_FILE);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            loadWeights(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ignoring weights file " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pack a midgame and an endgame score into one int so both are added up in one operation
+     * @param mg the midgame score
+     * @param eg the endgame score
+     * @return the packed scores
+     */
+    static int pack(int mg, int eg) {
+        return (eg << 16) + mg;
+    }
+
+    /**
+     * @param packed scores made by pack
+     * @return the midgame score
+     */
+    static int mg(int packed) {
+        return (short) packed;
+    }
+
+    /**
+     * @param packed scores made by pack
+     * @return the endgame score
+     */
+    static int eg(int packed) {
+        return (packed + 0x8000) >> 16;
+    }
+
+    /**
+     * Blend a midgame and an endgame score
+     * @param mg the midgame score
+     * @param eg the endgame score
+     * @param phase the game phase, promotions can take it above MAX_PHASE
+     * @return the blended score
+     */
+    static int taper(int mg, int eg, int phase) {
+        int mgPhase = Math.min(phase, MAX_PHASE);
+        return (mg * mgPhase + eg * (MAX_PHASE - mgPhase)) / MAX_PHASE;
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * GameArchive class stores games in an append-only file, each one a GameCodec record, with a second file
+ * holding the 8-byte offset of every record so any game can be read by its number with one positional read.
+ * A record is written before its offset, so after a crash the index never points past the data;
+ * data written after the last indexed record is cut off when the archive is opened.
+ *
+ * Usage: java GameArchive [games] [file] writes random games, then reads them all back and prints
+ * the bytes per game and the games read per second.
+ */
+public class GameArchive implements Closeable {
+    private static final String INDEX_SUFFIX = ".index";
+    private static final int OFFSET_BYTES = 8;
+    // large enough for the longest record
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    // number of games in the archive
+    private long count;
+    // end of the last record
+    private long dataSize;
+    // write buffers, only used while holding the lock of the archive
+    private final ByteBuffer recordBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer offsetBuffer = ByteBuffer.allocateDirect(OFFSET_BYTES);
+
+    /**
+     * Open an archive, creating it if it does not exist
+     * @param file the data file, the index is the same path with ".index" added
+     * @throws IOException if the files cannot be opened or do not match
+     */
+    public GameArchive(Path file) throws IOException {
+        data = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(file.resolveSibling(file.getFileName() + INDEX_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // an offset half written by a crash is dropped
+        count = index.size() / OFFSET_BYTES;
+        index.truncate(count * OFFSET_BYTES);
+        dataSize = 0;
+        if (count > 0) {
+            long last = offset(count - 1);
+            ByteBuffer header = ByteBuffer.allocate(GameCodec.HEADER_SIZE);
+            readFully(header, last);
+            header.flip();
+            dataSize = last + GameCodec.recordSize(header);
+            if (dataSize > data.size()) {
+                data.close();
+                index.close();
+                throw new IOException("Game archive index points past the data: " + file);
+            }
+        }
+        data.truncate(dataSize);
+    }
+
+    /**
+     * @return the number of games in the archive
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * @return the number of bytes of game data
+     */
+    public synchronized long dataSize() {
+        return dataSize;
+    }
+
+    /**
+     * Add a game at the end of the archive
+     * @param game the game
+     * @return the number of the game, counting from 0
+     * @throws IOException if the game cannot be written
+     */
+    public synchronized long append(GameCodec.Game game) throws IOException {
+        recordBuffer.clear();
+        GameCodec.write(game, recordBuffer);
+        recordBuffer.flip();
+        int size = recordBuffer.remaining();
+        while (recordBuffer.hasRemaining()) {
+            data.write(recordBuffer, dataSize + size - recordBuffer.remaining());
+        }
+        offsetBuffer.clear();
+        offsetBuffer.putLong(dataSize);
+        offsetBuffer.flip();
+        while (offsetBuffer.hasRemaining()) {
+            index.write(offsetBuffer, count * OFFSET_BYTES + OFFSET_BYTES - offsetBuffer.remaining());
+        }
+        dataSize += size;
+        return count++;
+    }
+
+    /**
+     * Read a game by its number, it can be called from any thread
+     * @param number the number of the game
+     * @return the game
+     * @throws IOException if the game cannot be read
+     */
+    public GameCodec.Game read(long number) throws IOException {
+        long end;
+        synchronized (this) {
+            if (number < 0 || number >= count) {
+                throw new IndexOutOfBoundsException("No game " + number + " in an archive of " + count);
+            }
+            end = number + 1 < count ? -1 : dataSize;
+        }
+        long start = offset(number);
+        if (end < 0) {
+            end = offset(number + 1);
+        }
+        ByteBuffer record = ByteBuffer.allocate((int) (end - start));
+        readFully(record, start);
+        record.flip();
+        return GameCodec.read(record);
+    }
+
+    /**
+     * GameVisitor interface is shown every game of the archive in turn
+     */
+    public interface GameVisitor {
+        /**
+         * @param number the number of the game
+         * @param game the game
+         * @param end the position at the end of the game, it is reused for the next game
+         */
+        void visit(long number, GameCodec.Game game, Position end);
+    }
+
+    /**
+     * Read all the games in order with sequential reads through one buffer
+     * @param visitor told about each game
+     * @throws IOException if the archive cannot be read
+     */
+    public void forEach(GameVisitor visitor) throws IOException {
+        long games;
+        long size;
+        synchronized (this) {
+            games = count;
+            size = dataSize;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+        Position position = new Position();
+        long fileOffset = 0;
+        for (long number = 0; number < games; number++) {
+            // keep at least one whole record in the buffer
+            if (buffer.remaining() < GameCodec.HEADER_SIZE || buffer.remaining() < GameCodec.recordSize(buffer)) {
+                buffer.compact();
+                int read;
+                while (buffer.hasRemaining() && fileOffset < size && (read = data.read(buffer, fileOffset)) > 0) {
+                    fileOffset += read;
+                }
+                buffer.flip();
+            }
+            GameCodec.Game game = GameCodec.read(buffer, position);
+            visitor.visit(number, game, position);
+        }
+    }
+
+    private long offset(long number) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(OFFSET_BYTES);
+        readFully(buffer, number * OFFSET_BYTES, index);
+        return buffer.getLong(0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(buffer, position, data);
+    }
+
+    private static void readFully(ByteBuffer buffer, long position, FileChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the game archive");
+            }
+        }
+    }
+
+    /**
+     * Write the files to the disk
+     * @throws IOException if the files cannot be written
+     */
+    public synchronized void force() throws IOException {
+        data.force(false);
+        index.force(false);
+    }
+
+    /**
+     * Close the files
+     * @throws IOException if the files cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Write random games to an archive and time reading them back
+     * @param args [games] [file]
+     * @throws IOException if the archive cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Path file = Paths.get(args.length > 1 ? args[1] : "games.archive");
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + INDEX_SUFFIX));
+        Random random = new Random(1);
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        long plies = 0;
+        long start = System.nanoTime();
+        try (GameArchive archive = new GameArchive(file)) {
+            Position position = new Position();
+            for (int i = 0; i < games; i++) {
+                position.setStartPosition();
+                int[] moves = new int[40 + random.nextInt(120)];
+                int n = 0;
+                while (n < moves.length) {
+                    int count = MoveGenerator.generateLegal(position, legal);
+                    if (count == 0) {
+                        break;
+                    }
+                    moves[n] = legal[random.nextInt(count)];
+                    position.makeMove(moves[n++]);
+                }
+                plies += n;
+                archive.append(new GameCodec.Game(null, Arrays.copyOf(moves, n), GameCodec.RESULT_UNKNOWN));
+            }
+            archive.force();
+            long written = System.nanoTime() - start;
+            System.out.printf("Wrote %d games, %d plies in %d ms: %.1f bytes per game, %.2f bytes per ply%n",
+                    games, plies, written / 1000000, (double) archive.dataSize() / games,
+                    (double) archive.dataSize() / Math.max(1, plies));
+        }
+        start = System.nanoTime();
+        long[] replayed = new long[1];
+        try (GameArchive archive = new GameArchive(file)) {
+            archive.forEach((number, game, end) -> replayed[0] += end.key());
+        }
+        long read = System.nanoTime() - start;
+        System.out.printf("Replayed %d games in %d ms: %.0f games/s, %.0f plies/s (checksum %x)%n", games,
+                read / 1000000, games * 1e9 / read, plies * 1e9 / read, replayed[0]);
+    }
+}
@@ -0,0 +1,141 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GameArchive_Test {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Play random legal moves from a position
+     */
+    private static int[] randomGame(Position start, int plies, Random random) {
+        Position position = new Position(start);
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        List<Integer> moves = new ArrayList<>();
+        for (int i = 0; i < plies; i++) {
+            int count = MoveGenerator.generateLegal(position, legal);
+            if (count == 0) {
+                break;
+            }
+            int move = legal[random.nextInt(count)];
+            position.makeMove(move);
+            moves.add(move);
+        }
+        return moves.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Test that positions are written in SIZE bytes and read back unchanged
+     */
+    @Test
+    public void testPositionCodec() {
+        String[] fens = {
+            Position.START_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+            "rnbqkbnr/pppp1ppp/8/8/3Pp3/8/PPP1PPPP/RNBQKBNR b KQkq d3 0 2",
+            "8/8/8/8/8/4k3/8/4K2R b K - 99 300"
+        };
+        ByteBuffer buffer = ByteBuffer.allocate(PositionCodec.SIZE * fens.length);
+        for (String fen : fens) {
+            PositionCodec.write(Position.fromFen(fen), buffer);
+        }
+        assertEquals(PositionCodec.SIZE * fens.length, buffer.position());
+        buffer.flip();
+        for (String fen : fens) {
+            Position position = PositionCodec.read(buffer);
+            assertEquals(fen, position.toFen());
+            assertEquals(Position.fromFen(fen).key(), position.key());
+        }
+    }
+
+    /**
+     * Test that games with castling, en passant and promotions read back move for move
+     */
+    @Test
+    public void testGameCodec() {
+        Random random = new Random(7);
+        Position kiwipete = Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        Position promotions = Position.fromFen("n1n5/PPPk4/8/8/8/8/4Kppp/5N1N b - - 0 1");
+        for (int i = 0; i < 300; i++) {
+            Position start = i % 3 == 0 ? null : i % 3 == 1 ? kiwipete : promotions;
+            Position from = start != null ? start : Position.fromFen(Position.START_FEN);
+            int[] moves = randomGame(from, 200, random);
+            GameCodec.Game game = new GameCodec.Game(start, moves, i % 4);
+            ByteBuffer buffer = ByteBuffer.allocate(GameCodec.size(game));
+            GameCodec.write(game, buffer);
+            assertFalse(buffer.hasRemaining());
+            buffer.flip();
+            assertEquals(GameCodec.size(game), GameCodec.recordSize(buffer));
+            GameCodec.Game read = GameCodec.read(buffer);
+            assertArrayEquals(moves, read.getMoves());
+            assertEquals(i % 4, read.getResult());
+            assertEquals(from.toFen(), read.getStart().toFen());
+        }
+    }
+
+    /**
+     * Test appending, reopening, random access and the sequential scan
+     */
+    @Test
+    public void testArchive() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("games");
+        Random random = new Random(3);
+        List<int[]> games = new ArrayList<>();
+        Position start = Position.fromFen(Position.START_FEN);
+        try (GameArchive archive = new GameArchive(file)) {
+            for (int i = 0; i < 500; i++) {
+                int[] moves = randomGame(start, random.nextInt(300), random);
+                games.add(moves);
+                assertEquals(i, archive.append(new GameCodec.Game(null, moves, GameCodec.DRAW)));
+            }
+        }
+        try (GameArchive archive = new GameArchive(file)) {
+            assertEquals(500, archive.size());
+            for (int i : new int[] {0, 499, 250, 17}) {
+                assertArrayEquals(games.get(i), archive.read(i).getMoves());
+            }
+            int[] visited = new int[1];
+            archive.forEach((number, game, end) -> {
+                assertArrayEquals(games.get((int) number), game.getMoves());
+                visited[0]++;
+            });
+            assertEquals(500, visited[0]);
+        }
+    }
+
+    /**
+     * Test that a record written without its offset, as after a crash, is dropped on opening
+     */
+    @Test
+    public void testTornAppend() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("games");
+        int[] moves = randomGame(Position.fromFen(Position.START_FEN), 40, new Random(1));
+        long size;
+        try (GameArchive archive = new GameArchive(file)) {
+            archive.append(new GameCodec.Game(null, moves, GameCodec.WHITE_WINS));
+            size = archive.dataSize();
+        }
+        try (FileChannel data = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            data.write(ByteBuffer.wrap(new byte[] {9, 9, 9}), size);
+        }
+        try (GameArchive archive = new GameArchive(file)) {
+            assertEquals(1, archive.size());
+            assertEquals(size, archive.dataSize());
+            assertEquals(1, archive.append(new GameCodec.Game(null, moves, GameCodec.DRAW)));
+            assertArrayEquals(moves, archive.read(1).getMoves());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.nio.ByteBuffer;
+
+/**
+ * GameCodec class writes a game as a small header and two bytes per move, and reads it back.
+ *
+ * A record is the move count (2 bytes), the result (1 byte) and a flags byte, then the start position
+ * in PositionCodec form when the game does not start from the standard position, then each move as
+ * 6 bits origin, 6 bits target and 4 bits promotion piece. The move flags are left out: they follow from
+ * the position, so reading a game replays it, which is a few field reads per move.
+ * Records are read and written in place in the caller's ByteBuffer.
+ */
+public final class GameCodec {
+    public static final int RESULT_UNKNOWN = 0;
+    public static final int WHITE_WINS = 1;
+    public static final int BLACK_WINS = 2;
+    public static final int DRAW = 3;
+    // most moves a record can hold
+    public static final int MAX_MOVES = 0xFFFF;
+    public static final int HEADER_SIZE = 4;
+    // flag of a game with its own start position
+    private static final int CUSTOM_START = 1;
+
+    private GameCodec() {
+    }
+
+    /**
+     * Game class is a decoded record
+     */
+    public static final class Game {
+        private final Position start;
+        private final int[] moves;
+        private final int result;
+
+        /**
+         * Constructor for the Game class
+         * @param start the start position, or null for the standard starting position
+         * @param moves the packed moves
+         * @param result RESULT_UNKNOWN, WHITE_WINS, BLACK_WINS or DRAW
+         */
+        public Game(Position start, int[] moves, int result) {
+            this.start = start == null ? null : new Position(start);
+            this.moves = moves.clone();
+            this.result = result;
+        }
+
+        /**
+         * @return a copy of the start position
+         */
+        public Position getStart() {
+            if (start != null) {
+                return new Position(start);
+            }
+            Position position = new Position();
+            position.setStartPosition();
+            return position;
+        }
+
+        public boolean hasStandardStart() {
+            return start == null;
+        }
+
+        public int[] getMoves() {
+            return moves.clone();
+        }
+
+        public int getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * @param game the game
+     * @return the number of bytes write uses for the game
+     */
+    public static int size(Game game) {
+        return HEADER_SIZE + (game.start == null ? 0 : PositionCodec.SIZE) + 2 * game.moves.length;
+    }
+
+    /**
+     * @param in a buffer at the start of a record, it is not moved
+     * @return the number of bytes of the record
+     */
+    public static int recordSize(ByteBuffer in) {
+        int at = in.position();
+        int count = in.getShort(at) & 0xFFFF;
+        boolean custom = (in.get(at + 3) & CUSTOM_START) != 0;
+        return HEADER_SIZE + (custom ? PositionCodec.SIZE : 0) + 2 * count;
+    }
+
+    /**
+     * Write a game at the buffer's position and move past it
+     * @param game the game
+     * @param out the buffer, with at least size(game) bytes remaining
+     */
+    public static void write(Game game, ByteBuffer out) {
+        if (game.moves.length > MAX_MOVES) {
+            throw new IllegalArgumentException("More than " + MAX_MOVES + " moves");
+        }
+        out.putShort((short) game.moves.length);
+        out.put((byte) game.result);
+        out.put((byte) (game.start == null ? 0 : CUSTOM_START));
+        if (game.start != null) {
+            PositionCodec.write(game.start, out);
+        }
+        for (int move : game.moves) {
+            out.putShort((short) (Move.from(move) | Move.to(move) << 6 | Move.promotion(move) << 12));
+        }
+    }
+
+    /**
+     * Read a game at the buffer's position and move past it
+     * @param in the buffer
+     * @return the game
+     */
+    public static Game read(ByteBuffer in) {
+        return read(in, new Position());
+    }
+
+    /**
+     * Read a game at the buffer's position and move past it, replaying it on a given position
+     * @param in the buffer
+     * @param position the position to replay on, it is left at the end of the game
+     * @return the game
+     */
+    public static Game read(ByteBuffer in, Position position) {
+        int count = in.getShort() & 0xFFFF;
+        int result = in.get();
+        boolean custom = (in.get() & CUSTOM_START) != 0;
+        Position start = null;
+        if (custom) {
+            PositionCodec.read(in, position);
+            start = new Position(position);
+        } else {
+            position.setStartPosition();
+        }
+        int[] moves = new int[count];
+        for (int i = 0; i < count; i++) {
+            int move = toMove(position, in.getShort() & 0xFFFF);
+            moves[i] = move;
+            position.makeMove(move);
+        }
+        return new Game(start, moves, result);
+    }
+
+    /**
+     * Rebuild a packed move from its 16-bit form; the move is trusted to be legal
+     * @param position the position the move is played in
+     * @param packed bits 0-5 the origin, 6-11 the target, 12-15 the promotion piece
+     * @return the packed move with its flags
+     */
+    static int toMove(Position position, int packed) {
+        int from = packed & 63;
+        int to = (packed >>> 6) & 63;
+        int promotion = packed >>> 12;
+        int type = Position.typeOf(position.mailbox[from]);
+        int flags = 0;
+        if (position.mailbox[to] != Position.NO_PIECE) {
+            flags |= Move.CAPTURE;
+        }
+        if (type == Position.PAWN) {
+            if (to == position.enPassantSquare) {
+                flags |= Move.CAPTURE | Move.EN_PASSANT;
+            } else if (Math.abs(to - from) == 16) {
+                flags |= Move.DOUBLE_PUSH;
+            }
+        } else if (type == Position.KING && Math.abs(to - from) == 2) {
+            flags |= Move.CASTLE;
+        }
+        return Move.of(from, to, flags, promotion);
+    }
+}
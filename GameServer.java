@@ -0,0 +1,477 @@
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * GameServer class hosts many games at once in one process, each against the engine or between two players.
+ *
+ * A game between moves is only its start and current CompactPosition and its move list, a few hundred bytes,
+ * so tens of thousands of idle games fit in a small heap. Each request runs as a task of its own on a virtual thread
+ * when the runtime has them (Java 21 and later) and on a pool of platform threads otherwise: the moves are replayed
+ * on a pooled Position, so it knows the earlier positions for the repetition rule, the move is checked and played
+ * there, and the engine's answer is searched on a small fixed pool of search threads sharing one
+ * transposition table. The search pool takes a bounded number of requests at a time; the others wait on
+ * their own threads, which costs little with virtual threads.
+ *
+ * Usage: java GameServer [-games N] [-active N] [-moves N] [-threads N] [-depth N] [-nodes N] prints the memory
+ * per idle game and the latency of the moves of the active games.
+ */
+public class GameServer {
+    // engine color of a game between two players
+    public static final int NO_ENGINE = -1;
+    public static final int DEFAULT_DEPTH = 4;
+    public static final long DEFAULT_NODE_LIMIT = 20000;
+
+    // runs the requests, on virtual threads when the runtime has them
+    private final ExecutorService sessions;
+    // runs the engine searches
+    private final ExecutorService engine;
+    // requests that may be queued on or running in the search pool
+    private final Semaphore engineSlots;
+    private final TranspositionTable table;
+    // search state of each search thread, the pool threads are platform threads and live as long as the server
+    private final ThreadLocal<EngineWorker> workers;
+    // positions the requests play their moves on, so an idle game needs no Position of its own
+    private final ConcurrentLinkedQueue<Position> positionPool = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Game> games = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private volatile int depth = DEFAULT_DEPTH;
+    private volatile long nodeLimit = DEFAULT_NODE_LIMIT;
+
+    /**
+     * Constructor for the GameServer class
+     * @param engineThreads the number of search threads
+     * @param queueLimit the number of searches that may wait for a search thread
+     * @param hashMb the size of the shared transposition table in megabytes
+     */
+    public GameServer(int engineThreads, int queueLimit, int hashMb) {
+        int threads = Math.max(1, engineThreads);
+        sessions = newSessionExecutor();
+        AtomicInteger engineIds = new AtomicInteger();
+        engine = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "engine-" + engineIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        engineSlots = new Semaphore(threads + Math.max(0, queueLimit));
+        table = new TranspositionTable(hashMb);
+        workers = ThreadLocal.withInitial(() -> new EngineWorker(table));
+    }
+
+    /**
+     * Create an executor that runs each task on a new virtual thread, or on a pool of platform threads
+     * on runtimes without virtual threads
+     * @return the executor
+     */
+    public static ExecutorService newSessionExecutor() {
+        try {
+            // looked up by name so the class still compiles and runs on Java 17
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger ids = new AtomicInteger();
+            return Executors.newFixedThreadPool(8 * Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "session-" + ids.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return true if the requests run on virtual threads
+     */
+    public static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Set how deep and how long the engine searches each move
+     * @param depth the search depth in plies
+     * @param nodeLimit the node limit per move
+     */
+    public void setEngineLimits(int depth, long nodeLimit) {
+        this.depth = Math.max(1, Math.min(depth, Search.MAX_PLY));
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Start a game from the starting position
+     * @param engineColor the color the engine plays, or NO_ENGINE
+     * @return the game id
+     */
+    public long createGame(int engineColor) {
+        return createGame(CompactPosition.fromFen(Position.START_FEN), engineColor);
+    }
+
+    /**
+     * Start a game from a given position
+     * @param start the position
+     * @param engineColor the color the engine plays, or NO_ENGINE
+     * @return the game id
+     */
+    public long createGame(CompactPosition start, int engineColor) {
+        long id = nextId.getAndIncrement();
+        games.put(id, new Game(start, engineColor));
+        return id;
+    }
+
+    /**
+     * Forget a game
+     * @param gameId the game id
+     * @return true if the game existed
+     */
+    public boolean endGame(long gameId) {
+        return games.remove(gameId) != null;
+    }
+
+    public int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * @param gameId the game id
+     * @return the current position of the game
+     */
+    public CompactPosition getPosition(long gameId) {
+        return game(gameId).position;
+    }
+
+    /**
+     * @param gameId the game id
+     * @return the moves played so far
+     */
+    public int[] getMoves(long gameId) {
+        Game game = game(gameId);
+        game.lock.lock();
+        try {
+            return Arrays.copyOf(game.moves, game.moveCount);
+        } finally {
+            game.lock.unlock();
+        }
+    }
+
+    private Game game(long gameId) {
+        Game game = games.get(gameId);
+        if (game == null) {
+            throw new IllegalArgumentException("No game " + gameId);
+        }
+        return game;
+    }
+
+    /**
+     * Play a player's move, the engine answers in the same request when it is its turn
+     * @param gameId the game id
+     * @param move the move in coordinate notation, such as e2e4
+     * @return the result, completed once the move and the answer are played
+     */
+    public CompletableFuture<MoveResult> play(long gameId, String move) {
+        Game game = game(gameId);
+        return CompletableFuture.supplyAsync(() -> handle(game, move), sessions);
+    }
+
+    /**
+     * Let the engine move when it is its turn, such as at the start of a game it plays white in
+     * @param gameId the game id
+     * @return the result, completed once the engine's move is played
+     */
+    public CompletableFuture<MoveResult> engineMove(long gameId) {
+        Game game = game(gameId);
+        return CompletableFuture.supplyAsync(() -> handle(game, null), sessions);
+    }
+
+    private MoveResult handle(Game game, String text) {
+        // a ReentrantLock rather than synchronized: a virtual thread waiting for the engine must not pin its carrier
+        game.lock.lock();
+        Position position = borrowPosition();
+        try {
+            game.replay(position);
+            int status = position.status();
+            if (Position.isGameOver(status)) {
+                return new MoveResult(false, Move.NONE, status, game.position);
+            }
+            if (text != null) {
+                int move = position.sideToMove() == game.engineColor ? Move.NONE : Move.parse(position, text);
+                if (move == Move.NONE) {
+                    return new MoveResult(false, Move.NONE, status, game.position);
+                }
+                position.makeMove(move);
+                game.add(move);
+                status = position.status();
+            }
+            int reply = Move.NONE;
+            if (position.sideToMove() == game.engineColor && !Position.isGameOver(status)) {
+                reply = search(game);
+                position.makeMove(reply);
+                game.add(reply);
+                status = position.status();
+            }
+            game.position = CompactPosition.of(position);
+            return new MoveResult(text != null || reply != Move.NONE, reply, status, game.position);
+        } finally {
+            positionPool.offer(position);
+            game.lock.unlock();
+        }
+    }
+
+    private Position borrowPosition() {
+        Position position = positionPool.poll();
+        return position != null ? position : new Position();
+    }
+
+    /**
+     * Search a position on the search pool, waiting while the pool is full
+     */
+    private int search(Game game) {
+        int maxDepth = depth;
+        long limit = nodeLimit;
+        try {
+            engineSlots.acquire();
+            try {
+                return engine.submit(() -> workers.get().search(game, maxDepth, limit)).get();
+            } finally {
+                engineSlots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the engine", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Engine search failed", e.getCause());
+        }
+    }
+
+    /**
+     * Stop the executors, the requests still running are abandoned
+     */
+    public void shutdown() {
+        sessions.shutdownNow();
+        engine.shutdownNow();
+    }
+
+    /**
+     * Game class holds the state of one game between requests
+     */
+    private static final class Game {
+        final int engineColor;
+        final ReentrantLock lock = new ReentrantLock();
+        final CompactPosition start;
+        volatile CompactPosition position;
+        int[] moves = new int[16];
+        int moveCount;
+
+        Game(CompactPosition start, int engineColor) {
+            this.start = start;
+            this.position = start;
+            this.engineColor = engineColor;
+        }
+
+        /**
+         * Set a position to the current position of the game, with the moves that led to it
+         * so repetitions are seen; the caller holds the lock
+         */
+        void replay(Position position) {
+            start.copyTo(position);
+            for (int i = 0; i < moveCount; i++) {
+                position.makeMove(moves[i]);
+            }
+        }
+
+        void add(int move) {
+            if (moveCount == moves.length) {
+                moves = Arrays.copyOf(moves, 2 * moves.length);
+            }
+            moves[moveCount++] = move;
+        }
+    }
+
+    /**
+     * EngineWorker class is the search state of one search thread
+     */
+    private static final class EngineWorker {
+        private final Position position = new Position();
+        private final TranspositionTable table;
+        private final Search search;
+
+        EngineWorker(TranspositionTable table) {
+            this.table = table;
+            search = new Search(position, table);
+        }
+
+        int search(Game game, int depth, long nodeLimit) {
+            // the game's lock is held by the request waiting for this search
+            game.replay(position);
+            // entries of earlier requests, mostly from other games, become the first to be replaced
+            table.newSearch();
+            return search.search(depth, nodeLimit).getBestMove();
+        }
+    }
+
+    /**
+     * MoveResult class is the answer to a request
+     */
+    public static final class MoveResult {
+        private final boolean accepted;
+        private final int reply;
+        private final int status;
+        private final CompactPosition position;
+
+        /**
+         * Constructor for the MoveResult class
+         * @param accepted false if the move was illegal, not the player's turn or the game is over
+         * @param reply the engine's answer, or Move.NONE
+         * @param status the Position status of the side to move after the request, such as ONGOING or CHECKMATE
+         * @param position the position after the request
+         */
+        public MoveResult(boolean accepted, int reply, int status, CompactPosition position) {
+            this.accepted = accepted;
+            this.reply = reply;
+            this.status = status;
+            this.position = position;
+        }
+
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        public int getReply() {
+            return reply;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public CompactPosition getPosition() {
+            return position;
+        }
+    }
+
+    /**
+     * Measure the heap used per idle game, then play random moves against the engine in many games at once
+     * and print the latency of each move
+     * @param args [-games N] [-active N] [-moves N] [-threads N] [-depth N] [-nodes N]
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int idleGames = 20000;
+        int activeGames = 1000;
+        int movesPerGame = 20;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int searchDepth = DEFAULT_DEPTH;
+        long nodes = DEFAULT_NODE_LIMIT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games":
+                    idleGames = Integer.parseInt(args[++i]);
+                    break;
+                case "-active":
+                    activeGames = Integer.parseInt(args[++i]);
+                    break;
+                case "-moves":
+                    movesPerGame = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    searchDepth = Integer.parseInt(args[++i]);
+                    break;
+                case "-nodes":
+                    nodes = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        GameServer server = new GameServer(threads, 4 * threads, 64);
+        server.setEngineLimits(searchDepth, nodes);
+        System.out.println("Virtual threads: " + hasVirtualThreads() + ", search threads: " + threads);
+
+        // idle games between two players, two moves into the game
+        long before = usedHeap();
+        long[] ids = new long[idleGames];
+        for (int i = 0; i < idleGames; i++) {
+            ids[i] = server.createGame(NO_ENGINE);
+        }
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[idleGames];
+        for (int i = 0; i < idleGames; i++) {
+            long id = ids[i];
+            pending[i] = server.play(id, "e2e4").thenCompose(result -> server.play(id, "e7e5"));
+        }
+        CompletableFuture.allOf(pending).join();
+        long after = usedHeap();
+        System.out.printf("%d idle games: %d bytes per game%n", idleGames, (after - before) / Math.max(1, idleGames));
+
+        // clients playing random moves against the engine, each on a thread of its own
+        long[] latencies = new long[activeGames * movesPerGame];
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService clients = newSessionExecutor();
+        int moves = movesPerGame;
+        long start = System.nanoTime();
+        for (int i = 0; i < activeGames; i++) {
+            long id = server.createGame(Position.BLACK);
+            long seed = i;
+            clients.execute(() -> playRandomGame(server, id, moves, new Random(seed), latencies, count));
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - start;
+        long[] sorted = Arrays.copyOf(latencies, count.get());
+        Arrays.sort(sorted);
+        System.out.printf("%d active games, %d moves in %d ms: %.0f moves/s%n", activeGames, sorted.length,
+                elapsed / 1000000, sorted.length * 1e9 / Math.max(1, elapsed));
+        if (sorted.length > 0) {
+            System.out.printf("Latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n", percentile(sorted, 50),
+                    percentile(sorted, 90), percentile(sorted, 99), sorted[sorted.length - 1] / 1e6);
+        }
+        server.shutdown();
+    }
+
+    private static void playRandomGame(GameServer server, long id, int moves, Random random,
+            long[] latencies, AtomicInteger count) {
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        for (int i = 0; i < moves; i++) {
+            Position position = server.getPosition(id).toPosition();
+            int n = MoveGenerator.generateLegal(position, legal);
+            if (n == 0) {
+                break;
+            }
+            long start = System.nanoTime();
+            MoveResult result = server.play(id, Move.toString(legal[random.nextInt(n)])).join();
+            latencies[count.getAndIncrement()] = System.nanoTime() - start;
+            if (Position.isGameOver(result.getStatus())) {
+                break;
+            }
+        }
+        server.endGame(id);
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)] / 1e6;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
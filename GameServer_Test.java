@@ -0,0 +1,107 @@
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class GameServer_Test {
+
+    private final GameServer server = new GameServer(2, 8, 1);
+
+    @After
+    public void tearDown() {
+        server.shutdown();
+    }
+
+    /**
+     * Test that a compact position gives back the same position, key and evaluation
+     */
+    @Test
+    public void testCompactPosition() {
+        String[] fens = {
+            Position.START_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+            "8/8/8/8/8/4k3/8/4K2R b K - 37 112"
+        };
+        for (String fen : fens) {
+            Position position = Position.fromFen(fen);
+            CompactPosition compact = CompactPosition.of(position);
+            Position copy = compact.toPosition();
+            assertEquals(fen, copy.toFen());
+            assertEquals(position.key(), copy.key());
+            assertEquals(Evaluation.evaluate(position), Evaluation.evaluate(copy));
+            assertEquals(compact, CompactPosition.fromFen(fen));
+        }
+    }
+
+    /**
+     * Test that the engine answers a legal move and that illegal moves are rejected
+     */
+    @Test
+    public void testPlayAgainstEngine() {
+        long id = server.createGame(Position.BLACK);
+        GameServer.MoveResult result = server.play(id, "e2e4").join();
+        assertTrue(result.isAccepted());
+        assertNotEquals(Move.NONE, result.getReply());
+        assertEquals(Position.WHITE, result.getPosition().sideToMove());
+        assertEquals(2, server.getMoves(id).length);
+        assertFalse(server.play(id, "e2e4").join().isAccepted());
+        assertEquals(2, server.getMoves(id).length);
+
+        // the engine plays white and mates in one
+        long mate = server.createGame(CompactPosition.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1"), Position.WHITE);
+        result = server.engineMove(mate).join();
+        assertEquals("a1a8", Move.toString(result.getReply()));
+        assertEquals(Position.CHECKMATE, result.getStatus());
+        assertFalse(server.play(mate, "g8h8").join().isAccepted());
+    }
+
+    /**
+     * Test many games played at once against the engine
+     */
+    @Test
+    public void testConcurrentGames() {
+        List<Long> ids = new ArrayList<>();
+        List<CompletableFuture<GameServer.MoveResult>> results = new ArrayList<>();
+        String[] openings = {"e2e4", "d2d4", "c2c4", "g1f3"};
+        for (int i = 0; i < 200; i++) {
+            long id = server.createGame(Position.BLACK);
+            ids.add(id);
+            results.add(server.play(id, openings[i % openings.length]));
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            assertTrue(results.get(i).join().isAccepted());
+            // the moves replay to the stored position
+            Position position = new Position();
+            position.setStartPosition();
+            for (int move : server.getMoves(ids.get(i))) {
+                position.makeMove(move);
+            }
+            assertEquals(position.toFen(), server.getPosition(ids.get(i)).toFen());
+            assertTrue(server.endGame(ids.get(i)));
+        }
+        assertEquals(0, server.getGameCount());
+    }
+
+    /**
+     * Test that a game ends with a threefold repetition although it is stored as a compact position
+     */
+    @Test
+    public void testRepetition() {
+        long id = server.createGame(GameServer.NO_ENGINE);
+        String[] moves = {"g1f3", "g8f6", "f3g1", "f6g8", "g1f3", "g8f6", "f3g1"};
+        for (String move : moves) {
+            GameServer.MoveResult result = server.play(id, move).join();
+            assertTrue(result.isAccepted());
+            assertEquals(Position.ONGOING, result.getStatus());
+        }
+        // the starting position for the third time
+        GameServer.MoveResult result = server.play(id, "f6g8").join();
+        assertTrue(result.isAccepted());
+        assertEquals(Position.REPETITION, result.getStatus());
+        assertFalse(server.play(id, "g1f3").join().isAccepted());
+    }
+}
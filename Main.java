@@ -1,44 +1,105 @@
-import path.to.ChessBoard;
-import path.to.ComputerPlayer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 
 /**
  * Main class that runs the chess game.
- * Initializes the chess board, move validation, computer player, and game loop.
- * Game loop prompts user for move, validates move, makes move on the board,
- * checks for checkmate or stalemate, and switches turns.
- * @param args command line arguments
+ * With the argument "uci", or when the first line typed is "uci", the engine speaks the UCI protocol
+ * (UciServer) so a chess GUI or a tournament manager can drive it.
+ * Otherwise it plays a console game: the user plays white and types moves such as e2e4 or e7e8q,
+ * the computer answers, until checkmate or stalemate.
  */
-public static void main(String[] args) {
-    ChessBoard chessBoard = new ChessBoard();
-    MoveValidation moveValidation = chessBoard.new MoveValidation();
-    boolean whiteTurn = true;
-    ComputerPlayer computerPlayer = new ComputerPlayer(chessBoard, false);
-    while (true) {
-        // display the chess board
-        chessBoard.display();
-        if (whiteTurn) {
-            // prompt the user for a move
-            int x1, y1, x2, y2;
-            // get the move from user
-            // validate the move
-            if (!moveValidation.isValidMove(x1, y1, x2, y2)) {
-                System.out.println("Invalid move, try again");
-                continue;
+public class Main {
+    private Main() {
+    }
+
+    /**
+     * Start the UCI server or the console game
+     * @param args "uci" to start the UCI server
+     * @throws IOException if standard input cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        if (args.length > 0 && args[0].equals("uci")) {
+            new UciServer(in, System.out).run();
+            return;
+        }
+        ChessBoard chessBoard = new ChessBoard();
+        // a console game has no dialog to pick the promotion piece, the typed move names it
+        chessBoard.setPromotionPolicy(PromotionPolicy.QUEEN);
+        ComputerPlayer computerPlayer = new ComputerPlayer(chessBoard, false);
+        while (true) {
+            // display the chess board
+            System.out.println(toText(chessBoard.getPosition()));
+            if (chessBoard.getPosition().sideToMove() == Position.WHITE) {
+                // prompt the user for a move
+                System.out.print("Your move: ");
+                System.out.flush();
+                String line = in.readLine();
+                if (line == null || line.trim().equals("quit")) {
+                    break;
+                }
+                if (line.trim().equals("uci")) {
+                    // a GUI started the engine without arguments
+                    UciServer server = new UciServer(in, System.out);
+                    server.handle("uci");
+                    server.run();
+                    return;
+                }
+                // validate the move and make it
+                int move = Move.parse(chessBoard.getPosition(), line.trim());
+                if (!chessBoard.playMove(move)) {
+                    System.out.println("Invalid move, try again");
+                    continue;
+                }
+            } else {
+                SearchResult result = computerPlayer.makeMove();
+                System.out.println("Computer plays " + Move.toString(result.getBestMove()));
+            }
+            // check for checkmate and the draw rules
+            int status = chessBoard.getGameStatus();
+            if (status == Position.CHECKMATE) {
+                System.out.println(toText(chessBoard.getPosition()));
+                boolean whiteMated = chessBoard.getPosition().sideToMove() == Position.WHITE;
+                System.out.println("Checkmate! " + (whiteMated ? "Black" : "White") + " wins!");
+                break;
+            } else if (status == Position.STALEMATE) {
+                System.out.println(toText(chessBoard.getPosition()));
+                System.out.println("Stalemate! The game is a draw.");
+                break;
+            } else if (Position.isGameOver(status)) {
+                System.out.println(toText(chessBoard.getPosition()));
+                System.out.println(status == Position.REPETITION ? "Threefold repetition! The game is a draw."
+                        : status == Position.FIFTY_MOVES ? "Fifty moves rule! The game is a draw."
+                        : "Insufficient material! The game is a draw.");
+                break;
             }
-            // make the move
-            chessBoard.movePiece(x1, y1, x2, y2);
-        } else {
-            computerPlayer.makeMove();
         }
-        // check for checkmate or stalemate
-        if (chessBoard.isCheckmate(whiteTurn)) {
-            System.out.println("Checkmate! " + (whiteTurn ? "White" : "Black") + " wins!");
-            break;
-        } else if (chessBoard.isStalemate(whiteTurn)) {
-            System.out.println("Stalemate! The game is a draw.");
-            break;
+    }
+
+    /**
+     * Draw a position as text, white pieces in capitals and rank 8 at the top
+     * @param position the position
+     * @return the board, one line per rank
+     */
+    static String toText(Position position) {
+        StringBuilder text = new StringBuilder();
+        for (int rank = 7; rank >= 0; rank--) {
+            text.append(rank + 1).append(' ');
+            for (int file = 0; file < 8; file++) {
+                int piece = position.pieceAt(rank * 8 + file);
+                char letter = '.';
+                if (piece != Position.NO_PIECE) {
+                    letter = Position.PIECE_LETTERS.charAt(Position.typeOf(piece));
+                    if (Position.colorOf(piece) == Position.WHITE) {
+                        letter = Character.toUpperCase(letter);
+                    }
+                }
+                text.append(' ').append(letter);
+            }
+            text.append('\n');
         }
-        // switch the turn
-        whiteTurn = !whiteTurn;
+        text.append("   a b c d e f g h");
+        return text.toString();
     }
 }
@@ -0,0 +1,194 @@
+/**
+ * MatchStatistics class turns the wins, draws and losses of an engine match into an Elo difference
+ * with its 95% error margin, the likelihood of superiority and a sequential probability ratio test.
+ * All values are from the point of view of the first engine.
+ *
+ * The SPRT tests the hypothesis that the Elo difference is elo1 against the hypothesis that it is
+ * elo0, using the normal approximation of the log-likelihood ratio over the game results.
+ * The match can stop as soon as the ratio leaves the bounds given by alpha and beta.
+ */
+public final class MatchStatistics {
+    // SPRT outcomes
+    public static final int CONTINUE = 0;
+    public static final int ACCEPT_H0 = 1;
+    public static final int ACCEPT_H1 = 2;
+
+    // z value of a two sided 95% interval
+    private static final double Z_95 = 1.959964;
+
+    private final int wins;
+    private final int draws;
+    private final int losses;
+
+    /**
+     * Constructor for the MatchStatistics class
+     * @param wins the games the first engine won
+     * @param draws the drawn games
+     * @param losses the games the first engine lost
+     */
+    public MatchStatistics(int wins, int draws, int losses) {
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getDraws() {
+        return draws;
+    }
+
+    public int getLosses() {
+        return losses;
+    }
+
+    public int getGames() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * @return the points scored per game, 0 to 1
+     */
+    public double score() {
+        int games = getGames();
+        return games == 0 ? 0.5 : (wins + draws / 2.0) / games;
+    }
+
+    /**
+     * @return the Elo difference the score corresponds to
+     */
+    public double elo() {
+        return eloFromScore(score());
+    }
+
+    /**
+     * @return half the width of the 95% confidence interval of the Elo difference
+     */
+    public double eloError() {
+        int games = getGames();
+        if (games == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double margin = Z_95 * Math.sqrt(variance() / games);
+        return (eloFromScore(score() + margin) - eloFromScore(score() - margin)) / 2;
+    }
+
+    /**
+     * @return the likelihood of superiority, the probability that the first engine is stronger
+     */
+    public double los() {
+        if (wins + losses == 0) {
+            return 0.5;
+        }
+        return 0.5 * (1 + erf((wins - losses) / Math.sqrt(2.0 * (wins + losses))));
+    }
+
+    /**
+     * Compute the log-likelihood ratio of the SPRT
+     * @param elo0 the Elo difference of the null hypothesis
+     * @param elo1 the Elo difference of the alternative hypothesis
+     * @return the log-likelihood ratio, 0 while there are too few results
+     */
+    public double llr(double elo0, double elo1) {
+        int games = getGames();
+        double variance = variance();
+        if (games == 0 || variance == 0) {
+            return 0;
+        }
+        double score0 = scoreFromElo(elo0);
+        double score1 = scoreFromElo(elo1);
+        return games * (score1 - score0) * (2 * score() - score0 - score1) / (2 * variance);
+    }
+
+    /**
+     * Decide the SPRT
+     * @param elo0 the Elo difference of the null hypothesis
+     * @param elo1 the Elo difference of the alternative hypothesis
+     * @param alpha the false positive rate
+     * @param beta the false negative rate
+     * @return CONTINUE, ACCEPT_H0 or ACCEPT_H1
+     */
+    public int sprt(double elo0, double elo1, double alpha, double beta) {
+        double llr = llr(elo0, elo1);
+        if (llr >= upperBound(alpha, beta)) {
+            return ACCEPT_H1;
+        }
+        if (llr <= lowerBound(alpha, beta)) {
+            return ACCEPT_H0;
+        }
+        return CONTINUE;
+    }
+
+    /**
+     * @param alpha the false positive rate
+     * @param beta the false negative rate
+     * @return the log-likelihood ratio below which H0 is accepted
+     */
+    public static double lowerBound(double alpha, double beta) {
+        return Math.log(beta / (1 - alpha));
+    }
+
+    /**
+     * @param alpha the false positive rate
+     * @param beta the false negative rate
+     * @return the log-likelihood ratio above which H1 is accepted
+     */
+    public static double upperBound(double alpha, double beta) {
+        return Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Convert a score per game into an Elo difference
+     * @param score the score, 0 to 1
+     * @return the Elo difference, infinite for a score of 0 or 1
+     */
+    public static double eloFromScore(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * Convert an Elo difference into the expected score per game
+     * @param elo the Elo difference
+     * @return the score, 0 to 1
+     */
+    public static double scoreFromElo(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * @return the variance of the result of one game
+     */
+    private double variance() {
+        int games = getGames();
+        if (games == 0) {
+            return 0;
+        }
+        double score = score();
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+                + losses * score * score) / games;
+    }
+
+    /**
+     * Error function, Abramowitz and Stegun 7.1.26, accurate to about 1e-7
+     */
+    private static double erf(double x) {
+        double t = 1 / (1 + 0.3275911 * Math.abs(x));
+        double y = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+                + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+        return x >= 0 ? y : -y;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Games: %d W: %d D: %d L: %d Score: %.1f%% Elo: %.1f +/- %.1f LOS: %.1f%%",
+                getGames(), wins, draws, losses, 100 * score(), elo(), eloError(), 100 * los());
+    }
+}
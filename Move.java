@@ -0,0 +1,232 @@
+/**
+ * Move class packs a chess move into a single int so moves can be stored without allocation.
+ * Bits 0-5 hold the starting square, bits 6-11 the target square,
+ * bits 12-15 the promotion piece type (0 when there is none) and bits 16-19 the move flags.
+ */
+public final class Move {
+    // no move, a1 to a1 is never a real move
+    public static final int NONE = 0;
+    // move flags
+    public static final int CAPTURE = 1;
+    public static final int EN_PASSANT = 2;
+    public static final int CASTLE = 4;
+    public static final int DOUBLE_PUSH = 8;
+
+    private Move() {
+    }
+
+    /**
+     * Pack a move into an int
+     * @param from the starting square
+     * @param to the target square
+     * @param flags the move flags
+     * @param promotion the promotion piece type, or 0 for none
+     * @return the packed move
+     */
+    public static int of(int from, int to, int flags, int promotion) {
+        return from | (to << 6) | (promotion << 12) | (flags << 16);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int promotion(int move) {
+        return (move >>> 12) & 15;
+    }
+
+    public static int flags(int move) {
+        return move >>> 16;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & (CAPTURE << 16)) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (move & (15 << 12)) != 0;
+    }
+
+    /**
+     * @param move a packed move
+     * @return true if the move neither captures nor promotes
+     */
+    public static boolean isQuiet(int move) {
+        return (move & ((CAPTURE << 16) | (15 << 12))) == 0;
+    }
+
+    /**
+     * Return the name of a square, for example "e4"
+     * @param square the square index
+     * @return the square name
+     */
+    public static String squareName(int square) {
+        return "" + (char) ('a' + (square & 7)) + (char) ('1' + (square >>> 3));
+    }
+
+    /**
+     * Parse a square name such as "e4"
+     * @param name the square name
+     * @return the square index, or Position.NO_SQUARE if the text is not a square name
+     */
+    public static int parseSquare(String name) {
+        if (name.length() != 2) {
+            return Position.NO_SQUARE;
+        }
+        int file = name.charAt(0) - 'a';
+        int rank = name.charAt(1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            return Position.NO_SQUARE;
+        }
+        return rank * 8 + file;
+    }
+
+    /**
+     * Find the legal move of a position written in coordinate notation
+     * @param position the position
+     * @param text the move text, for example "e2e4" or "e7e8q"
+     * @return the packed move, or NONE if the text is not a legal move
+     */
+    public static int parse(Position position, String text) {
+        if (text.length() < 4 || text.length() > 5) {
+            return NONE;
+        }
+        int from = parseSquare(text.substring(0, 2));
+        int to = parseSquare(text.substring(2, 4));
+        if (from == Position.NO_SQUARE || to == Position.NO_SQUARE) {
+            return NONE;
+        }
+        int promotion = text.length() == 5 ? Position.PIECE_LETTERS.indexOf(text.charAt(4)) : Position.QUEEN;
+        if (promotion < Position.KNIGHT || promotion > Position.QUEEN) {
+            return NONE;
+        }
+        int move = position.findLegalMove(from, to, promotion);
+        // a promotion must name its piece
+        return isPromotion(move) == (text.length() == 5) ? move : NONE;
+    }
+
+    /**
+     * Find the legal move of a position written in standard algebraic notation
+     * @param position the position
+     * @param san the move text, for example "Nbd7", "exd6", "e8=Q+" or "O-O"
+     * @return the packed move, or NONE if the text is not exactly one legal move
+     */
+    public static int parseSan(Position position, String san) {
+        return parseSan(position, san, new int[MoveGenerator.MAX_MOVES]);
+    }
+
+    /**
+     * Find the legal move of a position written in standard algebraic notation without allocating a move list
+     * @param position the position
+     * @param san the move text
+     * @param moves a buffer of MoveGenerator.MAX_MOVES moves
+     * @return the packed move, or NONE if the text is not exactly one legal move
+     */
+    public static int parseSan(Position position, String san, int[] moves) {
+        // check, mate and annotation marks say nothing about the move
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        String text = san.substring(0, end);
+        int count = MoveGenerator.generateLegal(position, moves);
+        if (text.equals("O-O") || text.equals("0-0") || text.equals("O-O-O") || text.equals("0-0-0")) {
+            boolean kingside = text.length() == 3;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                if ((flags(move) & CASTLE) != 0 && (to(move) > from(move)) == kingside) {
+                    return move;
+                }
+            }
+            return NONE;
+        }
+        int type = Position.PAWN;
+        int start = 0;
+        if (text.length() > 0 && "NBRQK".indexOf(text.charAt(0)) >= 0) {
+            type = "PNBRQK".indexOf(text.charAt(0));
+            start = 1;
+        }
+        int promotion = 0;
+        // the promotion piece follows an '=', some files leave the '=' out
+        int cut = text.indexOf('=');
+        int letterAt = cut + 1;
+        if (cut < 0 && text.length() > 0 && type == Position.PAWN
+                && "NBRQ".indexOf(text.charAt(text.length() - 1)) >= 0) {
+            cut = text.length() - 1;
+            letterAt = cut;
+        }
+        if (cut >= 0) {
+            if (letterAt >= text.length()) {
+                return NONE;
+            }
+            promotion = "PNBRQK".indexOf(text.charAt(letterAt));
+            if (promotion < Position.KNIGHT || promotion > Position.QUEEN) {
+                return NONE;
+            }
+            text = text.substring(0, cut);
+        }
+        // the target square is last, before it an optional 'x' and the file and/or rank of the origin
+        if (text.length() - start < 2) {
+            return NONE;
+        }
+        int to = squareIndex(text.charAt(text.length() - 2), text.charAt(text.length() - 1));
+        String origin = text.substring(start, text.length() - 2).replace("x", "");
+        int fromFile = -1;
+        int fromRank = -1;
+        for (char c : origin.toCharArray()) {
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            } else {
+                return NONE;
+            }
+        }
+        if (to < 0) {
+            return NONE;
+        }
+        int found = NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = from(move);
+            if (to(move) != to || Position.typeOf(position.pieceAt(from)) != type
+                    || (fromFile >= 0 && (from & 7) != fromFile) || (fromRank >= 0 && (from >>> 3) != fromRank)
+                    || (isPromotion(move) ? promotion(move) != promotion : promotion != 0)) {
+                continue;
+            }
+            if (found != NONE) {
+                // ambiguous
+                return NONE;
+            }
+            found = move;
+        }
+        return found;
+    }
+
+    private static int squareIndex(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return (rank - '1') * 8 + (file - 'a');
+    }
+
+    /**
+     * Return the move in coordinate notation, for example "e2e4" or "e7e8q"
+     * @param move a packed move
+     * @return the move text
+     */
+    public static String toString(int move) {
+        if (move == NONE) {
+            return "0000";
+        }
+        String text = squareName(from(move)) + squareName(to(move));
+        if (isPromotion(move)) {
+            text += "pnbrqk".charAt(promotion(move));
+        }
+        return text;
+    }
+}
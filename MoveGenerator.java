@@ -0,0 +1,346 @@
+/**
+ * MoveGenerator class writes the legal moves of a position into a caller supplied int array.
+ * Moves are packed with the Move class. Instead of playing each move to see if the king is left
+ * in check, moves are filtered through a check mask (the squares that resolve a check) and
+ * pin lines (the squares a pinned piece may still move to), so generating moves allocates nothing.
+ */
+public final class MoveGenerator {
+    // every legal move
+    public static final int ALL = 0;
+    // captures, en passant and promotions
+    public static final int CAPTURES = 1;
+    // moves that neither capture nor promote, castling included
+    public static final int QUIETS = 2;
+    // every legal move of a side in check, only king moves when in double check
+    public static final int EVASIONS = 3;
+    // enough room for the moves of any legal position
+    public static final int MAX_MOVES = 256;
+
+    private static final long RANK_1 = 0xFFL;
+    private static final long RANK_8 = 0xFFL << 56;
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * Generate the legal moves of the side to move
+     * @param pos the position
+     * @param moves the array the moves are written to, at least MAX_MOVES long
+     * @param mode ALL, CAPTURES, QUIETS or EVASIONS
+     * @return the number of moves written
+     */
+    public static int generate(Position pos, int[] moves, int mode) {
+        int us = pos.sideToMove;
+        int them = us ^ 1;
+        long own = pos.occupancy[us];
+        long enemy = pos.occupancy[them];
+        long occupied = pos.occupied;
+        int king = pos.kingSquare(us);
+        // kept up to date by the position on every move
+        long checkers = pos.checkers;
+        // squares each kind of move may land on in this mode
+        long modeMask = mode == CAPTURES ? enemy : mode == QUIETS ? ~occupied : ~own;
+        int count = 0;
+
+        // king moves, checked with the king lifted off the board so it cannot hide behind itself
+        long withoutKing = occupied ^ (1L << king);
+        long targets = Attacks.kingAttacks(king) & ~own & modeMask;
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            if (pos.attackersTo(to, them, withoutKing) == 0) {
+                moves[count++] = Move.of(king, to, (enemy & (1L << to)) != 0 ? Move.CAPTURE : 0, 0);
+            }
+        }
+        // in double check only the king can move
+        if (Long.bitCount(checkers) > 1) {
+            return count;
+        }
+        // squares that capture the checker or block the check
+        long checkMask = checkers == 0 ? ~0L
+                : checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers));
+        long pinned = pinnedPieces(pos, us, king);
+
+        if (checkers == 0 && mode != CAPTURES) {
+            count = addCastling(pos, moves, count, us);
+        }
+        long allowed = checkMask & modeMask;
+        // pinned knights can never move
+        count = addPieceMoves(pos, moves, count, pos.pieces[Position.piece(us, Position.KNIGHT)] & ~pinned,
+                Position.KNIGHT, allowed, pinned, king);
+        count = addPieceMoves(pos, moves, count, pos.pieces[Position.piece(us, Position.BISHOP)],
+                Position.BISHOP, allowed, pinned, king);
+        count = addPieceMoves(pos, moves, count, pos.pieces[Position.piece(us, Position.ROOK)],
+                Position.ROOK, allowed, pinned, king);
+        count = addPieceMoves(pos, moves, count, pos.pieces[Position.piece(us, Position.QUEEN)],
+                Position.QUEEN, allowed, pinned, king);
+        return addPawnMoves(pos, moves, count, mode, checkMask, pinned, king);
+    }
+
+    /**
+     * Generate every legal move, picking the evasion mode when the side to move is in check
+     * @param pos the position
+     * @param moves the array the moves are written to
+     * @return the number of moves written
+     */
+    public static int generateLegal(Position pos, int[] moves) {
+        return generate(pos, moves, pos.isInCheck() ? EVASIONS : ALL);
+    }
+
+    /**
+     * Check that a move found elsewhere, in the transposition table or a killer slot, is legal in this position.
+     * Only the one move is looked at, no move list is generated except for castling.
+     * @param pos the position
+     * @param move the packed move, with the flags it was generated with
+     * @return true if generate would produce exactly this move
+     */
+    public static boolean isLegal(Position pos, int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        int promotion = Move.promotion(move);
+        int us = pos.sideToMove;
+        int them = us ^ 1;
+        int piece = pos.mailbox[from];
+        if (move == Move.NONE || piece == Position.NO_PIECE || Position.colorOf(piece) != us) {
+            return false;
+        }
+        int type = Position.typeOf(piece);
+        if ((flags & Move.CASTLE) != 0) {
+            return type == Position.KING && pos.findLegalMove(from, to, 0) == move;
+        }
+        int target = pos.mailbox[to];
+        boolean capture = (flags & Move.CAPTURE) != 0;
+        boolean enPassant = (flags & Move.EN_PASSANT) != 0;
+        // the flags must match the board: a capture needs an enemy piece on the target, other moves an empty one
+        if (enPassant ? target != Position.NO_PIECE || to != pos.enPassantSquare
+                : capture ? target == Position.NO_PIECE || Position.colorOf(target) != them
+                        || Position.typeOf(target) == Position.KING
+                : target != Position.NO_PIECE) {
+            return false;
+        }
+        long occupied = pos.occupied;
+        int king = pos.kingSquare(us);
+        if (type == Position.PAWN) {
+            boolean lastRank = us == Position.WHITE ? to >= 56 : to < 8;
+            if (lastRank != (promotion != 0)) {
+                return false;
+            }
+            int forward = us == Position.WHITE ? 8 : -8;
+            if (capture) {
+                if ((Attacks.pawnAttacks(us, from) & (1L << to)) == 0) {
+                    return false;
+                }
+            } else if ((flags & Move.DOUBLE_PUSH) != 0) {
+                int startRank = us == Position.WHITE ? 1 : 6;
+                if (from >>> 3 != startRank || to != from + 2 * forward
+                        || pos.mailbox[from + forward] != Position.NO_PIECE) {
+                    return false;
+                }
+            } else if (to != from + forward) {
+                return false;
+            }
+        } else {
+            if (promotion != 0 || (flags & (Move.EN_PASSANT | Move.DOUBLE_PUSH)) != 0) {
+                return false;
+            }
+            long attacks = type == Position.KNIGHT ? Attacks.knightAttacks(from)
+                    : type == Position.BISHOP ? Attacks.bishopAttacks(from, occupied)
+                    : type == Position.ROOK ? Attacks.rookAttacks(from, occupied)
+                    : type == Position.QUEEN ? Attacks.queenAttacks(from, occupied)
+                    : Attacks.kingAttacks(from);
+            if ((attacks & (1L << to)) == 0) {
+                return false;
+            }
+            if (type == Position.KING) {
+                // the king may not step onto an attacked square, looked at with the king lifted off the board
+                return pos.attackersTo(to, them, occupied ^ (1L << from)) == 0;
+            }
+        }
+        long checkers = pos.checkers;
+        if (Long.bitCount(checkers) > 1) {
+            return false;
+        }
+        long checkMask = checkers == 0 ? ~0L
+                : checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers));
+        if (enPassant) {
+            // looks at the king with both pawns off the board, which covers pins
+            return isLegalEnPassant(pos, from, to, checkMask);
+        }
+        if ((checkMask & (1L << to)) == 0) {
+            return false;
+        }
+        // a pinned piece may only move along the line through its king
+        return (pinnedPieces(pos, us, king) & (1L << from)) == 0 || (Attacks.line(king, from) & (1L << to)) != 0;
+    }
+
+    /**
+     * Find the pieces of one side that are pinned to their king by an enemy slider
+     * @param pos the position
+     * @param us the color of the king
+     * @param king the king square
+     * @return bitboard of the pinned pieces
+     */
+    static long pinnedPieces(Position pos, int us, int king) {
+        int them = us ^ 1;
+        long enemy = pos.occupancy[them];
+        long queens = pos.pieces[Position.piece(them, Position.QUEEN)];
+        // enemy sliders that would attack the king if none of our pieces were in the way
+        long snipers = (Attacks.rookAttacks(king, enemy) & (pos.pieces[Position.piece(them, Position.ROOK)] | queens))
+                | (Attacks.bishopAttacks(king, enemy) & (pos.pieces[Position.piece(them, Position.BISHOP)] | queens));
+        long pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Attacks.between(king, sniper) & pos.occupied;
+            if (Long.bitCount(blockers) == 1) {
+                pinned |= blockers & pos.occupancy[us];
+            }
+        }
+        return pinned;
+    }
+
+    private static int addPieceMoves(Position pos, int[] moves, int count, long pieces, int type,
+                                     long allowed, long pinned, int king) {
+        long enemy = pos.occupancy[pos.sideToMove ^ 1];
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            long targets;
+            switch (type) {
+                case Position.KNIGHT:
+                    targets = Attacks.knightAttacks(from);
+                    break;
+                case Position.BISHOP:
+                    targets = Attacks.bishopAttacks(from, pos.occupied);
+                    break;
+                case Position.ROOK:
+                    targets = Attacks.rookAttacks(from, pos.occupied);
+                    break;
+                default:
+                    targets = Attacks.queenAttacks(from, pos.occupied);
+                    break;
+            }
+            targets &= allowed;
+            // a pinned piece may only move along the line through its king
+            if ((pinned & (1L << from)) != 0) {
+                targets &= Attacks.line(king, from);
+            }
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                moves[count++] = Move.of(from, to, (enemy & (1L << to)) != 0 ? Move.CAPTURE : 0, 0);
+            }
+        }
+        return count;
+    }
+
+    private static int addPawnMoves(Position pos, int[] moves, int count, int mode,
+                                    long checkMask, long pinned, int king) {
+        int us = pos.sideToMove;
+        long enemy = pos.occupancy[us ^ 1];
+        long empty = ~pos.occupied;
+        int forward = us == Position.WHITE ? 8 : -8;
+        int startRank = us == Position.WHITE ? 1 : 6;
+        long lastRank = us == Position.WHITE ? RANK_8 : RANK_1;
+        boolean noisy = mode != QUIETS;
+        boolean quiet = mode != CAPTURES;
+        long pawns = pos.pieces[Position.piece(us, Position.PAWN)];
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            long allowed = checkMask;
+            if ((pinned & (1L << from)) != 0) {
+                allowed &= Attacks.line(king, from);
+            }
+            // pushes
+            long pushes = 0L;
+            int single = from + forward;
+            if ((empty & (1L << single)) != 0) {
+                pushes = 1L << single;
+                int twice = single + forward;
+                if ((from >>> 3) == startRank && (empty & (1L << twice)) != 0) {
+                    long push = (1L << twice) & allowed;
+                    if (quiet && push != 0) {
+                        moves[count++] = Move.of(from, twice, Move.DOUBLE_PUSH, 0);
+                    }
+                }
+            }
+            pushes &= allowed;
+            if (pushes != 0) {
+                if ((pushes & lastRank) != 0) {
+                    if (noisy) {
+                        count = addPromotions(moves, count, from, single, 0);
+                    }
+                } else if (quiet) {
+                    moves[count++] = Move.of(from, single, 0, 0);
+                }
+            }
+            if (!noisy) {
+                continue;
+            }
+            // captures
+            long attacks = Attacks.pawnAttacks(us, from);
+            long captures = attacks & enemy & allowed;
+            while (captures != 0) {
+                int to = Long.numberOfTrailingZeros(captures);
+                captures &= captures - 1;
+                if ((lastRank & (1L << to)) != 0) {
+                    count = addPromotions(moves, count, from, to, Move.CAPTURE);
+                } else {
+                    moves[count++] = Move.of(from, to, Move.CAPTURE, 0);
+                }
+            }
+            int ep = pos.enPassantSquare;
+            if (ep != Position.NO_SQUARE && (attacks & (1L << ep)) != 0 && isLegalEnPassant(pos, from, ep, checkMask)) {
+                moves[count++] = Move.of(from, ep, Move.CAPTURE | Move.EN_PASSANT, 0);
+            }
+        }
+        return count;
+    }
+
+    private static int addPromotions(int[] moves, int count, int from, int to, int flags) {
+        moves[count++] = Move.of(from, to, flags, Position.QUEEN);
+        moves[count++] = Move.of(from, to, flags, Position.KNIGHT);
+        moves[count++] = Move.of(from, to, flags, Position.ROOK);
+        moves[count++] = Move.of(from, to, flags, Position.BISHOP);
+        return count;
+    }
+
+    /**
+     * En passant removes two pawns from the same rank, which can uncover an attack on the king
+     * that no pin mask sees, so the sliders are probed again on the occupancy after the capture
+     */
+    private static boolean isLegalEnPassant(Position pos, int from, int to, long checkMask) {
+        int us = pos.sideToMove;
+        int them = us ^ 1;
+        int capturedSquare = us == Position.WHITE ? to - 8 : to + 8;
+        // the capture must remove the checker or block the check
+        if ((checkMask & ((1L << to) | (1L << capturedSquare))) == 0) {
+            return false;
+        }
+        int king = pos.kingSquare(us);
+        long occupied = (pos.occupied ^ (1L << from) ^ (1L << capturedSquare)) | (1L << to);
+        long queens = pos.pieces[Position.piece(them, Position.QUEEN)];
+        return (Attacks.rookAttacks(king, occupied) & (pos.pieces[Position.piece(them, Position.ROOK)] | queens)) == 0
+                && (Attacks.bishopAttacks(king, occupied) & (pos.pieces[Position.piece(them, Position.BISHOP)] | queens)) == 0;
+    }
+
+    private static int addCastling(Position pos, int[] moves, int count, int us) {
+        int them = us ^ 1;
+        int rights = pos.castlingRights;
+        long occupied = pos.occupied;
+        int king = us == Position.WHITE ? 4 : 60;
+        int kingside = us == Position.WHITE ? Position.WHITE_KINGSIDE : Position.BLACK_KINGSIDE;
+        int queenside = us == Position.WHITE ? Position.WHITE_QUEENSIDE : Position.BLACK_QUEENSIDE;
+        if ((rights & kingside) != 0 && (occupied & (3L << (king + 1))) == 0
+                && pos.attackersTo(king + 1, them, occupied) == 0 && pos.attackersTo(king + 2, them, occupied) == 0) {
+            moves[count++] = Move.of(king, king + 2, Move.CASTLE, 0);
+        }
+        if ((rights & queenside) != 0 && (occupied & (7L << (king - 3))) == 0
+                && pos.attackersTo(king - 1, them, occupied) == 0 && pos.attackersTo(king - 2, them, occupied) == 0) {
+            moves[count++] = Move.of(king, king - 2, Move.CASTLE, 0);
+        }
+        return count;
+    }
+}
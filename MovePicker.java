@@ -0,0 +1,255 @@
+/**
+ * MovePicker class hands out the legal moves of a search node one at a time, best first, in stages:
+ * the hash move, the captures and queen promotions by most valuable victim and least valuable attacker
+ * (MVV-LVA), the two killer moves, the quiet moves by their history score and last the captures that
+ * lose material in the static exchange on their square (StaticExchange). Each stage is only generated
+ * when the stage before it is used up, so a node cut off by the hash move never generates a move and
+ * one cut off by a capture never generates the quiet moves. Captures are picked best first one at a time;
+ * the quiet moves, which are mostly all searched once their stage is reached, are sorted once.
+ *
+ * A Search keeps one MovePicker per ply and reuses it for every node at that ply, the quiescence search
+ * included, where it only hands out the captures that do not lose material.
+ */
+public final class MovePicker {
+    // stages in the order they are handed out
+    private static final int HASH_MOVE = 0;
+    private static final int GENERATE_CAPTURES = 1;
+    private static final int GOOD_CAPTURES = 2;
+    private static final int FIRST_KILLER = 3;
+    private static final int SECOND_KILLER = 4;
+    private static final int GENERATE_QUIETS = 5;
+    private static final int QUIETS = 6;
+    private static final int BAD_CAPTURES = 7;
+    private static final int DONE = 8;
+
+    private final Position position;
+    // counts the move generations, owned by the search thread
+    private final EngineStatistics statistics;
+    private final int[] captures = new int[MoveGenerator.MAX_MOVES];
+    private final int[] captureScores = new int[MoveGenerator.MAX_MOVES];
+    private final int[] quiets = new int[MoveGenerator.MAX_MOVES];
+    private final int[] quietScores = new int[MoveGenerator.MAX_MOVES];
+    private final int[] badCaptures = new int[MoveGenerator.MAX_MOVES];
+    private int stage;
+    private int hashMove;
+    private int firstKiller;
+    private int secondKiller;
+    // history scores of the search, indexed by historyIndex
+    private int[] history;
+    private int count;
+    private int next;
+    private int badCount;
+    // true when only the captures that do not lose material are handed out
+    private boolean quiescence;
+
+    /**
+     * Constructor for the MovePicker class
+     * @param position the position of the search, the picker looks at it as it is when next is called
+     * @param statistics the counters of the search thread
+     */
+    public MovePicker(Position position, EngineStatistics statistics) {
+        this.position = position;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Start handing out the moves of the current position
+     * @param hashMove the move from the transposition table, or Move.NONE; it is checked for legality
+     * @param firstKiller a quiet move that caused a cutoff at this ply before, or Move.NONE
+     * @param secondKiller the killer move before that, or Move.NONE
+     * @param history the history scores, indexed by historyIndex
+     */
+    public void reset(int hashMove, int firstKiller, int secondKiller, int[] history) {
+        this.hashMove = hashMove;
+        this.firstKiller = firstKiller;
+        this.secondKiller = secondKiller;
+        this.history = history;
+        stage = HASH_MOVE;
+        badCount = 0;
+        quiescence = false;
+    }
+
+    /**
+     * Start handing out the captures and queen promotions of the current position for the quiescence search,
+     * without the captures that lose material in the exchange
+     */
+    public void resetQuiescence() {
+        hashMove = Move.NONE;
+        firstKiller = Move.NONE;
+        secondKiller = Move.NONE;
+        stage = GENERATE_CAPTURES;
+        badCount = 0;
+        quiescence = true;
+    }
+
+    /**
+     * @param color the side that plays the move
+     * @param move a packed move
+     * @return the index of the move in a history table of 2 * 64 * 64 entries
+     */
+    public static int historyIndex(int color, int move) {
+        return (color << 12) | (Move.from(move) << 6) | Move.to(move);
+    }
+
+    /**
+     * Return the next move to search
+     * @return the next legal move, or Move.NONE when all moves were handed out
+     */
+    // each stage falls through to the next one when it has no move left
+    @SuppressWarnings("fallthrough")
+    public int next() {
+        switch (stage) {
+            case HASH_MOVE:
+                stage = GENERATE_CAPTURES;
+                if (hashMove != Move.NONE && MoveGenerator.isLegal(position, hashMove)) {
+                    return hashMove;
+                }
+                // fall through
+            case GENERATE_CAPTURES:
+                count = MoveGenerator.generate(position, captures, MoveGenerator.CAPTURES);
+                countGeneration();
+                for (int i = 0; i < count; i++) {
+                    captureScores[i] = mvvLva(captures[i]);
+                }
+                next = 0;
+                stage = GOOD_CAPTURES;
+                // fall through
+            case GOOD_CAPTURES:
+                while (next < count) {
+                    int move = pickBest(captures, captureScores);
+                    if (move == hashMove) {
+                        continue;
+                    }
+                    if (!isGoodCapture(move)) {
+                        badCaptures[badCount++] = move;
+                        continue;
+                    }
+                    return move;
+                }
+                if (quiescence) {
+                    stage = DONE;
+                    return Move.NONE;
+                }
+                stage = FIRST_KILLER;
+                // fall through
+            case FIRST_KILLER:
+                stage = SECOND_KILLER;
+                if (isPlayableKiller(firstKiller)) {
+                    return firstKiller;
+                }
+                // fall through
+            case SECOND_KILLER:
+                stage = GENERATE_QUIETS;
+                if (secondKiller != firstKiller && isPlayableKiller(secondKiller)) {
+                    return secondKiller;
+                }
+                // fall through
+            case GENERATE_QUIETS:
+                count = MoveGenerator.generate(position, quiets, MoveGenerator.QUIETS);
+                countGeneration();
+                int color = position.sideToMove;
+                for (int i = 0; i < count; i++) {
+                    quietScores[i] = history[historyIndex(color, quiets[i])];
+                }
+                sort(quiets, quietScores, count);
+                next = 0;
+                stage = QUIETS;
+                // fall through
+            case QUIETS:
+                while (next < count) {
+                    int move = quiets[next++];
+                    if (move != hashMove && move != firstKiller && move != secondKiller) {
+                        return move;
+                    }
+                }
+                next = 0;
+                stage = BAD_CAPTURES;
+                // fall through
+            case BAD_CAPTURES:
+                if (next < badCount) {
+                    return badCaptures[next++];
+                }
+                stage = DONE;
+                // fall through
+            default:
+                return Move.NONE;
+        }
+    }
+
+    /**
+     * A killer is only played from its own stage when it is a quiet move, captures come with their stage
+     */
+    private boolean isPlayableKiller(int killer) {
+        return killer != Move.NONE && killer != hashMove && Move.isQuiet(killer)
+                && MoveGenerator.isLegal(position, killer);
+    }
+
+    private void countGeneration() {
+        if (EngineStatistics.ENABLED) {
+            statistics.moveGenerations++;
+        }
+    }
+
+    /**
+     * Move the best scored of the moves not handed out yet to the front and take it
+     */
+    private int pickBest(int[] moves, int[] scores) {
+        int best = next;
+        for (int i = next + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        moves[best] = moves[next];
+        scores[best] = scores[next];
+        moves[next] = move;
+        next++;
+        return move;
+    }
+
+    /**
+     * Sort moves by their scores, highest first; an insertion sort, as most quiet moves have no history yet
+     */
+    private static void sort(int[] moves, int[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Score a capture or promotion: the victim first, then the cheapest attacker
+     */
+    private int mvvLva(int move) {
+        int attacker = Position.typeOf(position.mailbox[Move.from(move)]);
+        int victim = (Move.flags(move) & Move.EN_PASSANT) != 0 ? Position.PAWN
+                : position.mailbox[Move.to(move)] == Position.NO_PIECE ? Position.NO_PIECE
+                : Position.typeOf(position.mailbox[Move.to(move)]);
+        int score = victim == Position.NO_PIECE ? 0 : 8 * (victim + 1);
+        if (Move.promotion(move) == Position.QUEEN) {
+            score += 8 * Position.QUEEN;
+        }
+        return score - attacker;
+    }
+
+    /**
+     * A capture is good when it does not lose material in the exchange on its square;
+     * an underpromotion is rarely the best move
+     */
+    private boolean isGoodCapture(int move) {
+        int promotion = Move.promotion(move);
+        if (promotion != 0) {
+            return promotion == Position.QUEEN;
+        }
+        return StaticExchange.isAtLeast(position, move, 0);
+    }
+}
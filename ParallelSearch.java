@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelSearch class runs a Lazy SMP search: the main search and a number of helper searches
+ * work on their own copies of the position at the same time and share one TranspositionTable.
+ * The helpers never report a move, they only fill the table with results the main search
+ * picks up, so the main search reaches each depth sooner.
+ *
+ * Usage: java ParallelSearch depth threads [fen] prints the time to depth and the extra nodes
+ * compared with a single thread.
+ */
+public class ParallelSearch {
+    private final TranspositionTable table;
+    private final int threads;
+    // runs the helper searches, the main search runs on the calling thread
+    private final ExecutorService helpers;
+    // main search of the search in progress, null when idle
+    private volatile Search running;
+    // endgame tables used by all threads, or null
+    private Tablebases tablebases;
+    // told about each depth the main search completes, or null
+    private Search.IterationListener listener;
+    private long mainNodes;
+    private long helperNodes;
+    // all the searches of the running or last search, the main search first
+    private volatile List<Search> lastSearches = new ArrayList<>();
+    // one pawn table per thread id, kept from search to search as pawn structures change slowly
+    private final PawnTable[] pawnTables;
+    // number of best lines the main search finds, the helpers only look for one
+    private int multiPv = 1;
+
+    /**
+     * Constructor for the ParallelSearch class
+     * @param table the transposition table shared by all threads
+     * @param threads the total number of search threads, at least 1
+     */
+    public ParallelSearch(TranspositionTable table, int threads) {
+        this.table = table;
+        this.threads = Math.max(1, threads);
+        this.pawnTables = new PawnTable[this.threads];
+        setPawnTableSize(PawnTable.DEFAULT_SIZE_KB);
+        this.helpers = this.threads > 1 ? Executors.newFixedThreadPool(this.threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Let every thread score positions from the endgame tables
+     * @param tablebases the tables, or null
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Report every depth the main search completes, with the nodes of all threads
+     * @param listener the listener, or null
+     */
+    public void setListener(Search.IterationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replace the pawn table of every thread, call it between searches
+     * @param sizeKb the memory budget of each thread's table in kilobytes
+     */
+    public void setPawnTableSize(int sizeKb) {
+        for (int id = 0; id < threads; id++) {
+            pawnTables[id] = new PawnTable(sizeKb);
+        }
+    }
+
+    /**
+     * Let the main search find several best lines, see Search.setMultiPv
+     * @param multiPv the number of lines, at least 1
+     */
+    public void setMultiPv(int multiPv) {
+        this.multiPv = Math.max(1, multiPv);
+    }
+
+    /**
+     * @return the lines of the last depth the main search completed, best first
+     */
+    public SearchResult[] getLines() {
+        List<Search> searches = lastSearches;
+        return searches.isEmpty() ? new SearchResult[0] : searches.get(0).getLines();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the nodes searched by the main thread in the last search
+     */
+    public long getMainNodes() {
+        return mainNodes;
+    }
+
+    /**
+     * @return the nodes searched by all helper threads in the last search
+     */
+    public long getHelperNodes() {
+        return helperNodes;
+    }
+
+    /**
+     * Sum the counters of all the threads, it can be called while a search runs
+     * @return the counters of the running or last search
+     */
+    public EngineStatistics getStatistics() {
+        EngineStatistics total = new EngineStatistics();
+        for (Search search : lastSearches) {
+            total.add(search.getStatistics());
+        }
+        return total;
+    }
+
+    /**
+     * Search a position with all the threads and no time limit
+     * @param position the position, it is not changed
+     * @param maxDepth the depth the main search goes to
+     * @param nodeLimit the node limit of the main search
+     * @return the result of the main search, with the nodes of all threads
+     */
+    public SearchResult search(Position position, int maxDepth, long nodeLimit) {
+        return search(position, maxDepth, nodeLimit, TimeControl.INFINITE);
+    }
+
+    /**
+     * Search a position with all the threads
+     * @param position the position, it is not changed
+     * @param maxDepth the depth the main search goes to
+     * @param nodeLimit the node limit of the main search
+     * @param timeControl the time the main search may use
+     * @return the result of the main search, with the nodes of all threads
+     */
+    public SearchResult search(Position position, int maxDepth, long nodeLimit, TimeControl timeControl) {
+        table.newSearch();
+        List<Search> searches = new ArrayList<>();
+        List<Future<SearchResult>> results = new ArrayList<>();
+        for (int id = 1; id < threads; id++) {
+            Search helper = new Search(new Position(position), table, id);
+            helper.setTablebases(tablebases);
+            helper.setPawnTable(pawnTables[id]);
+            searches.add(helper);
+            // helpers keep going until the main search is done
+            results.add(helpers.submit(() -> helper.search(Search.MAX_PLY, Long.MAX_VALUE)));
+        }
+        Search main = new Search(new Position(position), table, 0);
+        main.setTablebases(tablebases);
+        main.setPawnTable(pawnTables[0]);
+        main.setMultiPv(multiPv);
+        List<Search> all = new ArrayList<>();
+        all.add(main);
+        all.addAll(searches);
+        lastSearches = all;
+        Search.IterationListener reporter = listener;
+        if (reporter != null) {
+            main.setListener(iteration -> {
+                // the helper counts are read while they run, close enough for reporting
+                long nodes = iteration.getNodes();
+                for (Search helper : searches) {
+                    nodes += helper.getNodes();
+                }
+                reporter.iterationDone(new SearchResult(iteration.getBestMove(), iteration.getScore(),
+                        iteration.getDepth(), nodes, iteration.getPv()));
+            });
+        }
+        running = main;
+        SearchResult result;
+        Throwable helperFailure = null;
+        try {
+            result = main.search(maxDepth, nodeLimit, timeControl);
+        } finally {
+            // the helpers are stopped and waited for even when the main search fails,
+            // or they would search on and hold the pool threads and pawn tables of the next search
+            running = null;
+            for (Search helper : searches) {
+                helper.stop();
+            }
+            helperNodes = 0;
+            for (Future<SearchResult> helperResult : results) {
+                try {
+                    helperNodes += helperResult.get().getNodes();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    if (helperFailure == null) {
+                        helperFailure = e.getCause();
+                    }
+                }
+            }
+        }
+        if (helperFailure != null) {
+            throw new IllegalStateException("Helper search failed", helperFailure);
+        }
+        mainNodes = result.getNodes();
+        return new SearchResult(result.getBestMove(), result.getScore(), result.getDepth(),
+                mainNodes + helperNodes, result.getPv());
+    }
+
+    /**
+     * Abort the search in progress, it returns the best move of its last completed iteration.
+     * It can be called from any thread.
+     */
+    public void stop() {
+        Search main = running;
+        if (main != null) {
+            main.stop();
+        }
+    }
+
+    /**
+     * Stop the helper threads, the object cannot search any more afterwards
+     */
+    public void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    /**
+     * Compare the time to depth and the node count of one thread with the given number of threads
+     * @param args depth threads [fen]
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Position position = Position.fromFen(args.length > 2 ? args[2] : Position.START_FEN);
+
+        ParallelSearch single = new ParallelSearch(new TranspositionTable(256), 1);
+        long start = System.nanoTime();
+        SearchResult singleResult = single.search(position, depth, Long.MAX_VALUE);
+        long singleTime = System.nanoTime() - start;
+
+        ParallelSearch parallel = new ParallelSearch(new TranspositionTable(256), threads);
+        start = System.nanoTime();
+        SearchResult parallelResult = parallel.search(position, depth, Long.MAX_VALUE);
+        long parallelTime = System.nanoTime() - start;
+        parallel.shutdown();
+
+        System.out.println("1 thread:   " + singleTime / 1000000 + " ms, " + singleResult);
+        System.out.println("            " + single.getStatistics());
+        System.out.println(threads + " threads: " + parallelTime / 1000000 + " ms, " + parallelResult);
+        System.out.println("            " + parallel.getStatistics());
+        System.out.printf("Speedup: %.2f%n", (double) singleTime / Math.max(1, parallelTime));
+        System.out.printf("Extra nodes: %.1f%%%n",
+                100.0 * (parallelResult.getNodes() - singleResult.getNodes()) / Math.max(1, singleResult.getNodes()));
+    }
+}
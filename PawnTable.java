@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+/**
+ * PawnTable class remembers the pawn terms of the evaluation by pawn key. Pawns move rarely, so a search
+ * meets the same few pawn structures at millions of leaves; with the table the passed, doubled, isolated
+ * and backward pawns are worked out once per structure and the pawn shields once per structure and
+ * pair of king squares.
+ *
+ * A table belongs to one search thread and takes no locks. Entries are spread over plain arrays,
+ * one per field, with no object per entry, and an entry is simply overwritten by the next structure
+ * with the same index.
+ */
+public final class PawnTable {
+    // default size in kilobytes
+    public static final int DEFAULT_SIZE_KB = 1024;
+    // bytes used by one entry: the key, the structure score, the king squares and the shelter score
+    private static final int ENTRY_BYTES = 20;
+
+    private final long[] keys;
+    // passed, doubled, isolated and backward pawn scores, packed by Evaluation.pack
+    private final int[] structures;
+    // king squares the shelter was computed for, white in bits 0-5 and black in bits 6-11
+    private final int[] kings;
+    // pawn shield scores, packed by Evaluation.pack
+    private final int[] shelters;
+    private final int mask;
+    private long probes;
+    private long hits;
+
+    /**
+     * Create a table of the default size
+     */
+    public PawnTable() {
+        this(DEFAULT_SIZE_KB);
+    }
+
+    /**
+     * Create a table using at most the given amount of memory
+     * @param sizeKb the memory budget in kilobytes
+     */
+    public PawnTable(int sizeKb) {
+        long entries = Long.highestOneBit(Math.max(1L, (long) sizeKb * 1024 / ENTRY_BYTES));
+        entries = Math.min(entries, 1L << 30);
+        keys = new long[(int) entries];
+        structures = new int[(int) entries];
+        kings = new int[(int) entries];
+        shelters = new int[(int) entries];
+        mask = (int) entries - 1;
+    }
+
+    /**
+     * @return the number of entries the table can hold
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Remove all the entries
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(structures, 0);
+        Arrays.fill(kings, 0);
+        Arrays.fill(shelters, 0);
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * Look up the pawn terms of a position, computing and storing them when they are not in the table.
+     * A fresh entry holds key 0 and score 0, which is right for a position without pawns.
+     * @param position the position
+     * @return the midgame and endgame pawn scores from white's point of view, packed by Evaluation.pack
+     */
+    public int probe(Position position) {
+        long key = position.pawnKey;
+        int index = (int) key & mask;
+        // no position has both kings on a1, so 0 never matches a real pair of king squares
+        int kingSquares = position.kingSquares[Position.WHITE] | (position.kingSquares[Position.BLACK] << 6);
+        if (EngineStatistics.ENABLED) {
+            probes++;
+        }
+        if (keys[index] != key) {
+            keys[index] = key;
+            structures[index] = Evaluation.evaluatePawnStructure(position);
+            kings[index] = -1;
+        } else if (EngineStatistics.ENABLED) {
+            hits++;
+        }
+        if (kings[index] != kingSquares) {
+            kings[index] = kingSquares;
+            shelters[index] = Evaluation.evaluateShelter(position);
+        }
+        return structures[index] + shelters[index];
+    }
+
+    /**
+     * @return the number of lookups since the table was created or cleared
+     */
+    public long getProbes() {
+        return probes;
+    }
+
+    /**
+     * @return the number of lookups that found the pawn structure in the table
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the share of lookups that found the pawn structure in the table
+     */
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+}
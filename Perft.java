@@ -0,0 +1,137 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Perft class counts the leaf nodes of the legal move tree of a position to a fixed depth.
+ * The counts are compared with published reference numbers to prove the move generator correct,
+ * and the time taken gives the raw move generation speed in nodes per second.
+ *
+ * Usage: java Perft [-threads N] [-divide] depth [fen]
+ */
+public class Perft {
+
+    private Perft() {
+    }
+
+    /**
+     * Count the leaf nodes of a position on the calling thread
+     * @param position the position, left unchanged when the method returns
+     * @param depth the depth in plies
+     * @return the number of leaf nodes
+     */
+    public static long perft(Position position, int depth) {
+        return perft(position, depth, new int[depth + 1][MoveGenerator.MAX_MOVES]);
+    }
+
+    private static long perft(Position position, int depth, int[][] moveLists) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = moveLists[depth];
+        int count = MoveGenerator.generateLegal(position, moves);
+        // the moves at the last ply are counted, not played
+        if (depth == 1) {
+            return count;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            nodes += perft(position, depth - 1, moveLists);
+            position.unmakeMove(moves[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Count the leaf nodes below each root move
+     * @param position the position, left unchanged when the method returns
+     * @param depth the depth in plies, at least 1
+     * @return the root moves in coordinate notation with their node counts
+     */
+    public static List<String> divide(Position position, int depth) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(position, moves);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            lines.add(Move.toString(moves[i]) + ": " + perft(position, depth - 1));
+            position.unmakeMove(moves[i]);
+        }
+        return lines;
+    }
+
+    /**
+     * Count the leaf nodes with the root moves shared out over a pool of threads.
+     * Every task works on its own copy of the position.
+     * @param position the position, left unchanged when the method returns
+     * @param depth the depth in plies
+     * @param threads the number of worker threads
+     * @return the number of leaf nodes
+     */
+    public static long perftParallel(Position position, int depth, int threads) {
+        if (depth <= 1) {
+            return perft(position, depth);
+        }
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(position, moves);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Position child = new Position(position);
+                child.makeMove(moves[i]);
+                results.add(pool.submit(() -> perft(child, depth - 1)));
+            }
+            long nodes = 0;
+            for (Future<Long> result : results) {
+                nodes += result.get();
+            }
+            return nodes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Perft interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Perft failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Run perft from the command line and print the node count, the time and the speed
+     * @param args [-threads N] [-divide] depth [fen]
+     */
+    public static void main(String[] args) {
+        int threads = 1;
+        boolean divide = false;
+        int depth = 5;
+        String fen = Position.START_FEN;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-divide")) {
+                divide = true;
+            } else if (args[i].matches("\\d+")) {
+                depth = Integer.parseInt(args[i]);
+            } else {
+                fen = args[i];
+            }
+        }
+        Position position = Position.fromFen(fen);
+        if (divide) {
+            for (String line : divide(position, depth)) {
+                System.out.println(line);
+            }
+        }
+        long start = System.nanoTime();
+        long nodes = threads > 1 ? perftParallel(position, depth, threads) : perft(position, depth);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        System.out.println("Nodes: " + nodes);
+        System.out.println("Time: " + elapsed / 1000000 + " ms");
+        System.out.println("NPS: " + nodes * 1000000000L / elapsed);
+    }
+}
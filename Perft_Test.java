@@ -0,0 +1,131 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Perft_Test is a JUnit test class for the move generator.
+ * It compares perft node counts with the published reference numbers of the standard test positions.
+ */
+public class Perft_Test {
+
+    // position 2 of the chess programming wiki, "Kiwipete"
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final String POSITION_3 = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+    private static final String POSITION_4 = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+    private static final String POSITION_5 = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+    private static final String POSITION_6 = "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+
+    /**
+     * Test the starting position
+     */
+    @Test
+    public void testStartPosition() {
+        Position position = Position.fromFen(Position.START_FEN);
+        assertEquals(20, Perft.perft(position, 1));
+        assertEquals(400, Perft.perft(position, 2));
+        assertEquals(8902, Perft.perft(position, 3));
+        assertEquals(197281, Perft.perft(position, 4));
+    }
+
+    /**
+     * Count the leaf nodes with moves from a MovePicker at every ply, given hash and killer moves
+     * taken from the pool of moves seen so far, which are often illegal in the position
+     */
+    private static long pickerPerft(Position position, int depth, MovePicker[] pickers, int[] pool, int[] history) {
+        if (depth == 0) {
+            return 1;
+        }
+        MovePicker picker = pickers[depth];
+        int hashMove = pool[(int) (position.key() & 63)];
+        picker.reset(hashMove, pool[(int) (position.key() >>> 8 & 63)], pool[depth], history);
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(position, legal);
+        Set<Integer> seen = new HashSet<>();
+        long nodes = 0;
+        for (int move = picker.next(); move != Move.NONE; move = picker.next()) {
+            assertTrue("duplicate " + Move.toString(move), seen.add(move));
+            if (seen.size() == 1 && MoveGenerator.isLegal(position, hashMove)) {
+                assertEquals(hashMove, move);
+            }
+            pool[(int) (nodes + position.key() & 63)] = move;
+            position.makeMove(move);
+            nodes += pickerPerft(position, depth - 1, pickers, pool, history);
+            position.unmakeMove(move);
+        }
+        assertEquals(count, seen.size());
+        return nodes;
+    }
+
+    /**
+     * Test that the move picker hands out every legal move exactly once, the hash move first
+     */
+    @Test
+    public void testMovePicker() {
+        for (String fen : new String[] {KIWIPETE, POSITION_4, POSITION_5}) {
+            Position position = Position.fromFen(fen);
+            MovePicker[] pickers = new MovePicker[4];
+            for (int i = 0; i < pickers.length; i++) {
+                pickers[i] = new MovePicker(position, new EngineStatistics());
+            }
+            // random history scores so the quiet moves come out in a shuffled order
+            int[] history = new Random(1).ints(2 * 64 * 64, -1000, 1000).toArray();
+            assertEquals(Perft.perft(Position.fromFen(fen), 3),
+                    pickerPerft(position, 3, pickers, new int[64], history));
+            assertEquals(fen, position.toFen());
+        }
+    }
+
+    /**
+     * Test a position full of castling, en passant and promotion cases
+     */
+    @Test
+    public void testKiwipete() {
+        Position position = Position.fromFen(KIWIPETE);
+        assertEquals(48, Perft.perft(position, 1));
+        assertEquals(2039, Perft.perft(position, 2));
+        assertEquals(97862, Perft.perft(position, 3));
+    }
+
+    /**
+     * Test the other reference positions
+     */
+    @Test
+    public void testReferencePositions() {
+        assertEquals(43238, Perft.perft(Position.fromFen(POSITION_3), 4));
+        assertEquals(9467, Perft.perft(Position.fromFen(POSITION_4), 3));
+        assertEquals(62379, Perft.perft(Position.fromFen(POSITION_5), 3));
+        assertEquals(89890, Perft.perft(Position.fromFen(POSITION_6), 3));
+    }
+
+    /**
+     * Test that the parallel perft counts the same nodes and leaves the position unchanged
+     */
+    @Test
+    public void testPerftParallel() {
+        Position position = Position.fromFen(KIWIPETE);
+        assertEquals(97862, Perft.perftParallel(position, 3, 4));
+        assertEquals(KIWIPETE, position.toFen());
+    }
+
+    /**
+     * Test that divide lists every root move
+     */
+    @Test
+    public void testDivide() {
+        Position position = Position.fromFen(Position.START_FEN);
+        assertEquals(20, Perft.divide(position, 2).size());
+        assertTrue(Perft.divide(position, 2).contains("e2e4: 20"));
+    }
+
+    /**
+     * Test that FEN strings survive a round trip through the position
+     */
+    @Test
+    public void testFenRoundTrip() {
+        assertEquals(Position.START_FEN, Position.fromFen(Position.START_FEN).toFen());
+        assertEquals(POSITION_5, Position.fromFen(POSITION_5).toFen());
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PgnGame class holds one game read from a PGN file: its tag pairs and its movetext.
+ * The moves are only parsed when asked for, so games can be read and passed between threads cheaply.
+ */
+public final class PgnGame {
+    private final Map<String, String> tags;
+    private final String movetext;
+
+    /**
+     * Constructor for the PgnGame class
+     * @param tags the tag pairs in file order
+     * @param movetext the movetext, with comments and variations still in it
+     */
+    public PgnGame(Map<String, String> tags, String movetext) {
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+        this.movetext = movetext;
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @param name the tag name, such as White or Result
+     * @return the value, or null if the game has no such tag
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public String getMovetext() {
+        return movetext;
+    }
+
+    /**
+     * @return the position the game starts from, from the FEN tag when there is one
+     * @throws IllegalArgumentException if the FEN tag is not valid
+     */
+    public Position startPosition() {
+        String fen = tags.get("FEN");
+        if (fen != null) {
+            return Position.fromFen(fen);
+        }
+        Position position = new Position();
+        position.setStartPosition();
+        return position;
+    }
+
+    /**
+     * Parse the moves of the main line
+     * @return the packed moves, played from startPosition
+     * @throws IllegalArgumentException if a move is not legal or not understood
+     */
+    public int[] moves() {
+        Position position = startPosition();
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        int[] moves = new int[64];
+        int count = 0;
+        for (String san : sanMoves()) {
+            int move = Move.parseSan(position, san, buffer);
+            if (move == Move.NONE) {
+                throw new IllegalArgumentException("Illegal move " + san + " in position " + position.toFen());
+            }
+            position.makeMove(move);
+            if (count == moves.length) {
+                moves = Arrays.copyOf(moves, 2 * count);
+            }
+            moves[count++] = move;
+        }
+        return Arrays.copyOf(moves, count);
+    }
+
+    /**
+     * Split the movetext into the moves of the main line, dropping move numbers, comments,
+     * variations, numeric annotations and the result
+     * @return the moves in standard algebraic notation
+     */
+    public List<String> sanMoves() {
+        List<String> moves = new ArrayList<>();
+        int depth = 0;
+        int i = 0;
+        int n = movetext.length();
+        while (i < n) {
+            char c = movetext.charAt(i);
+            if (c == '{') {
+                // comments do not nest
+                int close = movetext.indexOf('}', i);
+                i = close < 0 ? n : close + 1;
+            } else if (c == ';') {
+                int close = movetext.indexOf('\n', i);
+                i = close < 0 ? n : close + 1;
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(movetext.charAt(i)) && "{};()".indexOf(movetext.charAt(i)) < 0) {
+                    i++;
+                }
+                String token = movetext.substring(start, i);
+                if (depth == 0) {
+                    String move = moveOf(token);
+                    if (move != null) {
+                        moves.add(move);
+                    }
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * @return the move in a movetext token such as "12.Nf3" or "e4", or null if it holds none
+     */
+    private static String moveOf(String token) {
+        if (token.startsWith("$") || token.equals("*") || token.equals("1-0") || token.equals("0-1")
+                || token.equals("1/2-1/2")) {
+            return null;
+        }
+        // move numbers, possibly glued to the move: "12." "12..." "12.Nf3"
+        int i = 0;
+        while (i < token.length() && Character.isDigit(token.charAt(i))) {
+            i++;
+        }
+        if (i > 0 && i < token.length() && token.charAt(i) == '.') {
+            while (i < token.length() && token.charAt(i) == '.') {
+                i++;
+            }
+            token = token.substring(i);
+        } else if (i == token.length()) {
+            return null;
+        }
+        return token.isEmpty() ? null : token;
+    }
+}
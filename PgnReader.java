@@ -0,0 +1,157 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PgnReader class reads the games of a PGN file one at a time.
+ * The file is read through a fixed-size NIO buffer and only the game being read is held in memory,
+ * so files of any size are read with the same heap. Games longer than a limit are skipped and counted.
+ * Bytes are read as ISO-8859-1, which keeps the ASCII of the moves and tags intact whatever the file's encoding.
+ */
+public class PgnReader implements Closeable {
+    public static final int BUFFER_SIZE = 1 << 16;
+    // longest game kept, in characters; a longer one is most likely not a game
+    public static final int DEFAULT_MAX_GAME_CHARS = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final int maxGameChars;
+    private final StringBuilder line = new StringBuilder();
+    // a tag line read past the end of the previous game
+    private String pending;
+    private boolean endOfInput;
+    private long skippedGames;
+
+    /**
+     * Open a PGN file
+     * @param file the file
+     * @throws IOException if the file cannot be opened
+     */
+    public PgnReader(Path file) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.READ), DEFAULT_MAX_GAME_CHARS);
+    }
+
+    /**
+     * Read PGN from a channel
+     * @param channel the channel, it is closed with the reader
+     * @param maxGameChars the longest game kept, longer games are skipped
+     */
+    public PgnReader(ReadableByteChannel channel, int maxGameChars) {
+        this.channel = channel;
+        this.maxGameChars = maxGameChars;
+        // nothing read yet
+        buffer.flip();
+    }
+
+    /**
+     * @return the number of games skipped for being too long
+     */
+    public long getSkippedGames() {
+        return skippedGames;
+    }
+
+    /**
+     * Read the next game
+     * @return the game, or null at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    public PgnGame next() throws IOException {
+        while (true) {
+            Map<String, String> tags = new LinkedHashMap<>();
+            StringBuilder movetext = new StringBuilder();
+            boolean tooLong = false;
+            int size = 0;
+            String text;
+            while ((text = pending != null ? pending : readLine()) != null) {
+                pending = null;
+                String trimmed = text.trim();
+                if (trimmed.startsWith("[")) {
+                    if (movetext.length() > 0) {
+                        // the tags of the next game
+                        pending = text;
+                        break;
+                    }
+                    addTag(tags, trimmed);
+                } else if (trimmed.startsWith("%")) {
+                    // escaped line, ignored
+                    continue;
+                } else if (!trimmed.isEmpty() && !tooLong) {
+                    movetext.append(trimmed).append('\n');
+                }
+                size += text.length();
+                if (size > maxGameChars && !tooLong) {
+                    tooLong = true;
+                    movetext.setLength(0);
+                    // keep one character so the next tag line still ends the game
+                    movetext.append(' ');
+                }
+            }
+            if (tags.isEmpty() && movetext.length() == 0) {
+                return null;
+            }
+            if (tooLong) {
+                skippedGames++;
+                continue;
+            }
+            return new PgnGame(tags, movetext.toString());
+        }
+    }
+
+    /**
+     * Read a tag pair line such as [White "Carlsen, Magnus"]
+     */
+    private static void addTag(Map<String, String> tags, String text) {
+        int space = text.indexOf(' ');
+        int open = text.indexOf('"');
+        int close = text.lastIndexOf('"');
+        if (space < 0 || open < 0 || close <= open) {
+            return;
+        }
+        String value = text.substring(open + 1, close).replace("\\\"", "\"").replace("\\\\", "\\");
+        tags.put(text.substring(1, space), value);
+    }
+
+    /**
+     * @return the next line without its line break, or null at the end of the input
+     */
+    private String readLine() throws IOException {
+        if (endOfInput) {
+            return null;
+        }
+        line.setLength(0);
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    endOfInput = true;
+                    return line.length() > 0 ? line.toString() : null;
+                }
+                continue;
+            }
+            char c = (char) (buffer.get() & 0xFF);
+            if (c == '\n') {
+                return line.toString();
+            }
+            if (c != '\r' && line.length() < maxGameChars) {
+                line.append(c);
+            }
+        }
+    }
+
+    /**
+     * Close the file
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
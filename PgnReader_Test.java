@@ -0,0 +1,123 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+public class PgnReader_Test {
+
+    private static final String PGN = "[Event \"Test\"]\n"
+            + "[White \"A \\\"B\\\" C\"]\n"
+            + "[Result \"1-0\"]\n"
+            + "\n"
+            + "1. e4 e5 2. Nf3 {main line} Nc6 (2... d6 3. d4) 3.Bb5 a6 $1 4. Ba4 Nf6 5. O-O Be7\n"
+            + "; a rest of line comment\n"
+            + "6. Re1 b5 7. Bb3 d6 8. c3 O-O 1-0\n"
+            + "\n"
+            + "[Event \"Promotion\"]\n"
+            + "[SetUp \"1\"]\n"
+            + "[FEN \"8/1P4k1/8/8/8/8/6K1/8 w - - 0 1\"]\n"
+            + "\r\n"
+            + "1. b8=N Kg6 2. Nd7 *\r\n"
+            + "[Event \"Broken\"]\n"
+            + "\n"
+            + "1. e4 e5 2. Ke3 1-0\n";
+
+    private static PgnReader reader(String text, int maxGameChars) {
+        return new PgnReader(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.ISO_8859_1))),
+                maxGameChars);
+    }
+
+    /**
+     * Test that the games, tags and main line moves are read
+     */
+    @Test
+    public void testReadGames() throws IOException {
+        try (PgnReader reader = reader(PGN, PgnReader.DEFAULT_MAX_GAME_CHARS)) {
+            PgnGame first = reader.next();
+            assertEquals("A \"B\" C", first.getTag("White"));
+            assertEquals("1-0", first.getTag("Result"));
+            int[] moves = first.moves();
+            assertEquals(16, moves.length);
+            assertEquals("e1g1", Move.toString(moves[8]));
+            assertEquals("e8g8", Move.toString(moves[15]));
+
+            PgnGame second = reader.next();
+            assertEquals("b7b8n", Move.toString(second.moves()[0]));
+            assertEquals(3, second.moves().length);
+
+            PgnGame third = reader.next();
+            assertEquals("Broken", third.getTag("Event"));
+            try {
+                third.moves();
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains("Ke3"));
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    /**
+     * Test that games over the size limit are skipped and counted
+     */
+    @Test
+    public void testSkipsLongGames() throws IOException {
+        try (PgnReader reader = reader(PGN, 150)) {
+            assertEquals("Promotion", reader.next().getTag("Event"));
+            assertEquals("Broken", reader.next().getTag("Event"));
+            assertNull(reader.next());
+            assertEquals(1, reader.getSkippedGames());
+        }
+    }
+
+    /**
+     * Test standard algebraic notation with disambiguation, en passant and promotion
+     */
+    @Test
+    public void testParseSan() {
+        Position position = Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        assertEquals("e5d3", Move.toString(Move.parseSan(position, "Nd3")));
+        assertEquals("c3b1", Move.toString(Move.parseSan(position, "Ncb1")));
+        assertEquals(Move.NONE, Move.parseSan(position, "Nb6"));
+        assertEquals("e2a6", Move.toString(Move.parseSan(position, "Bxa6")));
+        assertEquals("e1c1", Move.toString(Move.parseSan(position, "O-O-O")));
+        // two rooks can reach d1, the move must say which
+        Position rooks = Position.fromFen("4k3/8/8/8/8/8/8/R5RK w - - 0 1");
+        assertEquals(Move.NONE, Move.parseSan(rooks, "Rd1"));
+        assertEquals("a1d1", Move.toString(Move.parseSan(rooks, "Rad1")));
+        assertEquals(Move.NONE, Move.parseSan(rooks, "R1d1"));
+        assertEquals("g1d1", Move.toString(Move.parseSan(rooks, "Rgd1+")));
+        Position enPassant = Position.fromFen("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1");
+        assertEquals("e5d6", Move.toString(Move.parseSan(enPassant, "exd6")));
+        Position promotion = Position.fromFen("1n2k3/P7/8/8/8/8/8/4K3 w - - 0 1");
+        assertEquals("a7b8q", Move.toString(Move.parseSan(promotion, "axb8=Q#")));
+        assertEquals("a7a8r", Move.toString(Move.parseSan(promotion, "a8R")));
+        assertEquals(Move.NONE, Move.parseSan(promotion, "a8"));
+    }
+
+    /**
+     * Test that the pipeline writes one line per position and counts the broken game
+     */
+    @Test
+    public void testPipeline() throws IOException, InterruptedException {
+        AnalysisPipeline pipeline = new AnalysisPipeline(3, AnalysisPipeline.search(2, 10000, 1));
+        pipeline.setSkipPlies(1);
+        StringWriter out = new StringWriter();
+        try (PgnReader reader = reader(PGN, PgnReader.DEFAULT_MAX_GAME_CHARS)) {
+            pipeline.run(reader, out);
+        }
+        assertEquals(3, pipeline.getGames());
+        assertEquals(1, pipeline.getBadGames());
+        // 15 + 2 + 1 positions after the first ply of each game, the broken game stops before Ke3
+        String[] lines = out.toString().split("\n");
+        assertEquals(18, pipeline.getPositions());
+        assertEquals(18, lines.length);
+        for (String line : lines) {
+            assertEquals(line, 5, line.split("\t").length);
+        }
+    }
+}
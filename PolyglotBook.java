@@ -0,0 +1,257 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * PolyglotBook class looks up opening moves in a book file in the Polyglot .bin format.
+ * The file is a sorted array of 16 byte entries: the 64-bit position key, the move, the weight and
+ * a learn value, all big-endian. The file is memory-mapped and searched in place, nothing is copied
+ * to the heap, so many engines in one process or on one host share it through the page cache.
+ * Lookups only read the mapping, so one book can be used by any number of threads.
+ *
+ * Polyglot keys are built from the 781 numbers of the standard Polyglot Random64 table, see PolyglotKeys.
+ * Another table, for example one read with loadKeys from a text file with one hexadecimal number per line,
+ * can be given to the constructor.
+ */
+public class PolyglotBook implements Closeable {
+    // number of numbers in the Random64 table: 12 * 64 pieces, 4 castling rights, 8 files, the turn
+    public static final int KEY_COUNT = 781;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int CASTLING_OFFSET = 768;
+    private static final int EN_PASSANT_OFFSET = 772;
+    private static final int TURN_OFFSET = 780;
+    // promotion piece of each Polyglot promotion code
+    private static final int[] PROMOTIONS = {0, Position.KNIGHT, Position.BISHOP, Position.ROOK, Position.QUEEN};
+
+    private final FileChannel channel;
+    private final ByteBuffer entries;
+    private final int count;
+    private final long[] keys;
+
+    /**
+     * Open a book keyed with the standard Random64 table
+     * @param file the book file
+     * @throws IOException if the book cannot be read or is not a whole number of entries
+     */
+    public PolyglotBook(Path file) throws IOException {
+        this(file, PolyglotKeys.RANDOM64);
+    }
+
+    /**
+     * Open a book
+     * @param file the book file
+     * @param keys the Random64 table, KEY_COUNT numbers
+     * @throws IOException if the book cannot be read or is not a whole number of entries
+     */
+    public PolyglotBook(Path file, long[] keys) throws IOException {
+        if (keys.length != KEY_COUNT) {
+            throw new IllegalArgumentException("The Random64 table needs " + KEY_COUNT + " numbers");
+        }
+        this.keys = keys;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size % ENTRY_BYTES != 0 || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Not a Polyglot book: " + file);
+        }
+        // a mapped buffer is big-endian like the file
+        entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        count = (int) (size / ENTRY_BYTES);
+    }
+
+    /**
+     * Read the Random64 table from a file
+     * @param file the text file, one hexadecimal number per line
+     * @return the table
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static long[] loadKeys(Path file) throws IOException {
+        return parseKeys(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII));
+    }
+
+    private static long[] parseKeys(String text) throws IOException {
+        long[] keys = new long[KEY_COUNT];
+        int n = 0;
+        for (String line : text.split("\\s+")) {
+            String value = line.replace(",", "").replace("0x", "").replace("ULL", "").replace("L", "");
+            if (value.isEmpty()) {
+                continue;
+            }
+            if (n == KEY_COUNT) {
+                throw new IOException("More than " + KEY_COUNT + " numbers in the Random64 table");
+            }
+            keys[n++] = Long.parseUnsignedLong(value, 16);
+        }
+        if (n != KEY_COUNT) {
+            throw new IOException("Only " + n + " numbers in the Random64 table");
+        }
+        return keys;
+    }
+
+    /**
+     * @return the number of entries in the book
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Compute the Polyglot key of a position
+     * @param position the position
+     * @return the key
+     */
+    public long key(Position position) {
+        long key = 0L;
+        long occupied = position.occupied();
+        while (occupied != 0) {
+            int square = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            int piece = position.pieceAt(square);
+            // Polyglot orders the pieces black pawn, white pawn, black knight, white knight and so on
+            int kind = 2 * Position.typeOf(piece) + (Position.colorOf(piece) == Position.WHITE ? 1 : 0);
+            key ^= keys[64 * kind + square];
+        }
+        int rights = position.castlingRights();
+        if ((rights & Position.WHITE_KINGSIDE) != 0) {
+            key ^= keys[CASTLING_OFFSET];
+        }
+        if ((rights & Position.WHITE_QUEENSIDE) != 0) {
+            key ^= keys[CASTLING_OFFSET + 1];
+        }
+        if ((rights & Position.BLACK_KINGSIDE) != 0) {
+            key ^= keys[CASTLING_OFFSET + 2];
+        }
+        if ((rights & Position.BLACK_QUEENSIDE) != 0) {
+            key ^= keys[CASTLING_OFFSET + 3];
+        }
+        // the en passant file only counts when a pawn of the side to move can capture there
+        int ep = position.enPassantSquare();
+        if (ep != Position.NO_SQUARE) {
+            int us = position.sideToMove();
+            if ((Attacks.pawnAttacks(us ^ 1, ep) & position.pieces(us, Position.PAWN)) != 0) {
+                key ^= keys[EN_PASSANT_OFFSET + (ep & 7)];
+            }
+        }
+        if (position.sideToMove() == Position.WHITE) {
+            key ^= keys[TURN_OFFSET];
+        }
+        return key;
+    }
+
+    /**
+     * Find the legal book moves of a position
+     * @param position the position
+     * @return the moves with their weights, empty when the position is not in the book
+     */
+    public List<int[]> lookup(Position position) {
+        List<int[]> found = new ArrayList<>();
+        long key = key(position);
+        for (int i = lowerBound(key); i < count && entries.getLong(i * ENTRY_BYTES) == key; i++) {
+            int move = toMove(position, entries.getShort(i * ENTRY_BYTES + 8) & 0xFFFF);
+            int weight = entries.getShort(i * ENTRY_BYTES + 10) & 0xFFFF;
+            // a move that is not legal here comes from another position with the same key
+            if (move != Move.NONE) {
+                found.add(new int[] {move, weight});
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Pick a book move at random, each move with a chance proportional to its weight
+     * @param position the position
+     * @param random the random generator
+     * @return the move, or Move.NONE when the position is not in the book
+     */
+    public int choose(Position position, Random random) {
+        List<int[]> moves = lookup(position);
+        int total = 0;
+        for (int[] move : moves) {
+            total += move[1];
+        }
+        if (total == 0) {
+            return Move.NONE;
+        }
+        int pick = random.nextInt(total);
+        for (int[] move : moves) {
+            pick -= move[1];
+            if (pick < 0) {
+                return move[0];
+            }
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * @return the index of the first entry whose key is not below the given key, unsigned
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(entries.getLong(middle * ENTRY_BYTES), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Turn a Polyglot move into a legal packed move of the position
+     * @param position the position
+     * @param bookMove bits 0-5 the target square, 6-11 the origin square, 12-14 the promotion piece
+     * @return the move, or Move.NONE if it is not legal
+     */
+    static int toMove(Position position, int bookMove) {
+        int to = bookMove & 63;
+        int from = (bookMove >>> 6) & 63;
+        int promotion = (bookMove >>> 12) & 7;
+        // castling is written as the king taking its own rook
+        int piece = position.pieceAt(from);
+        if (piece != Position.NO_PIECE && Position.typeOf(piece) == Position.KING
+                && position.pieceAt(to) == Position.piece(Position.colorOf(piece), Position.ROOK)) {
+            to = to > from ? from + 2 : from - 2;
+        }
+        if (promotion >= PROMOTIONS.length) {
+            return Move.NONE;
+        }
+        return position.findLegalMove(from, to, promotion == 0 ? Position.QUEEN : PROMOTIONS[promotion]);
+    }
+
+    /**
+     * Turn a packed move into a Polyglot move, for writing books
+     * @param move the packed move
+     * @return the Polyglot move
+     */
+    static int toBookMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        if ((Move.flags(move) & Move.CASTLE) != 0) {
+            // the king moves onto its own rook
+            to = to > from ? from + 3 : from - 4;
+        }
+        int promotion = Move.isPromotion(move) ? Move.promotion(move) : 0;
+        return to | (from << 6) | (promotion << 12);
+    }
+
+    /**
+     * Close the file, the mapping is released once the book is no longer referenced
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
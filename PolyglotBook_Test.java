@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * PolyglotBook_Test is a JUnit test class for the PolyglotBook class.
+ * The books are written by the test, most of them with a random Random64 table.
+ */
+public class PolyglotBook_Test {
+
+    private static long[] randomKeys() {
+        Random random = new Random(42);
+        long[] keys = new long[PolyglotBook.KEY_COUNT];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+
+    /**
+     * Write a book file from {key, move, weight} entries, with filler entries for other positions
+     */
+    private static Path writeBook(List<long[]> entries) throws IOException {
+        List<long[]> all = new ArrayList<>(entries);
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            all.add(new long[] {random.nextLong(), random.nextInt(1 << 12), 1});
+        }
+        all.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+        ByteBuffer buffer = ByteBuffer.allocate(all.size() * 16);
+        for (long[] entry : all) {
+            buffer.putLong(entry[0]).putShort((short) entry[1]).putShort((short) entry[2]).putInt(0);
+        }
+        Path file = Files.createTempFile("book", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, buffer.array());
+        return file;
+    }
+
+    private static int move(Position position, String from, String to) {
+        return position.findLegalMove(Move.parseSquare(from), Move.parseSquare(to), Position.QUEEN);
+    }
+
+    /**
+     * Test the lookup and that moves are picked in proportion to their weights
+     */
+    @Test
+    public void testLookupAndWeights() throws IOException {
+        long[] keys = randomKeys();
+        Position start = Position.fromFen(Position.START_FEN);
+        int e4 = move(start, "e2", "e4");
+        int d4 = move(start, "d2", "d4");
+        List<long[]> entries = new ArrayList<>();
+        try (PolyglotBook empty = new PolyglotBook(writeBook(entries), keys)) {
+            long key = empty.key(start);
+            entries.add(new long[] {key, PolyglotBook.toBookMove(e4), 3});
+            entries.add(new long[] {key, PolyglotBook.toBookMove(d4), 1});
+        }
+        try (PolyglotBook book = new PolyglotBook(writeBook(entries), keys)) {
+            assertEquals(1002, book.size());
+            List<int[]> moves = book.lookup(start);
+            assertEquals(2, moves.size());
+            Random random = new Random(1);
+            int e4Count = 0;
+            for (int i = 0; i < 4000; i++) {
+                int picked = book.choose(start, random);
+                assertTrue(picked == e4 || picked == d4);
+                if (picked == e4) {
+                    e4Count++;
+                }
+            }
+            assertEquals(3000, e4Count, 150);
+            start.makeMove(e4);
+            assertEquals(Move.NONE, book.choose(start, random));
+        }
+    }
+
+    /**
+     * Test that castling is written as the king taking its rook and read back
+     */
+    @Test
+    public void testCastlingMove() {
+        Position position = Position.fromFen("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+        int castle = move(position, "e1", "g1");
+        assertEquals((Move.parseSquare("e1") << 6) | Move.parseSquare("h1"), PolyglotBook.toBookMove(castle));
+        assertEquals(castle, PolyglotBook.toMove(position, PolyglotBook.toBookMove(castle)));
+        int longCastle = move(position, "e1", "c1");
+        assertEquals(longCastle, PolyglotBook.toMove(position, PolyglotBook.toBookMove(longCastle)));
+    }
+
+    /**
+     * Test that the en passant file only changes the key when the capture is possible
+     */
+    @Test
+    public void testEnPassantKey() throws IOException {
+        try (PolyglotBook book = new PolyglotBook(writeBook(new ArrayList<>()), randomKeys())) {
+            assertEquals(book.key(Position.fromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1")),
+                    book.key(Position.fromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1")));
+            assertNotEquals(book.key(Position.fromFen("rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1")),
+                    book.key(Position.fromFen("rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1")));
+        }
+    }
+
+    /**
+     * Test that the computer plays book moves without searching, up to the book depth
+     */
+    @Test
+    public void testComputerPlayerUsesBook() throws IOException {
+        long[] keys = randomKeys();
+        Position start = Position.fromFen(Position.START_FEN);
+        int e4 = move(start, "e2", "e4");
+        List<long[]> entries = new ArrayList<>();
+        try (PolyglotBook empty = new PolyglotBook(writeBook(entries), keys)) {
+            entries.add(new long[] {empty.key(start), PolyglotBook.toBookMove(e4), 1});
+            Position afterE4 = new Position(start);
+            afterE4.makeMove(e4);
+            entries.add(new long[] {empty.key(afterE4), PolyglotBook.toBookMove(move(afterE4, "e7", "e5")), 1});
+        }
+        try (PolyglotBook book = new PolyglotBook(writeBook(entries), keys)) {
+            ComputerPlayer player = new ComputerPlayer();
+            player.setDepth(2);
+            player.setBook(book, 1);
+            SearchResult result = player.search(start);
+            assertEquals(e4, result.getBestMove());
+            assertEquals(0, result.getNodes());
+            start.makeMove(e4);
+            // past the book depth the player searches
+            assertTrue(player.search(start).getNodes() > 0);
+        }
+    }
+
+    /**
+     * Test the standard Random64 table against the reference keys published with the Polyglot book format
+     */
+    @Test
+    public void testStandardKeys() throws IOException {
+        String[][] lines = {
+            {"e2e4", "823c9b50fd114196", "d7d5", "0756b94461c50fb0", "e4e5", "662fafb965db29d4",
+                "f7f5", "22a48b5a8e47ff78", "e1e2", "652a607ca3f242c1", "e8f7", "00fdd303c946bdd9"},
+            {"a2a4", null, "b7b5", null, "h2h4", null, "b5b4", null, "c2c4", "3c8123ea7b067637",
+                "b4c3", null, "a1a3", "5c3f9b829b279560"}
+        };
+        try (PolyglotBook book = new PolyglotBook(writeBook(new ArrayList<>()))) {
+            for (String[] line : lines) {
+                Position position = Position.fromFen(Position.START_FEN);
+                assertEquals(0x463b96181691fc9cL, book.key(position));
+                for (int i = 0; i < line.length; i += 2) {
+                    position.makeMove(Move.parse(position, line[i]));
+                    if (line[i + 1] != null) {
+                        assertEquals(line[i], Long.parseUnsignedLong(line[i + 1], 16), book.key(position));
+                    }
+                }
+            }
+        }
+    }
+}
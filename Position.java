@@ -0,0 +1,814 @@
+import java.util.Arrays;
+
+/**
+ * Position class represents a chess position as a set of 64-bit bitboards.
+ * There is one bitboard for each of the 12 piece kinds, one occupancy bitboard per side,
+ * plus the side to move, the castling rights, the en passant square and the move clocks.
+ * Squares are numbered from 0 (a1) to 63 (h8).
+ */
+public class Position {
+    // colors
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+    // piece types, a piece code is color * 6 + type
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+    public static final int NO_PIECE = -1;
+    public static final int NO_SQUARE = -1;
+    // castling rights bits
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+    // game status of the side to move
+    public static final int ONGOING = 0;
+    public static final int CHECK = 1;
+    public static final int CHECKMATE = 2;
+    public static final int STALEMATE = 3;
+    public static final int REPETITION = 4;
+    public static final int FIFTY_MOVES = 5;
+    public static final int INSUFFICIENT_MATERIAL = 6;
+
+    // FEN letter of each piece type
+    static final String PIECE_LETTERS = "pnbrqk";
+    // the standard starting position
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // initial depth of the undo stack, it grows only for games longer than this
+    private static final int UNDO_CAPACITY = 1024;
+
+    // the light squares, b1, d1 and so on
+    private static final long LIGHT_SQUARES = 0x55AA55AA55AA55AAL;
+    // castling rights that survive a move touching each square
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            CASTLING_MASK[sq] = 15;
+        }
+        CASTLING_MASK[0] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[7] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[4] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[56] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[63] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[60] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+    }
+
+    // one bitboard per piece code
+    final long[] pieces = new long[12];
+    // one bitboard per color
+    final long[] occupancy = new long[2];
+    // all occupied squares
+    long occupied;
+    // piece code on each square, or NO_PIECE
+    final byte[] mailbox = new byte[64];
+    // square of each king, or NO_SQUARE
+    final int[] kingSquares = new int[2];
+    // pieces giving check to the side to move
+    long checkers;
+    int sideToMove;
+    int castlingRights;
+    int enPassantSquare;
+    int halfmoveClock;
+    int fullmoveNumber;
+    // Zobrist key of the position, updated with every change
+    long key;
+    // Zobrist key of the pawns alone, updated with every change, see PawnTable
+    long pawnKey;
+    // midgame and endgame evaluation sums from white's point of view and the game phase,
+    // updated with every change, see Evaluation
+    int mgScore;
+    int egScore;
+    int phase;
+    // state needed to take back each played move, see pushUndo
+    long[] undoStack = new long[UNDO_CAPACITY];
+    // Zobrist key before each played move
+    long[] keyHistory = new long[UNDO_CAPACITY];
+    // checkers before each played move
+    long[] checkersHistory = new long[UNDO_CAPACITY];
+    // number of moves that can be taken back
+    int ply;
+    // move buffer for the legality queries
+    private int[] scratch;
+
+    /**
+     * Create an empty position with white to move
+     */
+    public Position() {
+        clear();
+    }
+
+    /**
+     * Create a copy of another position
+     * @param other the position to copy
+     */
+    public Position(Position other) {
+        copyBoard(other);
+        undoStack = other.undoStack.clone();
+        keyHistory = other.keyHistory.clone();
+        checkersHistory = other.checkersHistory.clone();
+        ply = other.ply;
+    }
+
+    // copy everything but the move history
+    private void copyBoard(Position other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, 12);
+        System.arraycopy(other.occupancy, 0, occupancy, 0, 2);
+        System.arraycopy(other.mailbox, 0, mailbox, 0, 64);
+        kingSquares[WHITE] = other.kingSquares[WHITE];
+        kingSquares[BLACK] = other.kingSquares[BLACK];
+        checkers = other.checkers;
+        occupied = other.occupied;
+        sideToMove = other.sideToMove;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        key = other.key;
+        pawnKey = other.pawnKey;
+        mgScore = other.mgScore;
+        egScore = other.egScore;
+        phase = other.phase;
+    }
+
+    /**
+     * Remove all the pieces and reset the game state
+     */
+    public void clear() {
+        for (int i = 0; i < 12; i++) {
+            pieces[i] = 0L;
+        }
+        occupancy[WHITE] = 0L;
+        occupancy[BLACK] = 0L;
+        occupied = 0L;
+        for (int sq = 0; sq < 64; sq++) {
+            mailbox[sq] = NO_PIECE;
+        }
+        kingSquares[WHITE] = NO_SQUARE;
+        kingSquares[BLACK] = NO_SQUARE;
+        checkers = 0L;
+        sideToMove = WHITE;
+        castlingRights = 0;
+        enPassantSquare = NO_SQUARE;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        ply = 0;
+        mgScore = 0;
+        egScore = 0;
+        phase = 0;
+        pawnKey = 0L;
+        key = Zobrist.compute(this);
+    }
+
+    /**
+     * Set up the standard starting position
+     */
+    public void setStartPosition() {
+        clear();
+        int[] backRow = {ROOK, KNIGHT, BISHOP, QUEEN, KING, BISHOP, KNIGHT, ROOK};
+        for (int file = 0; file < 8; file++) {
+            put(piece(WHITE, backRow[file]), file);
+            put(piece(WHITE, PAWN), 8 + file);
+            put(piece(BLACK, PAWN), 48 + file);
+            put(piece(BLACK, backRow[file]), 56 + file);
+        }
+        castlingRights = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+        key = Zobrist.compute(this);
+        refreshCheckers();
+    }
+
+    /**
+     * Set up the position described by a FEN string. The string is read into a fresh position first,
+     * so an invalid one leaves this position as it was.
+     * @param fen the FEN string, the move clocks may be left out
+     * @throws IllegalArgumentException if the string is not a valid FEN or not a position that can be played
+     */
+    public void setFen(String fen) {
+        Position parsed = parseFen(fen);
+        copyBoard(parsed);
+        ply = 0;
+    }
+
+    private static Position parseFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+        Position position = new Position();
+        String[] ranks = fields[0].split("/", -1);
+        if (ranks.length != 8) {
+            throw new IllegalArgumentException("Invalid FEN, expected 8 ranks: " + fen);
+        }
+        for (int i = 0; i < 8; i++) {
+            int rank = 7 - i;
+            int file = 0;
+            for (char c : ranks[i].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    file += c - '0';
+                } else {
+                    int type = PIECE_LETTERS.indexOf(Character.toLowerCase(c));
+                    if (type < 0 || file > 7) {
+                        throw new IllegalArgumentException("Invalid FEN: " + fen);
+                    }
+                    if (type == PAWN && (rank == 0 || rank == 7)) {
+                        throw new IllegalArgumentException("Invalid FEN, pawn on the first or last rank: " + fen);
+                    }
+                    position.put(piece(Character.isUpperCase(c) ? WHITE : BLACK, type), rank * 8 + file);
+                    file++;
+                }
+            }
+            if (file != 8) {
+                throw new IllegalArgumentException("Invalid FEN, rank " + (rank + 1) + " is not 8 squares: " + fen);
+            }
+        }
+        for (int color = WHITE; color <= BLACK; color++) {
+            if (Long.bitCount(position.pieces[piece(color, KING)]) != 1) {
+                throw new IllegalArgumentException("Invalid FEN, each side needs exactly one king: " + fen);
+            }
+        }
+        if (fields[1].equals("w")) {
+            position.sideToMove = WHITE;
+        } else if (fields[1].equals("b")) {
+            position.sideToMove = BLACK;
+        } else {
+            throw new IllegalArgumentException("Invalid FEN, side to move: " + fen);
+        }
+        if (!fields[2].equals("-")) {
+            for (char c : fields[2].toCharArray()) {
+                int right = "KQkq".indexOf(c);
+                if (right < 0) {
+                    throw new IllegalArgumentException("Invalid FEN, castling rights: " + fen);
+                }
+                int color = right < 2 ? WHITE : BLACK;
+                int home = color == WHITE ? 0 : 56;
+                int rook = home + (right % 2 == 0 ? 7 : 0);
+                if (position.mailbox[home + 4] != piece(color, KING) || position.mailbox[rook] != piece(color, ROOK)) {
+                    throw new IllegalArgumentException("Invalid FEN, castling without king and rook at home: " + fen);
+                }
+                position.castlingRights |= 1 << right;
+            }
+        }
+        if (!fields[3].equals("-")) {
+            int square = Move.parseSquare(fields[3]);
+            // the pawn that just moved two squares belongs to the side not to move
+            int rank = position.sideToMove == WHITE ? 5 : 2;
+            if (square == NO_SQUARE || square >>> 3 != rank) {
+                throw new IllegalArgumentException("Invalid FEN, en passant square: " + fen);
+            }
+            position.enPassantSquare = square;
+        }
+        position.halfmoveClock = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+        position.fullmoveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        if (position.halfmoveClock < 0 || position.fullmoveNumber < 1) {
+            throw new IllegalArgumentException("Invalid FEN, move clocks: " + fen);
+        }
+        position.key = Zobrist.compute(position);
+        position.refreshCheckers();
+        return position;
+    }
+
+    /**
+     * Create a position from a FEN string
+     * @param fen the FEN string
+     * @return the new position
+     */
+    public static Position fromFen(String fen) {
+        Position position = new Position();
+        position.setFen(fen);
+        return position;
+    }
+
+    /**
+     * @return the FEN string of this position
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = mailbox[rank * 8 + file];
+                if (piece == NO_PIECE) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char letter = PIECE_LETTERS.charAt(typeOf(piece));
+                fen.append(colorOf(piece) == WHITE ? Character.toUpperCase(letter) : letter);
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank > 0) {
+                fen.append('/');
+            }
+        }
+        fen.append(sideToMove == WHITE ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        } else {
+            if ((castlingRights & WHITE_KINGSIDE) != 0) {
+                fen.append('K');
+            }
+            if ((castlingRights & WHITE_QUEENSIDE) != 0) {
+                fen.append('Q');
+            }
+            if ((castlingRights & BLACK_KINGSIDE) != 0) {
+                fen.append('k');
+            }
+            if ((castlingRights & BLACK_QUEENSIDE) != 0) {
+                fen.append('q');
+            }
+        }
+        fen.append(' ').append(enPassantSquare == NO_SQUARE ? "-" : Move.squareName(enPassantSquare));
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
+    }
+
+    /**
+     * Build a piece code from a color and a piece type
+     * @param color the color of the piece
+     * @param type the type of the piece
+     * @return the piece code
+     */
+    public static int piece(int color, int type) {
+        return color * 6 + type;
+    }
+
+    /**
+     * @param piece a piece code
+     * @return the color of the piece
+     */
+    public static int colorOf(int piece) {
+        return piece < 6 ? WHITE : BLACK;
+    }
+
+    /**
+     * @param piece a piece code
+     * @return the type of the piece
+     */
+    public static int typeOf(int piece) {
+        return piece < 6 ? piece : piece - 6;
+    }
+
+    /**
+     * Place a piece on an empty square
+     * @param piece the piece code
+     * @param square the target square
+     */
+    public void put(int piece, int square) {
+        long b = 1L << square;
+        pieces[piece] |= b;
+        occupancy[colorOf(piece)] |= b;
+        occupied |= b;
+        mailbox[square] = (byte) piece;
+        key ^= Zobrist.PIECES[piece][square];
+        pawnKey ^= Zobrist.PAWNS[piece][square];
+        mgScore += Evaluation.MG[piece][square];
+        egScore += Evaluation.EG[piece][square];
+        phase += Evaluation.PHASE[piece];
+        if (typeOf(piece) == KING) {
+            kingSquares[colorOf(piece)] = square;
+        }
+    }
+
+    /**
+     * Remove the piece standing on a square
+     * @param square the square to clear
+     * @return the removed piece code, or NO_PIECE if the square was empty
+     */
+    public int remove(int square) {
+        int piece = mailbox[square];
+        if (piece == NO_PIECE) {
+            return NO_PIECE;
+        }
+        long b = ~(1L << square);
+        pieces[piece] &= b;
+        occupancy[colorOf(piece)] &= b;
+        occupied &= b;
+        mailbox[square] = NO_PIECE;
+        key ^= Zobrist.PIECES[piece][square];
+        pawnKey ^= Zobrist.PAWNS[piece][square];
+        mgScore -= Evaluation.MG[piece][square];
+        egScore -= Evaluation.EG[piece][square];
+        phase -= Evaluation.PHASE[piece];
+        if (typeOf(piece) == KING) {
+            kingSquares[colorOf(piece)] = NO_SQUARE;
+        }
+        return piece;
+    }
+
+    /**
+     * Return the piece at the specified square
+     * @param square the square
+     * @return the piece code, or NO_PIECE if the square is empty
+     */
+    public int pieceAt(int square) {
+        return mailbox[square];
+    }
+
+    public int sideToMove() {
+        return sideToMove;
+    }
+
+    public int castlingRights() {
+        return castlingRights;
+    }
+
+    public int enPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public int halfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int fullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * @return the Zobrist key of the position
+     */
+    public long key() {
+        return key;
+    }
+
+    /**
+     * @return the Zobrist key of the pawns alone, the same for every position with the same pawns
+     */
+    public long pawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * @return the midgame evaluation sum, from white's point of view
+     */
+    public int mgScore() {
+        return mgScore;
+    }
+
+    /**
+     * @return the endgame evaluation sum, from white's point of view
+     */
+    public int egScore() {
+        return egScore;
+    }
+
+    /**
+     * @return the game phase, Evaluation.MAX_PHASE with all the pieces on the board
+     */
+    public int phase() {
+        return phase;
+    }
+
+    /**
+     * @param color the color
+     * @param type the piece type
+     * @return bitboard of the pieces of that color and type
+     */
+    public long pieces(int color, int type) {
+        return pieces[piece(color, type)];
+    }
+
+    /**
+     * @param color the color
+     * @return bitboard of all pieces of that color
+     */
+    public long occupancy(int color) {
+        return occupancy[color];
+    }
+
+    public long occupied() {
+        return occupied;
+    }
+
+    /**
+     * Return the square of the king of the given color
+     * @param color the color of the king
+     * @return the king square, or NO_SQUARE if there is no king
+     */
+    public int kingSquare(int color) {
+        return kingSquares[color];
+    }
+
+    /**
+     * @return bitboard of the pieces giving check to the side to move
+     */
+    public long checkers() {
+        return checkers;
+    }
+
+    /**
+     * Recompute the pieces giving check after pieces were added or removed directly with put and remove
+     */
+    public void refreshCheckers() {
+        int king = kingSquares[sideToMove];
+        checkers = king == NO_SQUARE ? 0L : attackersTo(king, sideToMove ^ 1, occupied);
+    }
+
+    /**
+     * Check whether a square is attacked by any piece of the given color
+     * @param square the square
+     * @param byColor the color of the attacking side
+     * @return true if the square is attacked, false otherwise
+     */
+    public boolean isSquareAttacked(int square, int byColor) {
+        int base = byColor * 6;
+        // a pawn of the attacking side attacks the square if a pawn of ours on the square would attack it
+        if ((Attacks.pawnAttacks(byColor ^ 1, square) & pieces[base + PAWN]) != 0) {
+            return true;
+        }
+        if ((Attacks.knightAttacks(square) & pieces[base + KNIGHT]) != 0) {
+            return true;
+        }
+        if ((Attacks.kingAttacks(square) & pieces[base + KING]) != 0) {
+            return true;
+        }
+        long queens = pieces[base + QUEEN];
+        if ((Attacks.bishopAttacks(square, occupied) & (pieces[base + BISHOP] | queens)) != 0) {
+            return true;
+        }
+        return (Attacks.rookAttacks(square, occupied) & (pieces[base + ROOK] | queens)) != 0;
+    }
+
+    /**
+     * Check whether the king of the given color is attacked
+     * @param color the color of the king
+     * @return true if the king is in check, false otherwise
+     */
+    public boolean isInCheck(int color) {
+        if (color == sideToMove) {
+            return checkers != 0;
+        }
+        int king = kingSquares[color];
+        return king != NO_SQUARE && isSquareAttacked(king, color ^ 1);
+    }
+
+    /**
+     * @return true if the side to move is in check
+     */
+    public boolean isInCheck() {
+        return checkers != 0;
+    }
+
+    /**
+     * Return the game status of the side to move with a single legal move generation.
+     * A checkmate on the hundredth halfmove still ends the game as a checkmate.
+     * @return ONGOING, CHECK, CHECKMATE, STALEMATE, REPETITION, FIFTY_MOVES or INSUFFICIENT_MATERIAL
+     */
+    public int status() {
+        boolean canMove = hasLegalMove();
+        if (!canMove) {
+            return checkers != 0 ? CHECKMATE : STALEMATE;
+        }
+        if (halfmoveClock >= 100) {
+            return FIFTY_MOVES;
+        }
+        if (repetitions() >= 2) {
+            return REPETITION;
+        }
+        if (hasInsufficientMaterial()) {
+            return INSUFFICIENT_MATERIAL;
+        }
+        return checkers != 0 ? CHECK : ONGOING;
+    }
+
+    /**
+     * @param status a value returned by status()
+     * @return true if the status ends the game
+     */
+    public static boolean isGameOver(int status) {
+        return status >= CHECKMATE;
+    }
+
+    /**
+     * Count the earlier occurrences of this position in the game.
+     * Only the positions since the last capture or pawn move can repeat, so the scan stops
+     * after halfmoveClock plies and looks at every second one, those with the same side to move.
+     * @return the number of earlier occurrences, 2 or more is a threefold repetition
+     */
+    public int repetitions() {
+        int count = 0;
+        int end = Math.max(0, ply - halfmoveClock);
+        for (int i = ply - 4; i >= end; i -= 2) {
+            if (keyHistory[i] == key) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check whether this position occurred before in the game, which the search scores as a draw
+     * @return true if the position occurred at least once since the last irreversible move
+     */
+    public boolean isRepetition() {
+        int end = Math.max(0, ply - halfmoveClock);
+        for (int i = ply - 4; i >= end; i -= 2) {
+            if (keyHistory[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if neither side has enough material left to give mate: a lone knight or bishop,
+     * or only bishops that all stand on squares of the same color
+     */
+    public boolean hasInsufficientMaterial() {
+        if ((pieces[PAWN] | pieces[ROOK] | pieces[QUEEN] | pieces[piece(BLACK, PAWN)]
+                | pieces[piece(BLACK, ROOK)] | pieces[piece(BLACK, QUEEN)]) != 0) {
+            return false;
+        }
+        long minors = occupied & ~(pieces[KING] | pieces[piece(BLACK, KING)]);
+        if (Long.bitCount(minors) <= 1) {
+            return true;
+        }
+        // bishops never attack the squares of the other color, so neither king can be mated
+        long knights = pieces[KNIGHT] | pieces[piece(BLACK, KNIGHT)];
+        return knights == 0 && ((minors & LIGHT_SQUARES) == 0 || (minors & ~LIGHT_SQUARES) == 0);
+    }
+
+    /**
+     * Return all the pieces of one color attacking a square, given an occupancy
+     * @param square the square
+     * @param byColor the color of the attacking side
+     * @param occupied the occupancy the sliders are blocked by
+     * @return bitboard of the attackers
+     */
+    public long attackersTo(int square, int byColor, long occupied) {
+        int base = byColor * 6;
+        long queens = pieces[base + QUEEN];
+        return (Attacks.pawnAttacks(byColor ^ 1, square) & pieces[base + PAWN])
+                | (Attacks.knightAttacks(square) & pieces[base + KNIGHT])
+                | (Attacks.kingAttacks(square) & pieces[base + KING])
+                | (Attacks.bishopAttacks(square, occupied) & (pieces[base + BISHOP] | queens))
+                | (Attacks.rookAttacks(square, occupied) & (pieces[base + ROOK] | queens));
+    }
+
+    /**
+     * Find the legal move of the side to move going from one square to another
+     * @param from the starting square
+     * @param to the target square
+     * @param promotion the piece type a pawn reaching the last rank turns into
+     * @return the packed move, or Move.NONE if there is no such legal move
+     */
+    public int findLegalMove(int from, int to, int promotion) {
+        int[] moves = scratchMoves();
+        int count = MoveGenerator.generate(this, moves, MoveGenerator.ALL);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (Move.from(move) == from && Move.to(move) == to
+                    && (!Move.isPromotion(move) || Move.promotion(move) == promotion)) {
+                return move;
+            }
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Check if moving the piece of the side to move from one square to another is legal
+     * @param from the starting square
+     * @param to the target square
+     * @return true if the move is legal, false otherwise
+     */
+    public boolean isLegal(int from, int to) {
+        return findLegalMove(from, to, QUEEN) != Move.NONE;
+    }
+
+    /**
+     * Check whether the side to move has at least one legal move
+     * @return true if a legal move exists, false otherwise
+     */
+    public boolean hasLegalMove() {
+        return MoveGenerator.generate(this, scratchMoves(), MoveGenerator.ALL) > 0;
+    }
+
+    /**
+     * @return a move buffer owned by this position, allocated on first use
+     */
+    private int[] scratchMoves() {
+        if (scratch == null) {
+            scratch = new int[MoveGenerator.MAX_MOVES];
+        }
+        return scratch;
+    }
+
+    /**
+     * Play a move, recording on the undo stack everything needed to take it back.
+     * The move is not checked for legality.
+     * @param move the packed move
+     */
+    public void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        long keyBefore = key;
+        int piece = remove(from);
+        int color = colorOf(piece);
+        int captured;
+        if ((flags & Move.EN_PASSANT) != 0) {
+            // en passant removes the pawn behind the target square
+            captured = remove(color == WHITE ? to - 8 : to + 8);
+        } else {
+            captured = remove(to);
+        }
+        pushUndo(captured, keyBefore);
+        // a pawn move resets the clock, also when the pawn is promoted below
+        boolean resetsClock = typeOf(piece) == PAWN || captured != NO_PIECE;
+        // castling also moves the rook
+        if ((flags & Move.CASTLE) != 0) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            put(remove(rookFrom), rookTo);
+        }
+        // promotion replaces the pawn on the last rank
+        if (Move.isPromotion(move)) {
+            piece = piece(color, Move.promotion(move));
+        }
+        put(piece, to);
+
+        // hash out the old castling and en passant state and hash in the new one
+        key ^= Zobrist.CASTLING[castlingRights] ^ Zobrist.SIDE;
+        if (enPassantSquare != NO_SQUARE) {
+            key ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        }
+        enPassantSquare = (flags & Move.DOUBLE_PUSH) != 0 ? (from + to) >>> 1 : NO_SQUARE;
+        castlingRights &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        key ^= Zobrist.CASTLING[castlingRights];
+        if (enPassantSquare != NO_SQUARE) {
+            key ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        }
+        halfmoveClock = resetsClock ? 0 : halfmoveClock + 1;
+        if (color == BLACK) {
+            fullmoveNumber++;
+        }
+        sideToMove = color ^ 1;
+        // the opponent's pieces that now attack the king of the side to move
+        int king = kingSquares[sideToMove];
+        checkers = king == NO_SQUARE ? 0L : attackersTo(king, color, occupied);
+    }
+
+    /**
+     * Take back the last move played with makeMove
+     * @param move the same packed move that was played
+     */
+    public void unmakeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        long undo = undoStack[--ply];
+        int color = sideToMove ^ 1;
+        sideToMove = color;
+        if (color == BLACK) {
+            fullmoveNumber--;
+        }
+        castlingRights = (int) (undo >>> 4) & 15;
+        enPassantSquare = (int) ((undo >>> 8) & 127) - 1;
+        halfmoveClock = (int) (undo >>> 16);
+
+        int piece = remove(to);
+        if (Move.isPromotion(move)) {
+            piece = piece(color, PAWN);
+        }
+        put(piece, from);
+        if ((flags & Move.CASTLE) != 0) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            put(remove(rookTo), rookFrom);
+        }
+        int captured = (int) (undo & 15) - 1;
+        if (captured != NO_PIECE) {
+            put(captured, (flags & Move.EN_PASSANT) != 0 ? (color == WHITE ? to - 8 : to + 8) : to);
+        }
+        key = keyHistory[ply];
+        checkers = checkersHistory[ply];
+    }
+
+    /**
+     * Save the captured piece, the irreversible state, the key and the checkers before a move.
+     * Bits 0-3 hold the captured piece + 1, bits 4-7 the castling rights,
+     * bits 8-14 the en passant square + 1 and bits 16 and up the halfmove clock.
+     * @param captured the captured piece code, or NO_PIECE
+     * @param keyBefore the Zobrist key before the move
+     */
+    private void pushUndo(int captured, long keyBefore) {
+        if (ply == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, ply * 2);
+            keyHistory = Arrays.copyOf(keyHistory, ply * 2);
+            checkersHistory = Arrays.copyOf(checkersHistory, ply * 2);
+        }
+        keyHistory[ply] = keyBefore;
+        checkersHistory[ply] = checkers;
+        undoStack[ply++] = (captured + 1) | (castlingRights << 4)
+                | ((long) (enPassantSquare + 1) << 8) | ((long) halfmoveClock << 16);
+    }
+}
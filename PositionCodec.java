@@ -0,0 +1,104 @@
+import java.nio.ByteBuffer;
+
+/**
+ * PositionCodec class writes a position in SIZE bytes and reads it back.
+ *
+ * The encoding is the occupied squares as a 64-bit bitboard, then the piece code of each occupied
+ * square from a1 to h8 in 4 bits (16 bytes hold the 32 pieces a position can have at most),
+ * then one int of state: bit 0 the side to move, bits 1-4 the castling rights, bits 5-8 the
+ * en passant file + 1, bits 9-16 the halfmove clock and bits 17-31 the fullmove number.
+ * Everything is read and written in place in the caller's ByteBuffer, at its position and in its byte order.
+ */
+public final class PositionCodec {
+    public static final int SIZE = 28;
+    private static final int PIECE_BYTES = 16;
+    private static final int MAX_HALFMOVES = 255;
+    private static final int MAX_FULLMOVES = 32767;
+
+    private PositionCodec() {
+    }
+
+    /**
+     * Write a position at the buffer's position and move past it
+     * @param position the position
+     * @param out the buffer, with at least SIZE bytes remaining
+     * @throws IllegalArgumentException if the position has more than 32 pieces
+     */
+    public static void write(Position position, ByteBuffer out) {
+        long occupied = position.occupied;
+        if (Long.bitCount(occupied) > 2 * PIECE_BYTES) {
+            throw new IllegalArgumentException("More than " + 2 * PIECE_BYTES + " pieces");
+        }
+        out.putLong(occupied);
+        int start = out.position();
+        int i = 0;
+        int pair = 0;
+        while (occupied != 0) {
+            int square = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            pair |= position.mailbox[square] << (4 * (i & 1));
+            if ((i & 1) == 1) {
+                out.put((byte) pair);
+                pair = 0;
+            }
+            i++;
+        }
+        if ((i & 1) == 1) {
+            out.put((byte) pair);
+        }
+        // the unused piece bytes are zero so equal positions have equal bytes
+        while (out.position() < start + PIECE_BYTES) {
+            out.put((byte) 0);
+        }
+        int ep = position.enPassantSquare == Position.NO_SQUARE ? 0 : (position.enPassantSquare & 7) + 1;
+        out.putInt(position.sideToMove
+                | position.castlingRights << 1
+                | ep << 5
+                | Math.min(position.halfmoveClock, MAX_HALFMOVES) << 9
+                | Math.min(position.fullmoveNumber, MAX_FULLMOVES) << 17);
+    }
+
+    /**
+     * Read a position at the buffer's position and move past it
+     * @param in the buffer
+     * @param position the position to set, it has no moves to take back afterwards
+     */
+    public static void read(ByteBuffer in, Position position) {
+        position.clear();
+        long occupied = in.getLong();
+        int start = in.position();
+        int i = 0;
+        int pair = 0;
+        while (occupied != 0) {
+            int square = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            if ((i & 1) == 0) {
+                pair = in.get();
+            }
+            position.put((pair >>> (4 * (i & 1))) & 15, square);
+            i++;
+        }
+        in.position(start + PIECE_BYTES);
+        int state = in.getInt();
+        position.sideToMove = state & 1;
+        position.castlingRights = (state >>> 1) & 15;
+        int ep = (state >>> 5) & 15;
+        // the pawn that can be taken en passant just moved two squares, so the rank follows from the side to move
+        position.enPassantSquare = ep == 0 ? Position.NO_SQUARE
+                : (position.sideToMove == Position.WHITE ? 40 : 16) + ep - 1;
+        position.halfmoveClock = (state >>> 9) & 255;
+        position.fullmoveNumber = state >>> 17;
+        position.key = Zobrist.compute(position);
+        position.refreshCheckers();
+    }
+
+    /**
+     * @param in a buffer holding an encoded position
+     * @return a new position read from the buffer
+     */
+    public static Position read(ByteBuffer in) {
+        Position position = new Position();
+        read(in, position);
+        return position;
+    }
+}
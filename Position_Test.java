@@ -0,0 +1,276 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Position_Test is a JUnit test class for the Position class.
+ */
+public class Position_Test {
+
+    /**
+     * Play a move given in coordinate notation
+     */
+    private static void play(Position position, String move) {
+        int promotion = move.length() > 4 ? Position.PIECE_LETTERS.indexOf(move.charAt(4)) : Position.QUEEN;
+        int packed = position.findLegalMove(Move.parseSquare(move.substring(0, 2)),
+                Move.parseSquare(move.substring(2, 4)), promotion);
+        assertNotEquals("illegal move " + move, Move.NONE, packed);
+        position.makeMove(packed);
+    }
+
+    /**
+     * Test the game status after the fool's mate
+     */
+    @Test
+    public void testCheckmate() {
+        Position position = Position.fromFen(Position.START_FEN);
+        assertEquals(Position.ONGOING, position.status());
+        play(position, "f2f3");
+        play(position, "e7e5");
+        play(position, "g2g4");
+        play(position, "d8h4");
+        assertTrue(position.isInCheck());
+        assertTrue(position.isInCheck(Position.WHITE));
+        assertFalse(position.isInCheck(Position.BLACK));
+        assertEquals(Position.CHECKMATE, position.status());
+    }
+
+    /**
+     * Test a check that can be answered and a stalemate
+     */
+    @Test
+    public void testCheckAndStalemate() {
+        assertEquals(Position.CHECK, Position.fromFen("4k3/8/8/8/8/8/8/4R1K1 b - - 0 1").status());
+        assertEquals(Position.STALEMATE, Position.fromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1").status());
+    }
+
+    /**
+     * Test threefold repetition, counted only since the last pawn move or capture
+     */
+    @Test
+    public void testRepetition() {
+        Position position = Position.fromFen(Position.START_FEN);
+        String[] shuffle = {"g1f3", "g8f6", "f3g1", "f6g8"};
+        for (String move : shuffle) {
+            play(position, move);
+        }
+        assertEquals(1, position.repetitions());
+        assertTrue(position.isRepetition());
+        assertEquals(Position.ONGOING, position.status());
+        for (String move : shuffle) {
+            play(position, move);
+        }
+        assertEquals(2, position.repetitions());
+        assertEquals(Position.REPETITION, position.status());
+        assertTrue(Position.isGameOver(position.status()));
+        // a pawn move makes the earlier positions unreachable, its en passant square keeps the next one apart
+        play(position, "e2e4");
+        for (String move : new String[] {"g8f6", "g1f3", "f6g8", "f3g1"}) {
+            play(position, move);
+        }
+        assertEquals(0, position.repetitions());
+        play(position, "g8f6");
+        assertTrue(position.isRepetition());
+    }
+
+    /**
+     * Test the fifty-move rule, a promotion resetting the clock and insufficient material
+     */
+    @Test
+    public void testFiftyMovesAndMaterial() {
+        assertEquals(Position.FIFTY_MOVES, Position.fromFen("4k3/8/8/8/8/8/8/R3K3 b - - 100 80").status());
+        // checkmate on the hundredth halfmove still wins
+        assertEquals(Position.CHECKMATE, Position.fromFen("R3k3/8/4K3/8/8/8/8/8 b - - 100 80").status());
+        Position promotion = Position.fromFen("4k3/P7/8/8/8/8/8/4K3 w - - 42 60");
+        play(promotion, "a7a8q");
+        assertEquals(0, promotion.halfmoveClock());
+        assertEquals(Position.INSUFFICIENT_MATERIAL, Position.fromFen("4k3/8/8/8/8/8/8/2B1K3 w - - 0 1").status());
+        assertEquals(Position.ONGOING, Position.fromFen("4k3/8/8/8/8/8/8/1NB1K3 w - - 0 1").status());
+        // bishops on squares of the same color, one or more on each side
+        assertEquals(Position.INSUFFICIENT_MATERIAL, Position.fromFen("4kb2/8/8/8/8/8/8/2B1K3 w - - 0 1").status());
+        assertEquals(Position.INSUFFICIENT_MATERIAL, Position.fromFen("2b1k3/8/8/8/8/8/B7/3BK3 w - - 0 1").status());
+        assertEquals(Position.ONGOING, Position.fromFen("2b1k3/8/8/8/8/8/8/2B1K3 w - - 0 1").status());
+        assertEquals(Position.ONGOING, Position.fromFen("4k3/8/8/8/8/8/8/2BBK3 w - - 0 1").status());
+        assertEquals(Position.ONGOING, Position.fromFen("4kn2/8/8/8/8/8/8/2B1K3 w - - 0 1").status());
+    }
+
+    /**
+     * Test that the king squares and the checkers follow the moves and are restored by unmakeMove
+     */
+    @Test
+    public void testKingSquaresAndCheckers() {
+        Position position = Position.fromFen("4k3/8/8/8/8/8/8/R3K2R w KQ - 0 1");
+        assertEquals(Move.parseSquare("e1"), position.kingSquare(Position.WHITE));
+        assertEquals(Move.parseSquare("e8"), position.kingSquare(Position.BLACK));
+        int castle = position.findLegalMove(Move.parseSquare("e1"), Move.parseSquare("g1"), 0);
+        position.makeMove(castle);
+        assertEquals(Move.parseSquare("g1"), position.kingSquare(Position.WHITE));
+        int check = position.findLegalMove(Move.parseSquare("e8"), Move.parseSquare("e7"), 0);
+        position.makeMove(check);
+        int rookCheck = position.findLegalMove(Move.parseSquare("f1"), Move.parseSquare("e1"), 0);
+        position.makeMove(rookCheck);
+        assertEquals(1L << Move.parseSquare("e1"), position.checkers());
+        position.unmakeMove(rookCheck);
+        assertEquals(0L, position.checkers());
+        position.unmakeMove(check);
+        position.unmakeMove(castle);
+        assertEquals(Move.parseSquare("e1"), position.kingSquare(Position.WHITE));
+        assertEquals("4k3/8/8/8/8/8/8/R3K2R w KQ - 0 1", position.toFen());
+    }
+
+    /**
+     * Test that FEN strings that do not describe a playable position are rejected and leave the position as it was
+     */
+    @Test
+    public void testInvalidFen() {
+        String[] invalid = {
+            "4k3/8/8/8/8/8/8/4K3 w KQ - 0 1",
+            "4k3/8/8/8/8/8/8/R3K3 w K - 0 1",
+            "8/8/8/8/8/8/8/8 w - - 0 1",
+            "4k3/8/8/8/8/8/8/3KK3 w - - 0 1",
+            "4k3/8/8/8/8/8/8 w - - 0 1",
+            "4k3/8/8/8/8/8/8/8/4K3 w - - 0 1",
+            "4k3/8/8/8/8/8/8/4K4 w - - 0 1",
+            "4k3/8/8/8/8/8/8/4K2 w - - 0 1",
+            "4k3/8/8/8/8/8/8/4K3 x - - 0 1",
+            "4k3/8/8/8/8/8/8/4K3 w X - 0 1",
+            "4k3/8/8/3pP3/8/8/8/4K3 w - d3 0 1",
+            "4k3/8/8/8/8/8/8/4K3 w - i6 0 1",
+            "4k2P/8/8/8/8/8/8/4K3 w - - 0 1",
+            "4k3/8/8/8/8/8/8/4K3 w - - x 1"
+        };
+        Position position = Position.fromFen(Position.START_FEN);
+        position.makeMove(Move.parse(position, "e2e4"));
+        String fen = position.toFen();
+        for (String text : invalid) {
+            try {
+                position.setFen(text);
+                fail(text);
+            } catch (IllegalArgumentException e) {
+                assertEquals(fen, position.toFen());
+            }
+        }
+        position.unmakeMove(Move.parse(Position.fromFen(Position.START_FEN), "e2e4"));
+        assertEquals(Position.START_FEN, position.toFen());
+        position.setFen("4k3/8/8/3pP3/8/8/8/R3K2R w KQ d6 0 1");
+        assertEquals("4k3/8/8/3pP3/8/8/8/R3K2R w KQ d6 0 1", position.toFen());
+    }
+
+    /**
+     * Test that move and square texts off the board are rejected instead of wrapping onto another square
+     */
+    @Test
+    public void testParseMove() {
+        Position position = Position.fromFen(Position.START_FEN);
+        assertEquals(0, Move.parseSquare("a1"));
+        assertEquals(63, Move.parseSquare("h8"));
+        assertEquals(Position.NO_SQUARE, Move.parseSquare("i1"));
+        assertEquals(Position.NO_SQUARE, Move.parseSquare("a9"));
+        assertEquals(Position.NO_SQUARE, Move.parseSquare("a0"));
+        assertEquals(Position.NO_SQUARE, Move.parseSquare("e"));
+        assertEquals("a2a3", Move.toString(Move.parse(position, "a2a3")));
+        assertEquals(Move.NONE, Move.parse(position, "i1a3"));
+        assertEquals(Move.NONE, Move.parse(position, "h0h3"));
+        assertEquals(Move.NONE, Move.parse(position, "a2a9"));
+    }
+
+    /**
+     * Test that the incremental evaluation matches a full recompute through captures, castling,
+     * en passant and promotions, and is restored by unmakeMove
+     */
+    @Test
+    public void testIncrementalEvaluation() {
+        Position position = Position.fromFen("r3k2r/pPppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        int start = Evaluation.evaluate(position);
+        assertEquals(Evaluation.evaluateFull(position), start);
+        // a small pawn table, so structures also replace each other
+        checkEvaluation(position, new PawnTable(1), 3);
+        assertEquals(start, Evaluation.evaluate(position));
+        assertEquals(Evaluation.MAX_PHASE, Position.fromFen(Position.START_FEN).phase());
+    }
+
+    /**
+     * Test the pawn structure and pawn shield terms and that the pawn table finds a structure again
+     */
+    @Test
+    public void testPawnTerms() {
+        // a2 is passed and isolated
+        Position position = Position.fromFen("4k3/8/8/8/8/8/P7/4K3 w - - 0 1");
+        assertEquals(Evaluation.pack(Evaluation.PASSED_MG[1] + Evaluation.ISOLATED[0],
+                Evaluation.PASSED_EG[1] + Evaluation.ISOLATED[1]), Evaluation.evaluatePawnStructure(position));
+        // e3 is backward, d5 is isolated
+        position.setFen("4k3/8/8/3p4/3P4/4P3/8/4K3 w - - 0 1");
+        assertEquals(Evaluation.pack(Evaluation.BACKWARD[0] - Evaluation.ISOLATED[0],
+                Evaluation.BACKWARD[1] - Evaluation.ISOLATED[1]), Evaluation.evaluatePawnStructure(position));
+        // the black king lost one pawn of its shield, the structures are the same
+        position.setFen("6k1/5pp1/7p/8/8/7P/5PP1/6K1 w - - 0 1");
+        assertEquals(0, Evaluation.evaluatePawnStructure(position));
+        position.setFen("6k1/5pp1/8/8/8/8/5PPP/6K1 w - - 0 1");
+        assertEquals(Evaluation.pack(Evaluation.SHIELD[0], 0), Evaluation.evaluateShelter(position));
+        assertEquals(Evaluation.pack(-5, -20), Evaluation.pack(-5, 0) + Evaluation.pack(0, -20));
+        assertEquals(-20, Evaluation.eg(Evaluation.pack(-5, -20)));
+        assertEquals(-5, Evaluation.mg(Evaluation.pack(-5, -20)));
+
+        PawnTable pawnTable = new PawnTable(64);
+        int score = Evaluation.evaluate(position, pawnTable);
+        assertEquals(Evaluation.evaluate(position), score);
+        assertEquals(score, Evaluation.evaluate(position, pawnTable));
+        assertEquals(2, pawnTable.getProbes());
+        assertEquals(1, pawnTable.getHits());
+        // the same pawns after a king move: the structure is found, the shield is computed again
+        int move = Move.parse(position, "g1f1");
+        position.makeMove(move);
+        assertEquals(Evaluation.evaluateFull(position), Evaluation.evaluate(position, pawnTable));
+        assertEquals(2, pawnTable.getHits());
+    }
+
+    /**
+     * Test that the terms counted for the tuner, times the weights, add up to the evaluation sums
+     */
+    @Test
+    public void testEvaluationTrace() {
+        String[] fens = {
+            Position.START_FEN,
+            "r3k2r/pPppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "4k3/8/8/3p4/3P4/4P3/8/4K3 w - - 0 1",
+            "6k1/5pp1/8/8/8/8/5PPP/6K1 b - - 0 1"
+        };
+        int[] counts = new int[Evaluation.TERM_COUNT];
+        for (String fen : fens) {
+            Position position = Position.fromFen(fen);
+            int phase = Evaluation.trace(position, counts);
+            int mg = 0;
+            int eg = 0;
+            for (int term = 0; term < Evaluation.TERM_COUNT; term++) {
+                mg += counts[term] * Evaluation.getWeight(term, false);
+                eg += counts[term] * Evaluation.getWeight(term, true);
+            }
+            int pawns = Evaluation.evaluatePawns(position);
+            assertEquals(position.phase(), phase);
+            assertEquals(position.mgScore() + Evaluation.mg(pawns), mg);
+            assertEquals(position.egScore() + Evaluation.eg(pawns), eg);
+        }
+    }
+
+    private static void checkEvaluation(Position position, PawnTable pawnTable, int depth) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(position, moves);
+        for (int i = 0; i < count; i++) {
+            int mg = position.mgScore();
+            int eg = position.egScore();
+            int phase = position.phase();
+            long pawnKey = position.pawnKey();
+            position.makeMove(moves[i]);
+            assertEquals(Zobrist.computePawnKey(position), position.pawnKey());
+            assertEquals(Evaluation.evaluateFull(position), Evaluation.evaluate(position));
+            assertEquals(Evaluation.evaluateFull(position), Evaluation.evaluate(position, pawnTable));
+            if (depth > 1) {
+                checkEvaluation(position, pawnTable, depth - 1);
+            }
+            position.unmakeMove(moves[i]);
+            assertEquals(pawnKey, position.pawnKey());
+            assertEquals(mg, position.mgScore());
+            assertEquals(eg, position.egScore());
+            assertEquals(phase, position.phase());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * PromotionPolicy interface decides which piece a pawn reaching the last row becomes.
+ * ChessBoard asks its policy instead of opening a dialog, so a board can be used
+ * without a display, for example by a batch of engine games on a server.
+ */
+public interface PromotionPolicy {
+    // always promote to a queen
+    PromotionPolicy QUEEN = always(Position.QUEEN);
+
+    /**
+     * Choose the piece a pawn is promoted to
+     * @param position the position before the promotion
+     * @param from the square of the pawn
+     * @param to the square on the last row the pawn moves to
+     * @return the piece type, Position.KNIGHT to Position.QUEEN
+     */
+    int choosePromotion(Position position, int from, int to);
+
+    /**
+     * Return a policy that always promotes to the same piece
+     * @param type the piece type, Position.KNIGHT to Position.QUEEN
+     * @return the policy
+     */
+    static PromotionPolicy always(int type) {
+        if (type < Position.KNIGHT || type > Position.QUEEN) {
+            throw new IllegalArgumentException("Not a promotion piece: " + type);
+        }
+        return (position, from, to) -> type;
+    }
+
+    /**
+     * Return the policy a new board starts with: a dialog when there is a display
+     * and a queen otherwise
+     * @return the policy
+     */
+    static PromotionPolicy defaultPolicy() {
+        return java.awt.GraphicsEnvironment.isHeadless() ? QUEEN : new DialogPromotionPolicy();
+    }
+}
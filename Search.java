@@ -0,0 +1,580 @@
+import java.util.Arrays;
+
+/**
+ * Search class looks for the best move of a position with a negamax alpha-beta search.
+ * After the first move of a node, the other moves are searched with a null window around alpha
+ * (principal variation search) and only searched again with the full window if they beat it.
+ * The depth is increased one ply at a time (iterative deepening) so a node limit, a time limit
+ * or a call to stop can end the search with the result of the last completed depth. Results are kept in a TranspositionTable
+ * so positions reached by different move orders are only searched once.
+ *
+ * With a MultiPV count above 1 each depth searches the root once per line: every search leaves out
+ * the root moves of the lines found before it, so the lines come out best first with their own scores.
+ */
+public class Search {
+    /**
+     * IterationListener interface is told about every depth the search completes
+     */
+    public interface IterationListener {
+        /**
+         * @param result the best move, score, depth, nodes and principal variation of the depth
+         */
+        void iterationDone(SearchResult result);
+    }
+
+    public static final int INFINITY = 32000;
+    // score of being mated at the root, mates further away score closer to zero
+    public static final int MATE = 30000;
+    public static final int MAX_PLY = 64;
+    // limit of the history scores
+    private static final int MAX_HISTORY = 16384;
+    // what a quiet position may gain beyond the material of a capture, used by delta pruning
+    private static final int DELTA_MARGIN = 200;
+
+    // the position searched, moves are made and taken back on it
+    private final Position position;
+    // table of earlier results, it may be shared with other searches
+    private final TranspositionTable table;
+    // pawn terms of the evaluation, owned by this thread, made at the first search when none was set
+    private PawnTable pawnTable;
+    // the root moves, searched in order so helper threads can rotate them
+    private final int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+    // one move picker per ply below the root so the search never allocates
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY + 1];
+    // two quiet moves per ply that caused a cutoff, the latest first
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    // quiet moves searched at each ply, to lower the history of those that did not cut off
+    private final int[][] quietsSearched = new int[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+    // how often each quiet move caused a cutoff, by side to move, origin and target
+    private final int[] history = new int[2 * 64 * 64];
+    // triangular table of principal variations, row ply holds the line from that ply
+    private final int[][] pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    private long nodes;
+    private long nodeLimit;
+    private boolean stopped;
+    // set from another thread to end the search early
+    private volatile boolean stopRequested;
+    // System.nanoTime at which a running iteration is aborted
+    private long hardDeadline;
+    // 0 for the main search, helper threads of a parallel search count up from 1
+    private final int threadId;
+    private int rootBestMove;
+    // root move searched first, the move of the line being searched at the previous depth
+    private int rootFirstMove;
+    // number of best lines searched at every depth
+    private int multiPv = 1;
+    // root moves left out, those of the lines already found at the current depth
+    private final int[] excludedMoves = new int[MoveGenerator.MAX_MOVES];
+    private int excludedCount;
+    // the lines of the last completed depth, best first
+    private SearchResult[] lines = new SearchResult[0];
+    // endgame tables probed below the root, or null
+    private Tablebases tablebases;
+    // told about each completed depth, or null
+    private IterationListener listener;
+    // counters of this thread, only written by it
+    private final EngineStatistics statistics = new EngineStatistics();
+    // System.nanoTime at which the search started and ended, the end is 0 while it runs
+    private long startTime;
+    private long endTime;
+
+    /**
+     * Constructor for the Search class
+     * @param position the position to search, it is the same position when the search returns
+     * @param table the transposition table to use
+     */
+    public Search(Position position, TranspositionTable table) {
+        this(position, table, 0);
+    }
+
+    /**
+     * Constructor for one thread of a parallel search
+     * @param position the position to search, owned by this thread
+     * @param table the transposition table shared by all threads
+     * @param threadId 0 for the main thread, 1 and up for helpers
+     */
+    public Search(Position position, TranspositionTable table, int threadId) {
+        this.position = position;
+        this.table = table;
+        this.threadId = threadId;
+        for (int ply = 0; ply <= MAX_PLY; ply++) {
+            pickers[ply] = new MovePicker(position, statistics);
+        }
+    }
+
+    /**
+     * Score the positions found in the endgame tables from the tables instead of searching them
+     * @param tablebases the tables, or null
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Search several best lines instead of one, each with its own score, at the cost of one root search per line
+     * @param multiPv the number of lines, at least 1
+     */
+    public void setMultiPv(int multiPv) {
+        this.multiPv = Math.max(1, multiPv);
+    }
+
+    /**
+     * Return the lines of the last completed depth; there are fewer than the MultiPV count
+     * when the position has fewer legal moves
+     * @return the lines, best first, empty before a depth completed
+     */
+    public SearchResult[] getLines() {
+        return lines.clone();
+    }
+
+    /**
+     * Use a pawn table kept from earlier searches of this thread instead of starting an empty one
+     * @param pawnTable the table, it must not be used by another thread at the same time
+     */
+    public void setPawnTable(PawnTable pawnTable) {
+        this.pawnTable = pawnTable;
+    }
+
+    /**
+     * Report every completed depth, for example as UCI info lines
+     * @param listener the listener, or null
+     */
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Ask the search to stop as soon as possible, it can be called from any thread
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Search the position without a time limit
+     * @param maxDepth the depth in plies to search to
+     * @param nodeLimit the number of nodes after which the search stops
+     * @return the best move and score of the last completed depth
+     */
+    public SearchResult search(int maxDepth, long nodeLimit) {
+        return search(maxDepth, nodeLimit, TimeControl.INFINITE);
+    }
+
+    /**
+     * Search the position
+     * @param maxDepth the depth in plies to search to
+     * @param nodeLimit the number of nodes after which the search stops
+     * @param timeControl the time the search may use
+     * @return the best move and score of the last completed depth
+     */
+    public SearchResult search(int maxDepth, long nodeLimit, TimeControl timeControl) {
+        startTime = System.nanoTime();
+        endTime = 0;
+        long softLimit = timeControl.isInfinite() ? Long.MAX_VALUE : timeControl.getSoftLimitMs() * 1000000;
+        hardDeadline = timeControl.isInfinite() ? Long.MAX_VALUE : startTime + timeControl.getHardLimitMs() * 1000000;
+        this.nodeLimit = nodeLimit;
+        nodes = 0;
+        statistics.reset();
+        if (pawnTable == null) {
+            pawnTable = new PawnTable();
+        }
+        // killers belong to plies of the previous search, the history is kept but counts for less
+        for (int[] pair : killers) {
+            pair[0] = Move.NONE;
+            pair[1] = Move.NONE;
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] /= 2;
+        }
+        stopped = false;
+        rootBestMove = Move.NONE;
+        lines = new SearchResult[0];
+        int lineCount = Math.max(1, Math.min(multiPv, MoveGenerator.generateLegal(position, rootMoves)));
+        int bestScore = 0;
+        int completedDepth = 0;
+        int[] pv = new int[0];
+        // every other helper starts one ply deeper so the threads do not all search the same depth
+        int startDepth = Math.min(maxDepth, 1 + (threadId & 1));
+        for (int depth = startDepth; depth <= maxDepth; depth++) {
+            SearchIterationEvent event = EngineStatistics.ENABLED ? new SearchIterationEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            SearchResult[] found = new SearchResult[lineCount];
+            excludedCount = 0;
+            for (int line = 0; line < lineCount; line++) {
+                rootFirstMove = line < lines.length ? lines[line].getBestMove() : Move.NONE;
+                int score = negamax(depth, -INFINITY, INFINITY, 0);
+                if (stopped) {
+                    break;
+                }
+                // a position without legal moves has an empty line
+                int move = pvLength[0] > 0 ? pvTable[0][0] : Move.NONE;
+                found[line] = new SearchResult(move, score, depth, nodes, Arrays.copyOf(pvTable[0], pvLength[0]));
+                excludedMoves[excludedCount++] = move;
+            }
+            if (stopped) {
+                break;
+            }
+            // a line searched later may still come out better, the search is not exact
+            Arrays.sort(found, (a, b) -> Integer.compare(b.getScore(), a.getScore()));
+            lines = found;
+            int score = found[0].getScore();
+            completedDepth = depth;
+            bestScore = score;
+            pv = found[0].getPv();
+            rootBestMove = found[0].getBestMove();
+            if (event != null && event.shouldCommit()) {
+                commit(event, depth, score);
+            }
+            if (listener != null) {
+                listener.iterationDone(new SearchResult(rootBestMove, score, depth, nodes, pv));
+            }
+            // a forced mate cannot be improved by searching deeper
+            if (Math.abs(score) >= MATE - MAX_PLY) {
+                break;
+            }
+            // the next iteration would most likely not finish in time
+            if (System.nanoTime() - startTime >= softLimit) {
+                break;
+            }
+        }
+        if (rootBestMove == Move.NONE) {
+            // not even depth 1 finished, fall back to the first legal move
+            int[] moves = rootMoves;
+            if (MoveGenerator.generateLegal(position, moves) > 0) {
+                rootBestMove = moves[0];
+                pv = new int[] {rootBestMove};
+            }
+        }
+        endTime = System.nanoTime();
+        return new SearchResult(rootBestMove, bestScore, completedDepth, nodes, pv);
+    }
+
+    /**
+     * @return the number of nodes searched so far
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Return the counters of the search, it can be called from another thread while the search runs
+     * and then gives numbers that are a little behind
+     * @return a copy of the counters of this thread
+     */
+    public EngineStatistics getStatistics() {
+        EngineStatistics copy = statistics.copy();
+        copy.nodes = nodes;
+        copy.elapsedNanos = (endTime != 0 ? endTime : System.nanoTime()) - startTime;
+        return copy;
+    }
+
+    /**
+     * Fill in and record the flight recorder event of a completed depth
+     */
+    private void commit(SearchIterationEvent event, int depth, int score) {
+        event.threadId = threadId;
+        event.depth = depth;
+        event.score = score;
+        event.bestMove = Move.toString(rootBestMove);
+        event.nodes = nodes;
+        event.quiescenceNodes = statistics.quiescenceNodes;
+        event.betaCutoffs = statistics.betaCutoffs;
+        event.firstMoveCutoffs = statistics.firstMoveCutoffs;
+        event.hashProbes = statistics.hashProbes;
+        event.hashHits = statistics.hashHits;
+        event.moveGenerations = statistics.moveGenerations;
+        event.commit();
+    }
+
+    private int negamax(int depth, int alpha, int beta, int ply) {
+        pvLength[ply] = ply;
+        // a leaf is searched on through its captures
+        if (depth == 0 || ply == MAX_PLY) {
+            return isDraw() ? 0 : quiescence(alpha, beta, ply);
+        }
+        // the clock and the stop flag are only looked at every 1024 nodes
+        if (nodes >= nodeLimit || ((nodes & 1023) == 0 && (stopRequested || System.nanoTime() >= hardDeadline))) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+        nodes++;
+        if (ply > 0 && isDraw()) {
+            return 0;
+        }
+        // a position in the endgame tables is known exactly, wins closer to the root score higher
+        if (ply > 0 && tablebases != null) {
+            int score = tablebases.probe(position);
+            if (score != Tablebases.NOT_FOUND) {
+                return score > 0 ? score - ply : score < 0 ? score + ply : 0;
+            }
+        }
+        // a stored result of the same depth or deeper can end the node, except on the principal variation
+        long entry = table.probe(position.key());
+        if (EngineStatistics.ENABLED) {
+            statistics.hashProbes++;
+            if (entry != 0) {
+                statistics.hashHits++;
+            }
+        }
+        int hashMove = Move.NONE;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if (ply > 0 && beta - alpha == 1 && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.scoreFromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+        // the root searches its full move list, the other plies take their moves from a picker stage by stage
+        int count = 0;
+        MovePicker picker = null;
+        if (ply == 0) {
+            count = MoveGenerator.generateLegal(position, rootMoves);
+            if (EngineStatistics.ENABLED) {
+                statistics.moveGenerations++;
+            }
+            count = removeExcluded(rootMoves, count);
+            orderMoves(rootMoves, count, rootFirstMove != Move.NONE ? rootFirstMove : hashMove);
+            // helpers rotate the root moves after the first so they explore the tree in a different order
+            if (threadId > 0 && count > 2) {
+                rotate(rootMoves, 1, count, threadId % (count - 1));
+            }
+        } else {
+            picker = pickers[ply];
+            picker.reset(hashMove, killers[ply][0], killers[ply][1], history);
+        }
+        int originalAlpha = alpha;
+        int bestMove = Move.NONE;
+        int searched = 0;
+        int quietCount = 0;
+        while (true) {
+            int move = picker != null ? picker.next() : searched < count ? rootMoves[searched] : Move.NONE;
+            if (move == Move.NONE) {
+                break;
+            }
+            position.makeMove(move);
+            int score;
+            if (searched == 0) {
+                score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+            } else {
+                // prove the move is no better than alpha with a null window, search again if it is
+                score = -negamax(depth - 1, -alpha - 1, -alpha, ply + 1);
+                if (score > alpha && score < beta) {
+                    score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+                }
+            }
+            position.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+            searched++;
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+                updatePv(ply, move);
+                if (alpha >= beta) {
+                    if (EngineStatistics.ENABLED) {
+                        statistics.betaCutoffs++;
+                        if (searched == 1) {
+                            statistics.firstMoveCutoffs++;
+                        }
+                    }
+                    if (Move.isQuiet(move)) {
+                        updateQuietHistory(move, depth, ply, quietCount);
+                    }
+                    break;
+                }
+            }
+            if (Move.isQuiet(move)) {
+                quietsSearched[ply][quietCount++] = move;
+            }
+        }
+        if (searched == 0) {
+            // checkmate or stalemate
+            return position.isInCheck() ? -MATE + ply : 0;
+        }
+        int bound = alpha >= beta ? TranspositionTable.LOWER
+                : alpha > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        // the root result of a later line is not the value of the position
+        if (ply > 0 || excludedCount == 0) {
+            table.store(position.key(), bestMove, TranspositionTable.scoreToTable(alpha, ply), depth, bound);
+        }
+        return alpha;
+    }
+
+    /**
+     * A position seen before since the last irreversible move is a draw, as is the fiftieth move without one
+     */
+    private boolean isDraw() {
+        return position.isRepetition() || (position.halfmoveClock() >= 100
+                && !(position.isInCheck() && !position.hasLegalMove()));
+    }
+
+    /**
+     * Search the captures and queen promotions of a leaf until the position is quiet, so a leaf in the middle
+     * of an exchange is not scored as if it were over. The side to move may stand pat on the static
+     * evaluation, captures that lose material in the exchange are not searched and captures that
+     * cannot bring the score up to alpha even with a margin are skipped. A side in check searches all its moves.
+     */
+    private int quiescence(int alpha, int beta, int ply) {
+        if (nodes >= nodeLimit || ((nodes & 1023) == 0 && (stopRequested || System.nanoTime() >= hardDeadline))) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+        nodes++;
+        if (EngineStatistics.ENABLED) {
+            statistics.quiescenceNodes++;
+        }
+        boolean inCheck = position.isInCheck();
+        if (ply == MAX_PLY) {
+            return inCheck ? 0 : Evaluation.evaluate(position, pawnTable);
+        }
+        int standPat = -INFINITY;
+        if (!inCheck) {
+            standPat = Evaluation.evaluate(position, pawnTable);
+            if (standPat >= beta) {
+                return standPat;
+            }
+            // not even winning a queen would reach alpha
+            if (standPat + StaticExchange.value(Position.QUEEN) + 2 * DELTA_MARGIN < alpha) {
+                return standPat;
+            }
+            alpha = Math.max(alpha, standPat);
+        }
+        MovePicker picker = pickers[ply];
+        if (inCheck) {
+            picker.reset(Move.NONE, Move.NONE, Move.NONE, history);
+        } else {
+            picker.resetQuiescence();
+        }
+        int best = standPat;
+        int searched = 0;
+        for (int move = picker.next(); move != Move.NONE; move = picker.next()) {
+            searched++;
+            // delta pruning: skip a capture that leaves the score short of alpha even with a margin
+            if (!inCheck && !Move.isPromotion(move)) {
+                int victim = (Move.flags(move) & Move.EN_PASSANT) != 0 ? Position.PAWN
+                        : Position.typeOf(position.pieceAt(Move.to(move)));
+                if (standPat + StaticExchange.value(victim) + DELTA_MARGIN <= alpha) {
+                    continue;
+                }
+            }
+            position.makeMove(move);
+            int score = -quiescence(-beta, -alpha, ply + 1);
+            position.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        if (EngineStatistics.ENABLED) {
+                            statistics.betaCutoffs++;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (inCheck && searched == 0) {
+            return -MATE + ply;
+        }
+        return best;
+    }
+
+    /**
+     * Put the best root move of the previous iteration first and the captures right after it
+     */
+    private static void orderMoves(int[] moves, int count, int firstMove) {
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == firstMove) {
+                swap(moves, i, next++);
+                break;
+            }
+        }
+        for (int i = next; i < count; i++) {
+            if (!Move.isQuiet(moves[i])) {
+                swap(moves, i, next++);
+            }
+        }
+    }
+
+    /**
+     * Take the root moves of the lines already found out of the move list
+     */
+    private int removeExcluded(int[] moves, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            boolean excluded = false;
+            for (int j = 0; j < excludedCount && !excluded; j++) {
+                excluded = excludedMoves[j] == move;
+            }
+            if (!excluded) {
+                moves[kept++] = move;
+            }
+        }
+        return kept;
+    }
+
+    private static void rotate(int[] moves, int start, int end, int shift) {
+        for (int i = 0; i < shift; i++) {
+            int first = moves[start];
+            System.arraycopy(moves, start + 1, moves, start, end - start - 1);
+            moves[end - 1] = first;
+        }
+    }
+
+    private static void swap(int[] moves, int i, int j) {
+        int move = moves[i];
+        moves[i] = moves[j];
+        moves[j] = move;
+    }
+
+    /**
+     * Remember a quiet move that caused a cutoff as a killer of its ply, raise its history score
+     * and lower the score of the quiet moves searched before it
+     */
+    private void updateQuietHistory(int move, int depth, int ply, int quietCount) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int color = position.sideToMove();
+        int bonus = Math.min(depth * depth, MAX_HISTORY / 16);
+        addHistory(MovePicker.historyIndex(color, move), bonus);
+        int[] tried = quietsSearched[ply];
+        for (int i = 0; i < quietCount; i++) {
+            addHistory(MovePicker.historyIndex(color, tried[i]), -bonus);
+        }
+    }
+
+    /**
+     * Move a history score towards the bonus, less so the closer it already is to the limit,
+     * which keeps every score between -MAX_HISTORY and MAX_HISTORY
+     */
+    private void addHistory(int index, int bonus) {
+        history[index] += bonus - history[index] * Math.abs(bonus) / MAX_HISTORY;
+    }
+
+    private void updatePv(int ply, int move) {
+        pvTable[ply][ply] = move;
+        int length = pvLength[ply + 1];
+        System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1, length - ply - 1);
+        pvLength[ply] = Math.max(length, ply + 1);
+    }
+}
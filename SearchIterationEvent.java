@@ -0,0 +1,50 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * SearchIterationEvent class is the Java Flight Recorder event written when a search thread completes a depth.
+ * Its duration is the time of the iteration and the counters are those of the thread's search so far.
+ * It is only recorded while a recording is running, for example with
+ * java -XX:StartFlightRecording=filename=search.jfr ParallelSearch 10 4
+ */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category({"Chess", "Search"})
+@Description("A search thread completed one depth of its iterative deepening")
+public class SearchIterationEvent extends Event {
+    @Label("Thread Id")
+    int threadId;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Score")
+    int score;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Quiescence Nodes")
+    long quiescenceNodes;
+
+    @Label("Beta Cutoffs")
+    long betaCutoffs;
+
+    @Label("First Move Cutoffs")
+    long firstMoveCutoffs;
+
+    @Label("Hash Probes")
+    long hashProbes;
+
+    @Label("Hash Hits")
+    long hashHits;
+
+    @Label("Move Generations")
+    long moveGenerations;
+}
@@ -0,0 +1,56 @@
+/**
+ * SearchResult class holds the outcome of a search: the best move, its score,
+ * the depth reached, the number of nodes searched and the principal variation.
+ */
+public final class SearchResult {
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final int[] pv;
+
+    /**
+     * Constructor for the SearchResult class
+     * @param bestMove the best move found, Move.NONE when there is no legal move
+     * @param score the score of the best move in centipawns, from the side to move's point of view
+     * @param depth the last depth that was searched completely
+     * @param nodes the number of nodes searched
+     * @param pv the principal variation starting with the best move
+     */
+    public SearchResult(int bestMove, int score, int depth, long nodes, int[] pv) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.pv = pv;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int[] getPv() {
+        return pv.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (int move : pv) {
+            line.append(' ').append(Move.toString(move));
+        }
+        return "depth " + depth + " score " + score + " nodes " + nodes + " pv" + line;
+    }
+}
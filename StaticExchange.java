@@ -0,0 +1,106 @@
+/**
+ * StaticExchange class works out whether a capture wins material when both sides keep capturing on
+ * the target square with their least valuable piece, and either side may stop when going on would lose.
+ * It runs on attack sets only: pieces are taken off an occupancy bitboard and the sliders behind them
+ * are added as they come into line, so no move is made and nothing is allocated.
+ * Pins are not looked at, a pinned piece is counted as if it could capture.
+ */
+public final class StaticExchange {
+    // piece values of the exchange, the king can only take last
+    private static final int[] VALUES = {100, 325, 325, 500, 1000, 20000};
+
+    private StaticExchange() {
+    }
+
+    /**
+     * @param type a piece type
+     * @return the value of the piece in an exchange
+     */
+    public static int value(int type) {
+        return VALUES[type];
+    }
+
+    /**
+     * Check that a move wins at least some material in the exchange it starts.
+     * Castling, en passant and promotions are taken to win nothing.
+     * @param position the position before the move
+     * @param move the move
+     * @param threshold the gain asked for, 0 for a move that does not lose material
+     * @return true if the side to move ends the exchange at least threshold up
+     */
+    public static boolean isAtLeast(Position position, int move, int threshold) {
+        if ((Move.flags(move) & (Move.CASTLE | Move.EN_PASSANT)) != 0 || Move.isPromotion(move)) {
+            return 0 >= threshold;
+        }
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int victim = position.mailbox[to];
+        // what the first capture wins over the threshold
+        int swap = (victim == Position.NO_PIECE ? 0 : VALUES[Position.typeOf(victim)]) - threshold;
+        if (swap < 0) {
+            return false;
+        }
+        // even losing the moving piece for nothing keeps the threshold
+        swap = VALUES[Position.typeOf(position.mailbox[from])] - swap;
+        if (swap <= 0) {
+            return true;
+        }
+        long occupied = position.occupied ^ (1L << from) ^ (1L << to);
+        long[] pieces = position.pieces;
+        // sliders of both sides, they join the exchange when the pieces in front of them are gone
+        long queens = pieces[Position.QUEEN] | pieces[Position.piece(Position.BLACK, Position.QUEEN)];
+        long bishops = pieces[Position.BISHOP] | pieces[Position.piece(Position.BLACK, Position.BISHOP)] | queens;
+        long rooks = pieces[Position.ROOK] | pieces[Position.piece(Position.BLACK, Position.ROOK)] | queens;
+        long attackers = position.attackersTo(to, Position.WHITE, occupied)
+                | position.attackersTo(to, Position.BLACK, occupied);
+        int side = Position.colorOf(position.mailbox[from]);
+        // 1 while the side that made the move is ahead of the threshold, flipped by every capture
+        int result = 1;
+        while (true) {
+            side ^= 1;
+            attackers &= occupied;
+            long ours = attackers & position.occupancy[side];
+            if (ours == 0) {
+                break;
+            }
+            result ^= 1;
+            int base = side * 6;
+            long least;
+            if ((least = ours & pieces[base + Position.PAWN]) != 0) {
+                if ((swap = VALUES[Position.PAWN] - swap) < result) {
+                    break;
+                }
+                occupied ^= Long.lowestOneBit(least);
+                attackers |= Attacks.bishopAttacks(to, occupied) & bishops;
+            } else if ((least = ours & pieces[base + Position.KNIGHT]) != 0) {
+                if ((swap = VALUES[Position.KNIGHT] - swap) < result) {
+                    break;
+                }
+                occupied ^= Long.lowestOneBit(least);
+            } else if ((least = ours & pieces[base + Position.BISHOP]) != 0) {
+                if ((swap = VALUES[Position.BISHOP] - swap) < result) {
+                    break;
+                }
+                occupied ^= Long.lowestOneBit(least);
+                attackers |= Attacks.bishopAttacks(to, occupied) & bishops;
+            } else if ((least = ours & pieces[base + Position.ROOK]) != 0) {
+                if ((swap = VALUES[Position.ROOK] - swap) < result) {
+                    break;
+                }
+                occupied ^= Long.lowestOneBit(least);
+                attackers |= Attacks.rookAttacks(to, occupied) & rooks;
+            } else if ((least = ours & pieces[base + Position.QUEEN]) != 0) {
+                if ((swap = VALUES[Position.QUEEN] - swap) < result) {
+                    break;
+                }
+                occupied ^= Long.lowestOneBit(least);
+                attackers |= (Attacks.bishopAttacks(to, occupied) & bishops)
+                        | (Attacks.rookAttacks(to, occupied) & rooks);
+            } else {
+                // the king may only take when nothing can take it back
+                return (attackers & ~position.occupancy[side]) != 0 ? (result ^ 1) == 1 : result == 1;
+            }
+        }
+        return result == 1;
+    }
+}
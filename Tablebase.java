@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tablebase class holds the distance to mate of every position of one material set,
+ * such as KQvK, with one byte per position.
+ *
+ * A position is indexed by the side to move and the square of each piece, in the order the material
+ * name lists them (white first), so a table of n pieces has 2 * 64^n entries. Each byte is
+ * 0 for a draw, 1 to MAX_PLIES for a win of the side to move with mate in that many plies and
+ * 128 + n for a loss of the side to move, mated in n plies. Impossible positions hold INVALID.
+ * The file is the byte array itself and is memory-mapped when it is read.
+ */
+public final class Tablebase {
+    public static final byte DRAW = 0;
+    // longest distance to mate the format can hold
+    public static final int MAX_PLIES = 125;
+    // value of positions still being solved by the generator
+    static final byte UNKNOWN = (byte) 254;
+    // value of positions that cannot happen, such as the side not to move being in check
+    static final byte INVALID = (byte) 255;
+    // piece letters in the order they are listed in a material name
+    private static final String LETTERS = "KQRBNP";
+    private static final int[] TYPES = {Position.KING, Position.QUEEN, Position.ROOK,
+        Position.BISHOP, Position.KNIGHT, Position.PAWN};
+
+    private final int[] pieces;
+    private final ByteBuffer data;
+
+    /**
+     * Constructor for the Tablebase class
+     * @param pieces the piece codes in index order
+     * @param data the values, 2 * 64^n bytes
+     */
+    Tablebase(int[] pieces, ByteBuffer data) {
+        if (data.capacity() != size(pieces.length)) {
+            throw new IllegalArgumentException("A table of " + pieces.length + " pieces needs "
+                    + size(pieces.length) + " bytes");
+        }
+        this.pieces = pieces;
+        this.data = data;
+    }
+
+    /**
+     * Memory-map a table file
+     * @param file the file, named after its material such as KQvK.tb
+     * @return the table
+     * @throws IOException if the file cannot be read or has the wrong size
+     */
+    public static Tablebase open(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        int[] pieces = parseMaterial(name.substring(0, name.lastIndexOf('.')));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != size(pieces.length)) {
+                throw new IOException("Wrong size for a " + pieces.length + " piece table: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            return new Tablebase(pieces, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write the table to a file
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = data.duplicate();
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Read a material name such as KQvK or KRPvKR
+     * @param name the white pieces, 'v' and the black pieces, each side starting with its king
+     * @return the piece codes in index order
+     */
+    public static int[] parseMaterial(String name) {
+        int split = name.indexOf('v');
+        if (split < 0 || name.charAt(0) != 'K' || split + 1 >= name.length() || name.charAt(split + 1) != 'K') {
+            throw new IllegalArgumentException("Not a material name: " + name);
+        }
+        int[] pieces = new int[name.length() - 1];
+        int n = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (i == split) {
+                continue;
+            }
+            int letter = LETTERS.indexOf(name.charAt(i));
+            if (letter < 0 || (letter == 0 && i != 0 && i != split + 1)) {
+                throw new IllegalArgumentException("Not a material name: " + name);
+            }
+            pieces[n++] = Position.piece(i < split ? Position.WHITE : Position.BLACK, TYPES[letter]);
+        }
+        // the order of the index, white then black, each in the order of LETTERS
+        return materialPieces(materialKey(pieces));
+    }
+
+    /**
+     * Build the material name of a list of pieces
+     * @param pieces the piece codes
+     * @return the name, such as KQvK
+     */
+    public static String materialName(int[] pieces) {
+        long key = materialKey(pieces);
+        StringBuilder name = new StringBuilder();
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            if (color == Position.BLACK) {
+                name.append('v');
+            }
+            for (int i = 0; i < TYPES.length; i++) {
+                int count = count(key, Position.piece(color, TYPES[i]));
+                for (int j = 0; j < count; j++) {
+                    name.append(LETTERS.charAt(i));
+                }
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Pack the number of pieces of each piece code into a long, 4 bits per code
+     * @param pieces the piece codes
+     * @return the material key
+     */
+    public static long materialKey(int[] pieces) {
+        long key = 0L;
+        for (int piece : pieces) {
+            key += 1L << (4 * piece);
+        }
+        return key;
+    }
+
+    /**
+     * @param position the position
+     * @return the material key of the pieces on the board
+     */
+    public static long materialKey(Position position) {
+        long key = 0L;
+        for (int piece = 0; piece < 12; piece++) {
+            key |= (long) Long.bitCount(position.pieces[piece]) << (4 * piece);
+        }
+        return key;
+    }
+
+    /**
+     * @param key a material key
+     * @return the material key with the colors swapped
+     */
+    public static long flip(long key) {
+        return ((key & 0xFFFFFFL) << 24) | (key >>> 24);
+    }
+
+    /**
+     * List the pieces of a material key in index order
+     * @param key the material key
+     * @return the piece codes
+     */
+    static int[] materialPieces(long key) {
+        int n = 0;
+        for (int piece = 0; piece < 12; piece++) {
+            n += count(key, piece);
+        }
+        int[] pieces = new int[n];
+        n = 0;
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            for (int type : TYPES) {
+                int piece = Position.piece(color, type);
+                for (int j = count(key, piece); j > 0; j--) {
+                    pieces[n++] = piece;
+                }
+            }
+        }
+        return pieces;
+    }
+
+    private static int count(long key, int piece) {
+        return (int) (key >>> (4 * piece)) & 15;
+    }
+
+    /**
+     * @param pieceCount the number of pieces
+     * @return the number of entries of a table with that many pieces
+     */
+    static long size(int pieceCount) {
+        return 2L << (6 * pieceCount);
+    }
+
+    /**
+     * @return the piece codes in index order
+     */
+    public int[] getPieces() {
+        return pieces.clone();
+    }
+
+    public String getName() {
+        return materialName(pieces);
+    }
+
+    /**
+     * Compute the index of a position with the material of this table
+     * @param position the position
+     * @param flip true if the position has the colors of the table swapped, it is then mirrored
+     * @return the index
+     */
+    int index(Position position, boolean flip) {
+        int index = flip ? position.sideToMove() ^ 1 : position.sideToMove();
+        int i = 0;
+        while (i < pieces.length) {
+            int piece = pieces[i];
+            long bits = position.pieces[flip ? (piece + 6) % 12 : piece];
+            // pieces of the same kind fill their slots in square order
+            while (i < pieces.length && pieces[i] == piece) {
+                int square = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                index = (index << 6) | (flip ? square ^ 56 : square);
+                i++;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param index the index of a position
+     * @return the value byte of the position
+     */
+    byte value(int index) {
+        return data.get(index);
+    }
+
+    /**
+     * @param value a value byte
+     * @return true if the side to move wins
+     */
+    static boolean isWin(byte value) {
+        return value > 0;
+    }
+
+    /**
+     * @param value a value byte
+     * @return true if the side to move is mated
+     */
+    static boolean isLoss(byte value) {
+        return value < 0 && value != UNKNOWN && value != INVALID;
+    }
+
+    /**
+     * @param value a win or loss value byte
+     * @return the number of plies to mate
+     */
+    static int plies(byte value) {
+        return value > 0 ? value : value & 127;
+    }
+
+    static byte win(int plies) {
+        return (byte) plies;
+    }
+
+    static byte loss(int plies) {
+        return (byte) (128 + plies);
+    }
+}
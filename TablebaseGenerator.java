@@ -0,0 +1,311 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * TablebaseGenerator class solves every position of one material set by retrograde analysis.
+ *
+ * First each position is looked at once, on all threads: impossible positions are marked, mates and
+ * stalemates are scored, captures and promotions are scored from the smaller tables they lead to and
+ * the quiet moves, which stay in the table, are counted. Then the positions are settled one ply at a time:
+ * a position whose side to move is mated in n plies makes every position one move before it a win
+ * in n + 1, and a position won in n plies takes one quiet move off the count of each position before it.
+ * A position whose moves all lose is lost. Positions never settled are draws.
+ */
+final class TablebaseGenerator {
+    // count of quiet moves of a position that has a move to a draw or a win
+    private static final byte CANNOT_LOSE = -1;
+
+    private final Tablebases tablebases;
+    private final int[] pieces;
+    private final int n;
+    private final int size;
+    private final int threads;
+    private final byte[] values;
+    // quiet moves not yet shown to lose, or CANNOT_LOSE
+    private final byte[] remaining;
+    // 1 + the ply a capture or promotion settles the position at, 0 for none
+    private final byte[] pending;
+
+    /**
+     * Constructor for the TablebaseGenerator class
+     * @param tablebases the tables the captures and promotions lead to, they must already exist
+     * @param pieces the piece codes in index order
+     * @param threads the number of threads for the first pass
+     */
+    TablebaseGenerator(Tablebases tablebases, int[] pieces, int threads) {
+        this.tablebases = tablebases;
+        this.pieces = pieces;
+        this.n = pieces.length;
+        this.size = (int) Tablebase.size(n);
+        this.threads = Math.max(1, threads);
+        values = new byte[size];
+        remaining = new byte[size];
+        pending = new byte[size];
+    }
+
+    /**
+     * Solve all the positions
+     * @return the table
+     */
+    Tablebase generate() {
+        initialize();
+        int lastPending = 0;
+        for (int i = 0; i < size; i++) {
+            lastPending = Math.max(lastPending, pending[i] & 0xFF);
+        }
+        int[] squares = new int[n];
+        for (int ply = 0; ply <= Tablebase.MAX_PLIES; ply++) {
+            byte win = Tablebase.win(ply);
+            byte loss = Tablebase.loss(ply);
+            // captures and promotions that settle a position at this ply
+            for (int i = 0; i < size; i++) {
+                if (values[i] == Tablebase.UNKNOWN && (pending[i] & 0xFF) == ply + 1) {
+                    if (remaining[i] == CANNOT_LOSE) {
+                        values[i] = win;
+                    } else if (remaining[i] == 0) {
+                        values[i] = loss;
+                    }
+                }
+            }
+            boolean settled = false;
+            for (int i = 0; i < size; i++) {
+                byte value = values[i];
+                if (value == loss) {
+                    settled = true;
+                    forEachPredecessor(i, squares, true, ply);
+                } else if (ply > 0 && value == win) {
+                    settled = true;
+                    forEachPredecessor(i, squares, false, ply);
+                }
+            }
+            if (!settled && ply >= lastPending) {
+                break;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (values[i] == Tablebase.UNKNOWN) {
+                values[i] = Tablebase.DRAW;
+            }
+        }
+        return new Tablebase(pieces, ByteBuffer.wrap(values));
+    }
+
+    /**
+     * Score the positions one move before a settled position
+     * @param index the settled position
+     * @param squares scratch array for the piece squares
+     * @param lost true if the side to move of the settled position is mated
+     * @param ply the plies to mate of the settled position
+     */
+    private void forEachPredecessor(int index, int[] squares, boolean lost, int ply) {
+        int us = index >>> (6 * n);
+        // the side that moved into the settled position
+        int mover = us ^ 1;
+        long occupied = 0L;
+        for (int i = 0; i < n; i++) {
+            squares[i] = (index >>> (6 * (n - 1 - i))) & 63;
+            occupied |= 1L << squares[i];
+        }
+        int stmBit = mover << (6 * n);
+        int squareBits = index & ((1 << (6 * n)) - 1);
+        for (int i = 0; i < n; i++) {
+            int piece = pieces[i];
+            if (Position.colorOf(piece) != mover) {
+                continue;
+            }
+            int square = squares[i];
+            long origins;
+            int type = Position.typeOf(piece);
+            switch (type) {
+                case Position.PAWN:
+                    origins = pawnOrigins(mover, square, occupied);
+                    break;
+                case Position.KNIGHT:
+                    origins = Attacks.knightAttacks(square);
+                    break;
+                case Position.BISHOP:
+                    origins = Attacks.bishopAttacks(square, occupied);
+                    break;
+                case Position.ROOK:
+                    origins = Attacks.rookAttacks(square, occupied);
+                    break;
+                case Position.QUEEN:
+                    origins = Attacks.queenAttacks(square, occupied);
+                    break;
+                default:
+                    origins = Attacks.kingAttacks(square);
+                    break;
+            }
+            // quiet moves only, a capture would have come from another table
+            origins &= ~occupied;
+            int shift = 6 * (n - 1 - i);
+            int base = stmBit | (squareBits & ~(63 << shift));
+            while (origins != 0) {
+                int from = Long.numberOfTrailingZeros(origins);
+                origins &= origins - 1;
+                int previous = base | (from << shift);
+                if (values[previous] != Tablebase.UNKNOWN) {
+                    continue;
+                }
+                if (lost) {
+                    if (ply + 1 > Tablebase.MAX_PLIES) {
+                        throw new IllegalStateException("Mate too long for the table format");
+                    }
+                    values[previous] = Tablebase.win(ply + 1);
+                } else if (remaining[previous] > 0 && --remaining[previous] == 0) {
+                    // every quiet move loses, the longest loss counts
+                    int lossPly = Math.max(ply + 1, (pending[previous] & 0xFF) - 1);
+                    if (lossPly > Tablebase.MAX_PLIES) {
+                        throw new IllegalStateException("Mate too long for the table format");
+                    }
+                    if (lossPly == ply + 1) {
+                        values[previous] = Tablebase.loss(lossPly);
+                    } else {
+                        pending[previous] = (byte) (lossPly + 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the squares a pawn of the mover standing on a square can have been pushed from
+     */
+    private static long pawnOrigins(int mover, int square, long occupied) {
+        int back = mover == Position.WHITE ? -8 : 8;
+        int from = square + back;
+        int rank = from >>> 3;
+        if (rank < 1 || rank > 6 || (occupied & (1L << from)) != 0) {
+            return 0L;
+        }
+        long origins = 1L << from;
+        // a double push from the second rank
+        int startRank = mover == Position.WHITE ? 1 : 6;
+        if (((from + back) >>> 3) == startRank && (occupied & (1L << (from + back))) == 0) {
+            origins |= 1L << (from + back);
+        }
+        return origins;
+    }
+
+    /**
+     * Look at every position once, split over the threads
+     */
+    private void initialize() {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> parts = new ArrayList<>();
+            int chunk = (size + threads - 1) / threads;
+            for (int start = 0; start < size; start += chunk) {
+                int from = start;
+                int to = Math.min(size, start + chunk);
+                parts.add(pool.submit(() -> initialize(from, to)));
+            }
+            for (Future<?> part : parts) {
+                part.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tablebase generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tablebase generation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void initialize(int from, int to) {
+        Position position = new Position();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int[] placed = new int[n];
+        boolean set = false;
+        for (int index = from; index < to; index++) {
+            if (set) {
+                for (int i = 0; i < n; i++) {
+                    position.remove(placed[i]);
+                }
+                set = false;
+            }
+            // the squares, skipping positions with two pieces on a square or a pawn on the first or last rank
+            long occupied = 0L;
+            boolean valid = true;
+            for (int i = 0; i < n; i++) {
+                int square = (index >>> (6 * (n - 1 - i))) & 63;
+                placed[i] = square;
+                int rank = square >>> 3;
+                if ((occupied & (1L << square)) != 0
+                        || (Position.typeOf(pieces[i]) == Position.PAWN && (rank == 0 || rank == 7))) {
+                    valid = false;
+                }
+                occupied |= 1L << square;
+            }
+            if (!valid) {
+                values[index] = Tablebase.INVALID;
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                position.put(pieces[i], placed[i]);
+            }
+            set = true;
+            int us = index >>> (6 * n);
+            position.sideToMove = us;
+            // the side that just moved cannot be in check
+            if (position.isInCheck(us ^ 1)) {
+                values[index] = Tablebase.INVALID;
+                continue;
+            }
+            position.refreshCheckers();
+            values[index] = Tablebase.UNKNOWN;
+            solveByMoves(index, position, moves);
+        }
+    }
+
+    /**
+     * Score a position from its moves: mates, stalemates, captures and promotions,
+     * and count the quiet moves
+     */
+    private void solveByMoves(int index, Position position, int[] moves) {
+        int count = MoveGenerator.generateLegal(position, moves);
+        if (count == 0) {
+            values[index] = position.isInCheck() ? Tablebase.loss(0) : Tablebase.DRAW;
+            return;
+        }
+        int quiet = 0;
+        boolean cannotLose = false;
+        int bestWin = Integer.MAX_VALUE;
+        int longestLoss = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                quiet++;
+                continue;
+            }
+            position.makeMove(move);
+            byte child = tablebases.probeValue(position);
+            position.unmakeMove(move);
+            if (Tablebase.isLoss(child)) {
+                cannotLose = true;
+                bestWin = Math.min(bestWin, Tablebase.plies(child) + 1);
+            } else if (Tablebase.isWin(child)) {
+                longestLoss = Math.max(longestLoss, Tablebase.plies(child) + 1);
+            } else {
+                cannotLose = true;
+            }
+        }
+        if (cannotLose) {
+            remaining[index] = CANNOT_LOSE;
+            if (bestWin != Integer.MAX_VALUE) {
+                pending[index] = (byte) (bestWin + 1);
+            }
+        } else {
+            remaining[index] = (byte) quiet;
+            if (longestLoss > 0) {
+                pending[index] = (byte) (longestLoss + 1);
+            }
+        }
+    }
+}
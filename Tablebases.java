@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tablebases class gives access to the endgame tables in one directory, one file per material set.
+ * The files are memory-mapped, so every search thread and every player can probe them at the cost of
+ * one memory read. A table answers for its own material and for the same material with the colors swapped.
+ *
+ * Tables are built on this machine with generate, which first builds every smaller table the
+ * captures and promotions of the set lead to. Sets of up to MAX_PIECES pieces are supported:
+ * a five piece table would need 2 GB per file in this simple format.
+ *
+ * Usage: java Tablebases directory [-threads N] material... such as java Tablebases tb KQvK KRvK KPvK KQvKR
+ */
+public class Tablebases {
+    // returned by probe when the position is not in the tables
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+    // score of a win found in the tables, minus the plies to mate; kept below the search's mate scores
+    public static final int WIN = Search.MATE - 2 * Search.MAX_PLY;
+    // largest material set that can be generated
+    public static final int MAX_PIECES = 4;
+    private static final String SUFFIX = ".tb";
+
+    private final Path directory;
+    // tables by material key
+    private final Map<Long, Tablebase> tables = new ConcurrentHashMap<>();
+    private volatile int maxPieces;
+
+    /**
+     * Open all the tables of a directory
+     * @param directory the directory, it is created if it does not exist
+     * @throws IOException if the directory or a table cannot be read
+     */
+    public Tablebases(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                add(Tablebase.open(file));
+            }
+        }
+    }
+
+    private void add(Tablebase table) {
+        tables.put(Tablebase.materialKey(table.getPieces()), table);
+        maxPieces = Math.max(maxPieces, table.getPieces().length);
+    }
+
+    /**
+     * @return the largest number of pieces of the tables loaded
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * @param name a material name such as KQvK
+     * @return true if a table for the material, or for its colors swapped, is loaded
+     */
+    public boolean contains(String name) {
+        long key = Tablebase.materialKey(Tablebase.parseMaterial(name));
+        return tables.containsKey(key) || tables.containsKey(Tablebase.flip(key));
+    }
+
+    /**
+     * Look up a position
+     * @param position the position
+     * @return WIN minus the plies to mate if the side to move wins, minus that if it loses, 0 for a draw,
+     * or NOT_FOUND if there is no table for the position or it cannot happen
+     */
+    public int probe(Position position) {
+        // the tables know nothing about castling and en passant
+        if (Long.bitCount(position.occupied()) > maxPieces || position.castlingRights() != 0
+                || position.enPassantSquare() != Position.NO_SQUARE) {
+            return NOT_FOUND;
+        }
+        long key = Tablebase.materialKey(position);
+        Tablebase table = tables.get(key);
+        boolean flip = false;
+        if (table == null) {
+            table = tables.get(Tablebase.flip(key));
+            flip = true;
+            if (table == null) {
+                return NOT_FOUND;
+            }
+        }
+        byte value = table.value(table.index(position, flip));
+        if (value == Tablebase.INVALID) {
+            return NOT_FOUND;
+        }
+        if (Tablebase.isWin(value)) {
+            return WIN - Tablebase.plies(value);
+        }
+        if (Tablebase.isLoss(value)) {
+            return -WIN + Tablebase.plies(value);
+        }
+        return 0;
+    }
+
+    /**
+     * Look up the value byte of a position for the generator, ignoring en passant
+     * @param position the position
+     * @return the value byte
+     * @throws IllegalStateException if there is no table for the position
+     */
+    byte probeValue(Position position) {
+        long key = Tablebase.materialKey(position);
+        Tablebase table = tables.get(key);
+        boolean flip = false;
+        if (table == null) {
+            table = tables.get(Tablebase.flip(key));
+            flip = true;
+            if (table == null) {
+                throw new IllegalStateException("Missing table " + Tablebase.materialName(Tablebase.materialPieces(key)));
+            }
+        }
+        return table.value(table.index(position, flip));
+    }
+
+    /**
+     * Find the best move of a position in the tables: the fastest mate when winning,
+     * a drawing move when drawn and the longest defence when losing
+     * @param position the position, it is the same position when the method returns
+     * @return the move, or Move.NONE if the position or one of its moves is not in the tables
+     */
+    public int bestMove(Position position) {
+        if (probe(position) == NOT_FOUND) {
+            return Move.NONE;
+        }
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(position, moves);
+        int bestMove = Move.NONE;
+        int bestScore = -Search.INFINITY;
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            int score = probe(position);
+            position.unmakeMove(moves[i]);
+            if (score == NOT_FOUND) {
+                return Move.NONE;
+            }
+            if (-score > bestScore) {
+                bestScore = -score;
+                bestMove = moves[i];
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Build the table of a material set and every smaller table it needs, skipping those already there,
+     * and write them to the directory
+     * @param name the material name, such as KQvKR
+     * @param threads the number of threads to use
+     * @throws IOException if a table cannot be written
+     */
+    public void generate(String name, int threads) throws IOException {
+        int[] pieces = Tablebase.parseMaterial(name);
+        if (pieces.length > MAX_PIECES) {
+            throw new IllegalArgumentException("At most " + MAX_PIECES + " pieces: " + name);
+        }
+        if (contains(name)) {
+            return;
+        }
+        // the sets a capture or a promotion leads to
+        for (int i = 0; i < pieces.length; i++) {
+            int type = Position.typeOf(pieces[i]);
+            if (type == Position.KING) {
+                continue;
+            }
+            generate(Tablebase.materialName(without(pieces, i)), threads);
+            if (type == Position.PAWN) {
+                for (int promotion = Position.KNIGHT; promotion <= Position.QUEEN; promotion++) {
+                    int[] promoted = pieces.clone();
+                    promoted[i] = Position.piece(Position.colorOf(pieces[i]), promotion);
+                    generate(Tablebase.materialName(promoted), threads);
+                    // a pawn can promote while capturing
+                    for (int j = 0; j < pieces.length; j++) {
+                        if (Position.colorOf(pieces[j]) != Position.colorOf(pieces[i])
+                                && Position.typeOf(pieces[j]) != Position.KING) {
+                            generate(Tablebase.materialName(without(promoted, j)), threads);
+                        }
+                    }
+                }
+            }
+        }
+        Tablebase table = new TablebaseGenerator(this, pieces, threads).generate();
+        table.write(directory.resolve(table.getName() + SUFFIX));
+        add(table);
+    }
+
+    private static int[] without(int[] pieces, int index) {
+        int[] rest = new int[pieces.length - 1];
+        System.arraycopy(pieces, 0, rest, 0, index);
+        System.arraycopy(pieces, index + 1, rest, index, rest.length - index);
+        return rest;
+    }
+
+    /**
+     * Generate tables from the command line and print a summary of each
+     * @param args directory [-threads N] material...
+     * @throws IOException if a table cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Tablebases tablebases = new Tablebases(Paths.get(args.length > 0 ? args[0] : "tablebases"));
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+                continue;
+            }
+            long start = System.nanoTime();
+            tablebases.generate(args[i], threads);
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            long key = Tablebase.materialKey(Tablebase.parseMaterial(args[i]));
+            Tablebase table = tablebases.tables.getOrDefault(key, tablebases.tables.get(Tablebase.flip(key)));
+            long wins = 0;
+            long draws = 0;
+            long losses = 0;
+            int longest = 0;
+            for (int index = 0; index < Tablebase.size(table.getPieces().length); index++) {
+                byte value = table.value(index);
+                if (Tablebase.isWin(value)) {
+                    wins++;
+                    longest = Math.max(longest, Tablebase.plies(value));
+                } else if (Tablebase.isLoss(value)) {
+                    losses++;
+                } else if (value == Tablebase.DRAW) {
+                    draws++;
+                }
+            }
+            System.out.println(table.getName() + ": " + elapsed + " ms, wins " + wins + ", draws " + draws
+                    + ", losses " + losses + ", longest mate " + longest + " plies");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tablebases_Test is a JUnit test class for the Tablebases class.
+ * The tables are generated into a temporary directory once for all the tests.
+ */
+public class Tablebases_Test {
+    private static Path directory;
+    private static Tablebases tablebases;
+
+    @BeforeClass
+    public static void generate() throws IOException {
+        directory = Files.createTempDirectory("tablebases");
+        tablebases = new Tablebases(directory);
+        tablebases.generate("KQvK", 2);
+        tablebases.generate("KRvK", 2);
+    }
+
+    /**
+     * Test mates, stalemates and the colors swapped
+     */
+    @Test
+    public void testProbe() {
+        assertEquals(Tablebases.WIN - 1, tablebases.probe(Position.fromFen("k7/8/1K6/8/8/8/8/6Q1 w - - 0 1")));
+        assertEquals(-Tablebases.WIN, tablebases.probe(Position.fromFen("k7/1Q6/1K6/8/8/8/8/8 b - - 0 1")));
+        assertEquals(-Tablebases.WIN, tablebases.probe(Position.fromFen("K7/1q6/1k6/8/8/8/8/8 w - - 0 1")));
+        assertEquals(0, tablebases.probe(Position.fromFen("k7/2Q5/1K6/8/8/8/8/8 b - - 0 1")));
+        // the black king takes the queen
+        assertEquals(0, tablebases.probe(Position.fromFen("8/8/8/8/8/8/1Q6/k5K1 b - - 0 1")));
+        assertEquals(Tablebases.NOT_FOUND, tablebases.probe(Position.fromFen(Position.START_FEN)));
+        // the side not to move is in check
+        assertEquals(Tablebases.NOT_FOUND, tablebases.probe(Position.fromFen("k7/8/1K6/8/8/8/8/7Q w - - 0 1")));
+        assertEquals(Tablebases.NOT_FOUND, tablebases.probe(Position.fromFen("k7/8/1K6/8/8/8/8/6BN w - - 0 1")));
+    }
+
+    /**
+     * Test that the longest mates are the known ones and that the files read back the same
+     */
+    @Test
+    public void testLongestMatesAndFiles() throws IOException {
+        Tablebases reopened = new Tablebases(directory);
+        assertEquals(3, reopened.getMaxPieces());
+        assertTrue(reopened.contains("KvKR"));
+        Position position = new Position();
+        int longest = 0;
+        for (int king = 0; king < 64; king++) {
+            for (int rook = 0; rook < 64; rook++) {
+                for (int enemy = 0; enemy < 64; enemy++) {
+                    if (king == rook || king == enemy || rook == enemy) {
+                        continue;
+                    }
+                    position.clear();
+                    position.put(Position.piece(Position.WHITE, Position.KING), king);
+                    position.put(Position.piece(Position.WHITE, Position.ROOK), rook);
+                    position.put(Position.piece(Position.BLACK, Position.KING), enemy);
+                    if (position.isInCheck(Position.BLACK)) {
+                        continue;
+                    }
+                    position.refreshCheckers();
+                    int score = reopened.probe(position);
+                    assertEquals(tablebases.probe(position), score);
+                    longest = Math.max(longest, Tablebases.WIN - score);
+                }
+            }
+        }
+        // every KRvK position with white to move is won, the longest in 16 moves
+        assertEquals(31, longest);
+    }
+
+    /**
+     * Test that a player with the tables mates as fast as the tables say
+     */
+    @Test
+    public void testPlayerMatesFromTables() {
+        Position position = Position.fromFen("8/8/3k4/8/8/8/8/R3K3 w - - 0 1");
+        int plies = Tablebases.WIN - tablebases.probe(position);
+        ComputerPlayer player = new ComputerPlayer();
+        player.setTablebases(tablebases);
+        for (int i = 0; i < plies; i++) {
+            SearchResult result = player.search(position);
+            assertEquals(0, result.getNodes());
+            position.makeMove(result.getBestMove());
+        }
+        assertEquals(Position.CHECKMATE, position.status());
+    }
+}
@@ -0,0 +1,495 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * TexelTuner class tunes the evaluation weights from positions labelled with the result of their game.
+ * It looks for the weights under which the static evaluation, put through a logistic curve, best
+ * predicts the results: the error is the mean of (result - sigmoid(evaluation))^2 over all positions.
+ *
+ * The evaluation is a sum of terms times weights (Evaluation.trace), so each position is stored once as
+ * the counts of the terms it uses, white minus black, with its phase and result. The counts of all the
+ * positions live in a few primitive arrays, about 100 bytes a position, and evaluating a position under
+ * new weights is a short dot product. The error and its gradient are summed in parallel over slices of
+ * the positions on a fork/join pool, and the weights are moved by Adam, a gradient method that adapts
+ * the step of each weight.
+ *
+ * Before tuning, the scale K of the logistic curve is fitted to the current weights, then kept fixed.
+ * The tuned weights are written to a weights file that Evaluation reads at startup.
+ *
+ * Positions are read from a text file with one FEN and result per line, the result written as
+ * [1.0], [0.5], [0.0], "1-0", "1/2-1/2" or "0-1" after the FEN, from white's point of view,
+ * or from a PGN file, where every position after the opening that is not in check and was not
+ * reached by a capture is labelled with the result of its game.
+ *
+ * Usage: java -Xmx4g TexelTuner [-threads N] [-epochs N] [-rate R] [-limit N] [-skip N] positions.txt|games.pgn
+ * evaluation.txt
+ */
+public class TexelTuner {
+    // positions parsed in parallel at a time when loading
+    private static final int LOAD_BLOCK = 65536;
+    // Adam decay rates of the mean gradient and of the mean squared gradient
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+
+    private final ForkJoinPool pool;
+    // number of positions
+    private int count;
+    // result of each position from white's point of view in half points: 0, 1 or 2
+    private byte[] results = new byte[1024];
+    // phase of each position, capped at Evaluation.MAX_PHASE
+    private byte[] phases = new byte[1024];
+    // the terms of position i are terms[starts[i]] to terms[starts[i + 1] - 1], with their counts
+    private int[] starts = new int[1025];
+    private short[] terms = new short[16384];
+    private byte[] counts = new byte[16384];
+    // weights being tuned, midgame weight of term t at 2 * t and endgame weight at 2 * t + 1
+    private final double[] weights = new double[2 * Evaluation.TERM_COUNT];
+    private final boolean[] tunable = new boolean[2 * Evaluation.TERM_COUNT];
+    // scale of the logistic curve
+    private double k = 1.0;
+
+    /**
+     * Constructor for the TexelTuner class, the weights start from the current evaluation weights
+     * @param threads the number of threads that sum the error
+     */
+    public TexelTuner(int threads) {
+        pool = new ForkJoinPool(Math.max(1, threads));
+        for (int term = 0; term < Evaluation.TERM_COUNT; term++) {
+            weights[2 * term] = Evaluation.getWeight(term, false);
+            weights[2 * term + 1] = Evaluation.getWeight(term, true);
+            tunable[2 * term] = Evaluation.isTunable(term, false);
+            tunable[2 * term + 1] = Evaluation.isTunable(term, true);
+        }
+    }
+
+    /**
+     * @return the number of positions loaded
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getK() {
+        return k;
+    }
+
+    /**
+     * Add a position
+     * @param position the position
+     * @param result the result of its game from white's point of view in half points: 0, 1 or 2
+     */
+    public void add(Position position, int result) {
+        add(new Sample(position, result));
+    }
+
+    private void add(Sample sample) {
+        if (count + 1 == results.length) {
+            results = Arrays.copyOf(results, results.length * 2);
+            phases = Arrays.copyOf(phases, phases.length * 2);
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+        int start = starts[count];
+        int end = start + sample.terms.length;
+        if (end > terms.length) {
+            int size = Math.max(end, terms.length * 2);
+            terms = Arrays.copyOf(terms, size);
+            counts = Arrays.copyOf(counts, size);
+        }
+        System.arraycopy(sample.terms, 0, terms, start, sample.terms.length);
+        System.arraycopy(sample.counts, 0, counts, start, sample.counts.length);
+        results[count] = (byte) sample.result;
+        phases[count] = (byte) sample.phase;
+        starts[++count] = end;
+    }
+
+    /**
+     * Load labelled positions from a text file with one FEN and result per line
+     * @param file the file name
+     * @param limit the most positions to load
+     * @throws IOException if the file cannot be read
+     * @return the number of lines that could not be read as a position and result
+     */
+    public long loadPositions(String file, long limit) throws IOException {
+        long bad = 0;
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(file))) {
+            List<String> block = new ArrayList<>();
+            for (String line = in.readLine(); line != null && count + block.size() < limit; line = in.readLine()) {
+                block.add(line);
+                if (block.size() == LOAD_BLOCK) {
+                    bad += addBlock(block);
+                    block.clear();
+                }
+            }
+            bad += addBlock(block);
+        }
+        return bad;
+    }
+
+    /**
+     * Parse a block of lines on the pool and add them in order
+     */
+    private long addBlock(List<String> lines) {
+        Sample[] samples = submit(() -> lines.parallelStream().map(TexelTuner::parseLine).toArray(Sample[]::new));
+        long bad = 0;
+        for (Sample sample : samples) {
+            if (sample == null) {
+                bad++;
+            } else {
+                add(sample);
+            }
+        }
+        return bad;
+    }
+
+    /**
+     * Load the positions of the games of a PGN file, labelled with the result of their game
+     * @param file the file name
+     * @param skipPlies the plies left out at the start of every game
+     * @param limit the most positions to load
+     * @throws IOException if the file cannot be read
+     * @return the number of games without a result or with a move that could not be read
+     */
+    public long loadGames(String file, int skipPlies, long limit) throws IOException {
+        long bad = 0;
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        try (PgnReader reader = new PgnReader(Paths.get(file))) {
+            for (PgnGame game = reader.next(); game != null && count < limit; game = reader.next()) {
+                int result = parseResult(game.getTag("Result"));
+                if (result < 0) {
+                    bad++;
+                    continue;
+                }
+                try {
+                    Position position = game.startPosition();
+                    int ply = 0;
+                    for (String san : game.sanMoves()) {
+                        int move = Move.parseSan(position, san, buffer);
+                        if (move == Move.NONE) {
+                            bad++;
+                            break;
+                        }
+                        position.makeMove(move);
+                        ply++;
+                        // positions in the middle of an exchange or in check are not scored well by a static evaluation
+                        if (ply > skipPlies && Move.isQuiet(move) && !position.isInCheck() && count < limit) {
+                            add(position, result);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    bad++;
+                }
+            }
+        }
+        return bad;
+    }
+
+    /**
+     * Read a line of a positions file
+     * @param line a FEN followed by a result
+     * @return the position's terms, or null if the line cannot be read
+     */
+    static Sample parseLine(String line) {
+        String[] fields = line.trim().split("[\\s;,]+");
+        if (fields.length < 5) {
+            return null;
+        }
+        int result = -1;
+        int end = fields.length;
+        while (end > 4 && result < 0) {
+            result = parseResult(fields[--end]);
+        }
+        if (result < 0) {
+            return null;
+        }
+        // the move clocks are optional, anything else between the FEN and the result is left out
+        int fenFields = 4;
+        while (fenFields < Math.min(end, 6) && fields[fenFields].matches("\\d+")) {
+            fenFields++;
+        }
+        try {
+            return new Sample(Position.fromFen(String.join(" ", Arrays.copyOf(fields, fenFields))), result);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param text a game result in one of the forms of a positions file or PGN
+     * @return the result in half points for white, or -1 if the text is not a result
+     */
+    static int parseResult(String text) {
+        if (text == null) {
+            return -1;
+        }
+        switch (text.replaceAll("[\\[\\]\"]", "")) {
+            case "1-0":
+            case "1.0":
+                return 2;
+            case "1/2-1/2":
+            case "0.5":
+                return 1;
+            case "0-1":
+            case "0.0":
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Compute the error of the current weights
+     * @return the mean squared difference between the results and the predicted scores
+     */
+    public double error() {
+        return submit(() -> IntStream.range(0, slices()).parallel()
+                .mapToDouble(slice -> sliceError(slice, slices(), k)).sum()) / Math.max(1, count);
+    }
+
+    /**
+     * Fit the scale of the logistic curve to the current weights by a golden section search
+     * @return the fitted scale
+     */
+    public double fitK() {
+        double low = 0.1;
+        double high = 5.0;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 40; i++) {
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            if (errorAt(a) < errorAt(b)) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        k = (low + high) / 2;
+        return k;
+    }
+
+    private double errorAt(double scale) {
+        return submit(() -> IntStream.range(0, slices()).parallel()
+                .mapToDouble(slice -> sliceError(slice, slices(), scale)).sum()) / Math.max(1, count);
+    }
+
+    /**
+     * Move the weights down the gradient of the error
+     * @param epochs the number of passes over all the positions
+     * @param rate the learning rate, about the most a weight moves in one epoch
+     * @param listener told the error before every epoch's step, or null
+     */
+    public void tune(int epochs, double rate, EpochListener listener) {
+        double[] mean = new double[weights.length];
+        double[] variance = new double[weights.length];
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            double[] gradient = submit(() -> IntStream.range(0, slices()).parallel()
+                    .mapToObj(slice -> sliceGradient(slice, slices()))
+                    .reduce(TexelTuner::sum).orElse(new double[weights.length + 1]));
+            for (int i = 0; i < weights.length; i++) {
+                if (!tunable[i]) {
+                    continue;
+                }
+                double g = gradient[i] / Math.max(1, count);
+                mean[i] = BETA1 * mean[i] + (1 - BETA1) * g;
+                variance[i] = BETA2 * variance[i] + (1 - BETA2) * g * g;
+                double correctedMean = mean[i] / (1 - Math.pow(BETA1, epoch));
+                double correctedVariance = variance[i] / (1 - Math.pow(BETA2, epoch));
+                weights[i] -= rate * correctedMean / (Math.sqrt(correctedVariance) + 1e-12);
+            }
+            if (listener != null) {
+                listener.epochDone(epoch, gradient[weights.length] / Math.max(1, count));
+            }
+        }
+    }
+
+    /**
+     * Round the tuned weights into Evaluation and rebuild its tables; the tuner goes on from the rounded weights
+     */
+    public void apply() {
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.round(weights[i]);
+            Evaluation.setWeight(i / 2, (i & 1) == 1, (int) weights[i]);
+        }
+        Evaluation.rebuild();
+    }
+
+    /**
+     * EpochListener interface is told the error after each pass of the tuning
+     */
+    public interface EpochListener {
+        /**
+         * @param epoch the number of the pass, from 1
+         * @param error the error of the weights the pass started from
+         */
+        void epochDone(int epoch, double error);
+    }
+
+    private int slices() {
+        return Math.max(1, Math.min(count, pool.getParallelism() * 8));
+    }
+
+    /**
+     * The evaluation of position i under the current weights, from white's point of view
+     */
+    private double evaluate(int i) {
+        double mg = 0;
+        double eg = 0;
+        for (int j = starts[i]; j < starts[i + 1]; j++) {
+            int term = terms[j];
+            mg += counts[j] * weights[2 * term];
+            eg += counts[j] * weights[2 * term + 1];
+        }
+        return (mg * phases[i] + eg * (Evaluation.MAX_PHASE - phases[i])) / Evaluation.MAX_PHASE;
+    }
+
+    private double sigmoid(double score, double scale) {
+        return 1 / (1 + Math.pow(10, -scale * score / 400));
+    }
+
+    private double sliceError(int slice, int slices, double scale) {
+        double error = 0;
+        for (int i = (int) ((long) count * slice / slices); i < (long) count * (slice + 1) / slices; i++) {
+            double difference = results[i] / 2.0 - sigmoid(evaluate(i), scale);
+            error += difference * difference;
+        }
+        return error;
+    }
+
+    /**
+     * Sum the gradient of the error over a slice of the positions, with the error itself in the last entry
+     */
+    private double[] sliceGradient(int slice, int slices) {
+        double[] gradient = new double[weights.length + 1];
+        for (int i = (int) ((long) count * slice / slices); i < (long) count * (slice + 1) / slices; i++) {
+            double predicted = sigmoid(evaluate(i), k);
+            gradient[weights.length] += (results[i] / 2.0 - predicted) * (results[i] / 2.0 - predicted);
+            // derivative of the squared error by the evaluation
+            double factor = -2 * (results[i] / 2.0 - predicted) * predicted * (1 - predicted) * Math.log(10) * k / 400;
+            double mgFactor = factor * phases[i] / Evaluation.MAX_PHASE;
+            double egFactor = factor * (Evaluation.MAX_PHASE - phases[i]) / Evaluation.MAX_PHASE;
+            for (int j = starts[i]; j < starts[i + 1]; j++) {
+                int term = terms[j];
+                gradient[2 * term] += counts[j] * mgFactor;
+                gradient[2 * term + 1] += counts[j] * egFactor;
+            }
+        }
+        return gradient;
+    }
+
+    private static double[] sum(double[] a, double[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] += b[i];
+        }
+        return a;
+    }
+
+    /**
+     * Run a task on the tuner's pool, so parallel streams inside it use the pool's threads
+     */
+    private <T> T submit(Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tuning failed", e.getCause());
+        }
+    }
+
+    /**
+     * Sample class is one position reduced to the terms it uses, before it is added to the arrays
+     */
+    static final class Sample {
+        final short[] terms;
+        final byte[] counts;
+        final int phase;
+        final int result;
+
+        Sample(Position position, int result) {
+            int[] trace = new int[Evaluation.TERM_COUNT];
+            phase = Math.min(Evaluation.trace(position, trace), Evaluation.MAX_PHASE);
+            int used = 0;
+            for (int value : trace) {
+                if (value != 0) {
+                    used++;
+                }
+            }
+            terms = new short[used];
+            counts = new byte[used];
+            int next = 0;
+            for (int term = 0; term < trace.length; term++) {
+                if (trace[term] != 0) {
+                    terms[next] = (short) term;
+                    counts[next++] = (byte) trace[term];
+                }
+            }
+            this.result = result;
+        }
+    }
+
+    /**
+     * Tune the weights from the command line and write them to a weights file
+     * @param args [-threads N] [-epochs N] [-rate R] [-limit N] [-skip N] positions.txt|games.pgn evaluation.txt
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int epochs = 200;
+        double rate = 1.0;
+        long limit = Long.MAX_VALUE;
+        int skip = 8;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-epochs":
+                    epochs = Integer.parseInt(args[++i]);
+                    break;
+                case "-rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                case "-limit":
+                    limit = Long.parseLong(args[++i]);
+                    break;
+                case "-skip":
+                    skip = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+                    break;
+            }
+        }
+        if (files.size() != 2) {
+            throw new IllegalArgumentException("Usage: java TexelTuner [options] positions.txt|games.pgn evaluation.txt");
+        }
+        TexelTuner tuner = new TexelTuner(threads);
+        long start = System.nanoTime();
+        long bad = files.get(0).endsWith(".pgn") ? tuner.loadGames(files.get(0), skip, limit)
+                : tuner.loadPositions(files.get(0), limit);
+        System.out.printf("%d positions loaded in %.1f s, %d unreadable%n", tuner.getCount(),
+                (System.nanoTime() - start) / 1e9, bad);
+        System.out.printf("K %.3f, error %.6f%n", tuner.fitK(), tuner.error());
+        long tuneStart = System.nanoTime();
+        tuner.tune(epochs, rate, (epoch, error) -> {
+            if (epoch % 10 == 0) {
+                System.out.printf("epoch %d error %.6f %.1f s%n", epoch, error, (System.nanoTime() - tuneStart) / 1e9);
+            }
+        });
+        tuner.apply();
+        double error = tuner.error();
+        Evaluation.saveWeights(Paths.get(files.get(1)), String.format("tuned from %d positions, K %.3f, error %.6f",
+                tuner.getCount(), tuner.getK(), error));
+        System.out.printf("error %.6f, weights written to %s%n", error, files.get(1));
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TexelTuner_Test {
+
+    /**
+     * Test that the usual forms of a labelled positions file are read
+     */
+    @Test
+    public void testParseLine() {
+        assertEquals(2, TexelTuner.parseLine(Position.START_FEN + " [1.0]").result);
+        assertEquals(1, TexelTuner.parseLine("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - [0.5]").result);
+        assertEquals(0, TexelTuner.parseLine("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - c9 \"0-1\";").result);
+        assertEquals(1, TexelTuner.parseLine(Position.START_FEN + ";1/2-1/2").result);
+        TexelTuner.Sample sample = TexelTuner.parseLine("4k3/8/8/8/8/8/8/4K2R w K - 0 1 1-0");
+        assertEquals(2, sample.result);
+        assertEquals(2, sample.phase);
+        assertNull(TexelTuner.parseLine(Position.START_FEN));
+        assertNull(TexelTuner.parseLine("not a position [1.0]"));
+        assertEquals(-1, TexelTuner.parseResult("*"));
+    }
+
+    /**
+     * Test that tuning lowers the error and that the tuned weights are written and read back
+     */
+    @Test
+    public void testTuning() throws IOException {
+        Path defaults = Files.createTempFile("weights", ".txt");
+        Path tuned = Files.createTempFile("tuned", ".txt");
+        Evaluation.saveWeights(defaults, null);
+        try {
+            TexelTuner tuner = new TexelTuner(2);
+            // an extra knight wins, an extra pawn only draws
+            for (int i = 0; i < 50; i++) {
+                tuner.add(Position.fromFen("4k3/8/8/8/8/8/8/1N2K3 w - - 0 1"), 2);
+                tuner.add(Position.fromFen("4k3/8/8/8/8/8/3P4/4K3 w - - 0 1"), 1);
+                tuner.add(Position.fromFen("1n2k3/8/8/8/8/8/8/4K3 w - - 0 1"), 0);
+            }
+            assertEquals(150, tuner.getCount());
+            tuner.fitK();
+            double before = tuner.error();
+            tuner.tune(50, 2.0, null);
+            tuner.apply();
+            assertTrue(tuner.error() < before);
+
+            int knight = Evaluation.EG_VALUES[Position.KNIGHT];
+            Evaluation.saveWeights(tuned, "test");
+            Evaluation.loadWeights(defaults);
+            assertNotEquals(knight, Evaluation.EG_VALUES[Position.KNIGHT]);
+            Evaluation.loadWeights(tuned);
+            assertEquals(knight, Evaluation.EG_VALUES[Position.KNIGHT]);
+
+            // a bad file changes nothing
+            Files.write(tuned, "EG_VALUES = 1, 2, 3\n".getBytes());
+            try {
+                Evaluation.loadWeights(tuned);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertEquals(knight, Evaluation.EG_VALUES[Position.KNIGHT]);
+            }
+        } finally {
+            Evaluation.loadWeights(defaults);
+            Files.delete(defaults);
+            Files.delete(tuned);
+        }
+    }
+}
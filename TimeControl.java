@@ -0,0 +1,70 @@
+/**
+ * TimeControl class decides how long the search may think about one move.
+ * It gives a soft limit, after which no new iteration of the search is started,
+ * and a hard limit, at which a running iteration is aborted.
+ */
+public final class TimeControl {
+    // no time limit at all
+    public static final TimeControl INFINITE = new TimeControl(Long.MAX_VALUE, Long.MAX_VALUE);
+    // time kept back for the move to reach the opponent
+    public static final long MOVE_OVERHEAD_MS = 20;
+    // moves the remaining time is shared over when the time control does not say
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    // part of the time left that no single move may use, out of 8
+    private static final int RESERVE_EIGHTHS = 2;
+
+    private final long softLimitMs;
+    private final long hardLimitMs;
+
+    private TimeControl(long softLimitMs, long hardLimitMs) {
+        this.softLimitMs = softLimitMs;
+        this.hardLimitMs = hardLimitMs;
+    }
+
+    /**
+     * Use a fixed time for the move
+     * @param moveTimeMs the time for the move in milliseconds
+     * @return the time control
+     */
+    public static TimeControl moveTime(long moveTimeMs) {
+        long limit = Math.max(1, moveTimeMs - MOVE_OVERHEAD_MS);
+        return new TimeControl(limit, limit);
+    }
+
+    /**
+     * Share the remaining clock time over the moves still to play
+     * @param baseTimeMs the time left on the clock of the side to move
+     * @param incrementMs the time added after each move
+     * @param movesToGo the moves until the next time control, or 0 if the time is for the whole game
+     * @return the time control
+     */
+    public static TimeControl clock(long baseTimeMs, long incrementMs, int movesToGo) {
+        long available = Math.max(1, baseTimeMs - MOVE_OVERHEAD_MS);
+        int moves = movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO;
+        long soft = available / moves + incrementMs * 3 / 4;
+        // a single move may use a few times its share but never most of the clock
+        long hard = Math.min(soft * 4, available / 3 + incrementMs);
+        // the increment only arrives after the move, so the limits must fit in the time that is left now
+        hard = Math.min(hard, available - available * RESERVE_EIGHTHS / 8);
+        soft = Math.min(soft, hard);
+        return new TimeControl(Math.max(1, soft), Math.max(1, hard));
+    }
+
+    /**
+     * @return the time after which no new iteration is started, in milliseconds
+     */
+    public long getSoftLimitMs() {
+        return softLimitMs;
+    }
+
+    /**
+     * @return the time at which the search is aborted, in milliseconds
+     */
+    public long getHardLimitMs() {
+        return hardLimitMs;
+    }
+
+    public boolean isInfinite() {
+        return hardLimitMs == Long.MAX_VALUE;
+    }
+}
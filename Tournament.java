@@ -0,0 +1,506 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tournament class plays a match between two engine settings without any user interface,
+ * so it runs on a headless server or a CI box. The games are spread over a pool of worker threads,
+ * every game uses its own positions and transposition tables.
+ *
+ * Both sides are settings of this engine, running in the same JVM from the same build: a match compares
+ * depths, node limits, times or table sizes, but it cannot test a change to the engine code against
+ * the build before it. That needs the old build to play as a separate process, which is not supported.
+ *
+ * Games are played in pairs: both games of a pair start from the same randomly chosen opening,
+ * once with each engine as white. A game ends on checkmate, stalemate, the fifty-move rule,
+ * threefold repetition, insufficient material or a ply limit. Each finished game is written as one line
+ * to the results file, with the running statistics every ten games, followed by the Elo difference and,
+ * when enabled, the SPRT verdict, which also stops the match early.
+ *
+ * Usage: java Tournament [-games N] [-workers N] [-openings plies] [-maxplies N] [-seed N]
+ * [-first spec] [-second spec] [-sprt elo0 elo1] [-alpha a] [-beta b] [-out file]
+ * where an engine spec looks like name=new,depth=6,nodes=200000,movetime=100,hash=4.
+ * The SPRT verdict is part of the output; the exit status is 0 whatever the verdict, and not 0 only
+ * when the match could not be played.
+ */
+public class Tournament {
+    // game results, from white's point of view
+    public static final String WHITE_WINS = "1-0";
+    public static final String BLACK_WINS = "0-1";
+    public static final String DRAW = "1/2-1/2";
+
+    private final Engine first;
+    private final Engine second;
+    private int games = 100;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int openingPlies = 8;
+    private int maxPlies = 300;
+    private long seed = 1;
+    private boolean sprt;
+    private double elo0;
+    private double elo1;
+    private double alpha = 0.05;
+    private double beta = 0.05;
+
+    /**
+     * Constructor for the Tournament class
+     * @param first the engine the statistics are reported for
+     * @param second its opponent
+     */
+    public Tournament(Engine first, Engine second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Set the number of games, rounded up to whole pairs
+     * @param games the number of games
+     */
+    public void setGames(int games) {
+        this.games = Math.max(2, games + (games & 1));
+    }
+
+    /**
+     * Set the number of games played at the same time
+     * @param workers the number of worker threads, at least 1
+     */
+    public void setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Set the number of random moves each opening is made of
+     * @param openingPlies the opening length in plies
+     */
+    public void setOpeningPlies(int openingPlies) {
+        this.openingPlies = Math.max(0, openingPlies);
+    }
+
+    /**
+     * Set the number of plies after which a game is scored as a draw
+     * @param maxPlies the ply limit
+     */
+    public void setMaxPlies(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    /**
+     * Set the seed the openings are chosen with, the same seed gives the same openings
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Stop the match as soon as a sequential probability ratio test is decided
+     * @param elo0 the Elo difference of the null hypothesis
+     * @param elo1 the Elo difference of the alternative hypothesis
+     * @param alpha the false positive rate
+     * @param beta the false negative rate
+     */
+    public void setSprt(double elo0, double elo1, double alpha, double beta) {
+        this.sprt = true;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Play the match
+     * @param out receives one line per finished game, the statistics every ten games and the final statistics
+     * @return the statistics of the first engine
+     * @throws IOException if the results cannot be written
+     */
+    public MatchStatistics run(Writer out) throws IOException {
+        PrintWriter writer = new PrintWriter(out);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        CompletionService<GameRecord> completion = new ExecutorCompletionService<>(pool);
+        // set once the SPRT is decided, games that have not started yet are skipped
+        AtomicBoolean decided = new AtomicBoolean();
+        for (int i = 0; i < games; i++) {
+            int index = i;
+            completion.submit(() -> decided.get() ? null : playGame(index));
+        }
+        int wins = 0;
+        int draws = 0;
+        int losses = 0;
+        MatchStatistics statistics = new MatchStatistics(0, 0, 0);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < games; i++) {
+                GameRecord game = completion.take().get();
+                if (game == null) {
+                    continue;
+                }
+                writer.println(game);
+                writer.flush();
+                double points = game.firstEngineScore();
+                if (points == 1) {
+                    wins++;
+                } else if (points == 0) {
+                    losses++;
+                } else {
+                    draws++;
+                }
+                statistics = new MatchStatistics(wins, draws, losses);
+                if (sprt && statistics.sprt(elo0, elo1, alpha, beta) != MatchStatistics.CONTINUE) {
+                    decided.set(true);
+                }
+                if (statistics.getGames() % 10 == 0 || decided.get()) {
+                    writer.println("# " + statistics);
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tournament interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        writer.println("# " + first.getName() + " vs " + second.getName());
+        writer.println("# " + statistics);
+        if (sprt) {
+            writer.printf("# SPRT elo0=%.1f elo1=%.1f LLR: %.2f (%.2f, %.2f) %s%n", elo0, elo1,
+                    statistics.llr(elo0, elo1), MatchStatistics.lowerBound(alpha, beta),
+                    MatchStatistics.upperBound(alpha, beta), verdict(statistics));
+        }
+        writer.printf("# %.2f games/s%n", statistics.getGames() * 1e9 / elapsed);
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Cannot write the results");
+        }
+        return statistics;
+    }
+
+    /**
+     * @param statistics the statistics of the match
+     * @return the SPRT verdict in words
+     */
+    private String verdict(MatchStatistics statistics) {
+        switch (statistics.sprt(elo0, elo1, alpha, beta)) {
+            case MatchStatistics.ACCEPT_H1:
+                return "H1 accepted";
+            case MatchStatistics.ACCEPT_H0:
+                return "H0 accepted";
+            default:
+                return "undecided";
+        }
+    }
+
+    /**
+     * Play one game, the first engine is white in even games
+     * @param index the game number
+     * @return the record of the game
+     */
+    GameRecord playGame(int index) {
+        boolean firstIsWhite = (index & 1) == 0;
+        ComputerPlayer white = (firstIsWhite ? first : second).create();
+        ComputerPlayer black = (firstIsWhite ? second : first).create();
+        StringBuilder moves = new StringBuilder();
+        Position position = openingPosition(index / 2, moves);
+        int plies = 0;
+        String result;
+        String reason;
+        while (true) {
+            int status = position.status();
+            if (Position.isGameOver(status)) {
+                if (status == Position.CHECKMATE) {
+                    result = position.sideToMove() == Position.WHITE ? BLACK_WINS : WHITE_WINS;
+                } else {
+                    result = DRAW;
+                }
+                reason = reason(status);
+                break;
+            }
+            if (plies >= maxPlies) {
+                result = DRAW;
+                reason = "ply limit";
+                break;
+            }
+            ComputerPlayer player = position.sideToMove() == Position.WHITE ? white : black;
+            int move = player.search(position).getBestMove();
+            position.makeMove(move);
+            moves.append(' ').append(Move.toString(move));
+            plies++;
+        }
+        return new GameRecord(index, firstIsWhite ? first.getName() : second.getName(),
+                firstIsWhite ? second.getName() : first.getName(), firstIsWhite, result, reason, plies,
+                moves.toString().trim());
+    }
+
+    /**
+     * Play random legal moves from the starting position, the same pair always gets the same opening
+     * @param pair the number of the game pair
+     * @param moves receives the opening moves
+     * @return the position after the opening, which is never already decided
+     */
+    private Position openingPosition(int pair, StringBuilder moves) {
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + pair);
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        while (true) {
+            Position position = Position.fromFen(Position.START_FEN);
+            moves.setLength(0);
+            for (int ply = 0; ply < openingPlies; ply++) {
+                int count = MoveGenerator.generateLegal(position, legal);
+                if (count == 0) {
+                    break;
+                }
+                int move = legal[random.nextInt(count)];
+                position.makeMove(move);
+                moves.append(' ').append(Move.toString(move));
+            }
+            if (position.hasLegalMove()) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * @param status a game over status of Position
+     * @return the reason the game ended in words
+     */
+    private static String reason(int status) {
+        switch (status) {
+            case Position.CHECKMATE:
+                return "checkmate";
+            case Position.STALEMATE:
+                return "stalemate";
+            case Position.FIFTY_MOVES:
+                return "fifty moves";
+            case Position.REPETITION:
+                return "repetition";
+            default:
+                return "insufficient material";
+        }
+    }
+
+    /**
+     * Run a match from the command line
+     * @param args see the class comment
+     * @throws IOException if the results file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Engine first = Engine.parse("name=first,depth=4");
+        Engine second = Engine.parse("name=second,depth=4");
+        String out = null;
+        double[] sprtArgs = null;
+        double alpha = 0.05;
+        double beta = 0.05;
+        int games = 100;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int openings = 8;
+        int maxPlies = 300;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "-workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                case "-openings":
+                    openings = Integer.parseInt(args[++i]);
+                    break;
+                case "-maxplies":
+                    maxPlies = Integer.parseInt(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-first":
+                    first = Engine.parse(args[++i]);
+                    break;
+                case "-second":
+                    second = Engine.parse(args[++i]);
+                    break;
+                case "-sprt":
+                    sprtArgs = new double[] {Double.parseDouble(args[++i]), Double.parseDouble(args[++i])};
+                    break;
+                case "-alpha":
+                    alpha = Double.parseDouble(args[++i]);
+                    break;
+                case "-beta":
+                    beta = Double.parseDouble(args[++i]);
+                    break;
+                case "-out":
+                    out = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Tournament tournament = new Tournament(first, second);
+        tournament.setGames(games);
+        tournament.setWorkers(workers);
+        tournament.setOpeningPlies(openings);
+        tournament.setMaxPlies(maxPlies);
+        tournament.setSeed(seed);
+        if (sprtArgs != null) {
+            tournament.setSprt(sprtArgs[0], sprtArgs[1], alpha, beta);
+        }
+        MatchStatistics statistics;
+        if (out == null) {
+            statistics = tournament.run(new PrintWriter(System.out));
+        } else {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(out))) {
+                statistics = tournament.run(writer);
+            }
+            System.out.println(statistics);
+            if (sprtArgs != null) {
+                System.out.println("SPRT: " + tournament.verdict(statistics));
+            }
+        }
+    }
+
+    /**
+     * Engine class holds the settings one side of the match plays with
+     */
+    public static final class Engine {
+        private final String name;
+        private final int depth;
+        private final long nodeLimit;
+        private final long moveTimeMs;
+        private final int hashMb;
+
+        /**
+         * Constructor for the Engine class
+         * @param name the name used in the results
+         * @param depth the search depth
+         * @param nodeLimit the node limit per move
+         * @param moveTimeMs the time per move in milliseconds, 0 for no time limit
+         * @param hashMb the transposition table size in megabytes
+         */
+        public Engine(String name, int depth, long nodeLimit, long moveTimeMs, int hashMb) {
+            this.name = name;
+            this.depth = depth;
+            this.nodeLimit = nodeLimit;
+            this.moveTimeMs = moveTimeMs;
+            this.hashMb = hashMb;
+        }
+
+        /**
+         * Read the settings from a comma separated list of key=value pairs,
+         * the keys are name, depth, nodes, movetime and hash
+         * @param spec the settings
+         * @return the engine
+         */
+        public static Engine parse(String spec) {
+            String name = "engine";
+            int depth = ComputerPlayer.DEFAULT_DEPTH;
+            long nodes = ComputerPlayer.DEFAULT_NODE_LIMIT;
+            long moveTime = 0;
+            int hash = 4;
+            for (String pair : spec.split(",")) {
+                String[] keyValue = pair.split("=", 2);
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("Bad engine setting: " + pair);
+                }
+                switch (keyValue[0].trim()) {
+                    case "name":
+                        name = keyValue[1].trim();
+                        break;
+                    case "depth":
+                        depth = Integer.parseInt(keyValue[1].trim());
+                        break;
+                    case "nodes":
+                        nodes = Long.parseLong(keyValue[1].trim());
+                        break;
+                    case "movetime":
+                        moveTime = Long.parseLong(keyValue[1].trim());
+                        break;
+                    case "hash":
+                        hash = Integer.parseInt(keyValue[1].trim());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown engine setting: " + pair);
+                }
+            }
+            return new Engine(name, depth, nodes, moveTime, hash);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return a new computer player with these settings and an empty transposition table
+         */
+        ComputerPlayer create() {
+            ComputerPlayer player = new ComputerPlayer();
+            player.setDepth(depth);
+            player.setNodeLimit(nodeLimit);
+            player.setHashSize(hashMb);
+            if (moveTimeMs > 0) {
+                player.setTimeControl(TimeControl.moveTime(moveTimeMs));
+            }
+            return player;
+        }
+    }
+
+    /**
+     * GameRecord class holds the outcome of one game of the match
+     */
+    public static final class GameRecord {
+        private final int index;
+        private final String white;
+        private final String black;
+        private final boolean firstIsWhite;
+        private final String result;
+        private final String reason;
+        private final int plies;
+        private final String moves;
+
+        GameRecord(int index, String white, String black, boolean firstIsWhite, String result,
+                   String reason, int plies, String moves) {
+            this.index = index;
+            this.white = white;
+            this.black = black;
+            this.firstIsWhite = firstIsWhite;
+            this.result = result;
+            this.reason = reason;
+            this.plies = plies;
+            this.moves = moves;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * @return 1 for a win of the first engine, 0.5 for a draw and 0 for a loss
+         */
+        public double firstEngineScore() {
+            if (result.equals(DRAW)) {
+                return 0.5;
+            }
+            return result.equals(WHITE_WINS) == firstIsWhite ? 1 : 0;
+        }
+
+        /**
+         * @return the game as one tab separated line: number, white, black, result, reason, plies and moves
+         */
+        @Override
+        public String toString() {
+            return index + "\t" + white + "\t" + black + "\t" + result + "\t" + reason + "\t" + plies + "\t" + moves;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import java.io.StringWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tournament_Test is a JUnit test class for the Tournament and MatchStatistics classes.
+ */
+public class Tournament_Test {
+
+    /**
+     * Test the Elo difference, its error and the likelihood of superiority
+     */
+    @Test
+    public void testElo() {
+        MatchStatistics even = new MatchStatistics(30, 40, 30);
+        assertEquals(0.5, even.score(), 1e-9);
+        assertEquals(0.0, even.elo(), 1e-9);
+        assertEquals(0.5, even.los(), 1e-6);
+        // a 64% score is about 100 Elo
+        MatchStatistics better = new MatchStatistics(54, 20, 26);
+        assertEquals(0.64, better.score(), 1e-9);
+        assertEquals(100, better.elo(), 1);
+        assertTrue(better.eloError() > 0 && better.eloError() < better.elo());
+        assertTrue(better.los() > 0.99);
+        assertEquals(0.64, MatchStatistics.scoreFromElo(better.elo()), 1e-9);
+    }
+
+    /**
+     * Test that the SPRT accepts the hypothesis the results support
+     */
+    @Test
+    public void testSprt() {
+        assertEquals(MatchStatistics.CONTINUE, new MatchStatistics(5, 10, 5).sprt(0, 10, 0.05, 0.05));
+        assertEquals(MatchStatistics.ACCEPT_H1, new MatchStatistics(600, 800, 400).sprt(0, 10, 0.05, 0.05));
+        assertEquals(MatchStatistics.ACCEPT_H0, new MatchStatistics(400, 800, 600).sprt(0, 10, 0.05, 0.05));
+    }
+
+    /**
+     * Test a short headless match: every game is written and the results add up
+     */
+    @Test
+    public void testMatch() throws Exception {
+        Tournament tournament = new Tournament(Tournament.Engine.parse("name=deep,depth=2,hash=1"),
+                Tournament.Engine.parse("name=shallow,depth=1,hash=1"));
+        tournament.setGames(4);
+        tournament.setWorkers(2);
+        tournament.setMaxPlies(40);
+        StringWriter out = new StringWriter();
+        MatchStatistics statistics = tournament.run(out);
+        assertEquals(4, statistics.getGames());
+        String[] lines = out.toString().split("\n");
+        int games = 0;
+        for (String line : lines) {
+            if (!line.startsWith("#")) {
+                games++;
+                assertEquals(7, line.split("\t").length);
+            }
+        }
+        assertEquals(4, games);
+    }
+
+    /**
+     * Test the promotion policies a board can be given instead of the dialog
+     */
+    @Test
+    public void testPromotionPolicy() {
+        Position position = Position.fromFen("8/4P3/8/8/8/8/k7/4K3 w - - 0 1");
+        assertEquals(Position.QUEEN, PromotionPolicy.QUEEN.choosePromotion(position, 52, 60));
+        assertEquals(Position.KNIGHT, PromotionPolicy.always(Position.KNIGHT).choosePromotion(position, 52, 60));
+    }
+}
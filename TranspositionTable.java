@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * TranspositionTable class remembers search results by position key so transposed positions
+ * are not searched again. Entries live in one long[] with two longs per entry, the key XOR the data
+ * and the data, so there is no object per entry.
+ *
+ * Reads and writes take no locks. A reader recomputes key XOR data and only accepts the entry
+ * when it matches its own key, so an entry half written by another thread is simply a miss.
+ * That lets any number of search threads share one table.
+ *
+ * Data layout: bits 0-19 move, bits 20-35 score, bits 36-43 depth, bits 44-45 bound, bits 46-53 generation.
+ */
+public class TranspositionTable {
+    // bound types
+    public static final int NONE = 0;
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+
+    // default size in megabytes
+    public static final int DEFAULT_SIZE_MB = 16;
+    // bytes used by one entry
+    private static final int ENTRY_BYTES = 16;
+    // scores from here up are mates or tablebase wins, which count plies to mate: a tablebase win is
+    // at most Byte.MAX_VALUE plies from mate in its table and is found at most MAX_PLY plies from the root
+    private static final int DISTANCE_SCORE = Tablebases.WIN - Byte.MAX_VALUE - Search.MAX_PLY;
+
+    private final long[] table;
+    private final long mask;
+    // search counter, entries from older searches are replaced first
+    private volatile int generation;
+
+    /**
+     * Create a table using at most the given amount of memory
+     * @param sizeMb the memory budget in megabytes
+     */
+    public TranspositionTable(int sizeMb) {
+        long entries = Long.highestOneBit(Math.max(1L, (long) sizeMb * 1024 * 1024 / ENTRY_BYTES));
+        // an array index is an int, two longs per entry
+        entries = Math.min(entries, 1L << 29);
+        table = new long[(int) entries * 2];
+        mask = entries - 1;
+    }
+
+    /**
+     * Start a new search, older entries become preferred for replacement
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 255;
+    }
+
+    /**
+     * Remove all the entries
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+    }
+
+    /**
+     * @return the number of entries the table can hold
+     */
+    public long capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Look up a position
+     * @param key the Zobrist key of the position
+     * @return the packed entry data, or 0 if the position is not stored
+     */
+    public long probe(long key) {
+        int index = (int) (key & mask) << 1;
+        long data = table[index + 1];
+        long check = table[index];
+        if ((check ^ data) != key || data == 0) {
+            return 0L;
+        }
+        return data;
+    }
+
+    /**
+     * Store a search result. An entry for another position is only replaced by a search
+     * at least as deep or when it was left over from an earlier search.
+     * @param key the Zobrist key of the position
+     * @param move the best move, or Move.NONE
+     * @param score the score, already adjusted with scoreToTable
+     * @param depth the depth searched
+     * @param bound EXACT, LOWER or UPPER
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int index = (int) (key & mask) << 1;
+        long oldData = table[index + 1];
+        long oldKey = table[index] ^ oldData;
+        if (oldData != 0 && oldKey != key && depth < depth(oldData) && generation(oldData) == generation) {
+            return;
+        }
+        // keep the old best move when the new result has none for the same position
+        if (move == Move.NONE && oldKey == key) {
+            move = move(oldData);
+        }
+        long data = (move & 0xFFFFFL)
+                | ((long) (score & 0xFFFF) << 20)
+                | ((long) (depth & 0xFF) << 36)
+                | ((long) bound << 44)
+                | ((long) generation << 46);
+        table[index] = key ^ data;
+        table[index + 1] = data;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFFF);
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> 20);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 36) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 44) & 3;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 46) & 0xFF;
+    }
+
+    /**
+     * Mate and tablebase scores are stored relative to the node instead of the root
+     * @param score the score from the search
+     * @param ply the distance of the node from the root
+     * @return the score to store
+     */
+    public static int scoreToTable(int score, int ply) {
+        if (score >= DISTANCE_SCORE) {
+            return score + ply;
+        }
+        if (score <= -DISTANCE_SCORE) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    /**
+     * Turn a stored score back into a score relative to the root
+     * @param score the stored score
+     * @param ply the distance of the node from the root
+     * @return the score for the search
+     */
+    public static int scoreFromTable(int score, int ply) {
+        if (score >= DISTANCE_SCORE) {
+            return score - ply;
+        }
+        if (score <= -DISTANCE_SCORE) {
+            return score + ply;
+        }
+        return score;
+    }
+}
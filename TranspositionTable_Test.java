@@ -0,0 +1,117 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * TranspositionTable_Test is a JUnit test class for the Zobrist keys and the TranspositionTable class.
+ */
+public class TranspositionTable_Test {
+
+    /**
+     * Test that the incremental key always equals the key computed from scratch
+     * and is restored when moves are taken back
+     */
+    @Test
+    public void testIncrementalKey() {
+        Position position = Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        checkKeys(position, 3);
+    }
+
+    private void checkKeys(Position position, int depth) {
+        assertEquals(Zobrist.compute(position), position.key());
+        if (depth == 0) {
+            return;
+        }
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(position, moves);
+        long key = position.key();
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            checkKeys(position, depth - 1);
+            position.unmakeMove(moves[i]);
+            assertEquals(key, position.key());
+        }
+    }
+
+    /**
+     * Test that transposed move orders reach the same key
+     */
+    @Test
+    public void testTransposition() {
+        Position a = Position.fromFen(Position.START_FEN);
+        Position b = Position.fromFen(Position.START_FEN);
+        a.makeMove(a.findLegalMove(Move.parseSquare("g1"), Move.parseSquare("f3"), 0));
+        a.makeMove(a.findLegalMove(Move.parseSquare("g8"), Move.parseSquare("f6"), 0));
+        a.makeMove(a.findLegalMove(Move.parseSquare("b1"), Move.parseSquare("c3"), 0));
+        b.makeMove(b.findLegalMove(Move.parseSquare("b1"), Move.parseSquare("c3"), 0));
+        b.makeMove(b.findLegalMove(Move.parseSquare("g8"), Move.parseSquare("f6"), 0));
+        b.makeMove(b.findLegalMove(Move.parseSquare("g1"), Move.parseSquare("f3"), 0));
+        assertEquals(a.key(), b.key());
+        assertNotEquals(a.key(), Position.fromFen(Position.START_FEN).key());
+    }
+
+    /**
+     * Test storing and probing entries
+     */
+    @Test
+    public void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        int move = Move.of(12, 28, Move.DOUBLE_PUSH, 0);
+        table.store(12345L, move, -250, 7, TranspositionTable.LOWER);
+        long entry = table.probe(12345L);
+        assertEquals(move, TranspositionTable.move(entry));
+        assertEquals(-250, TranspositionTable.score(entry));
+        assertEquals(7, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+        // same slot, different key
+        assertEquals(0L, table.probe(12345L + table.capacity()));
+    }
+
+    /**
+     * Test that a shallower result does not replace a deeper one from the same search
+     */
+    @Test
+    public void testDepthPreferredReplacement() {
+        TranspositionTable table = new TranspositionTable(1);
+        long other = 99L + table.capacity();
+        table.store(99L, Move.NONE, 10, 8, TranspositionTable.EXACT);
+        table.store(other, Move.NONE, 20, 3, TranspositionTable.EXACT);
+        assertEquals(8, TranspositionTable.depth(table.probe(99L)));
+        // after a new search the old entry may be replaced
+        table.newSearch();
+        table.store(other, Move.NONE, 20, 3, TranspositionTable.EXACT);
+        assertEquals(0L, table.probe(99L));
+        assertEquals(3, TranspositionTable.depth(table.probe(other)));
+    }
+
+    /**
+     * Test that mate scores are stored relative to the node
+     */
+    @Test
+    public void testMateScores() {
+        int score = Search.MATE - 5;
+        int stored = TranspositionTable.scoreToTable(score, 3);
+        assertEquals(score, TranspositionTable.scoreFromTable(stored, 3));
+        assertEquals(Search.MATE - 4, TranspositionTable.scoreFromTable(stored, 2));
+    }
+
+    /**
+     * Test that tablebase wins and losses are stored relative to the node like mate scores
+     */
+    @Test
+    public void testTablebaseScores() {
+        // a win 20 plies from mate in the table, probed 6 plies from the root
+        int win = Tablebases.WIN - 20 - 6;
+        int stored = TranspositionTable.scoreToTable(win, 6);
+        assertEquals(Tablebases.WIN - 20, stored);
+        assertEquals(Tablebases.WIN - 20 - 2, TranspositionTable.scoreFromTable(stored, 2));
+        int loss = -Tablebases.WIN + 20 + 6;
+        stored = TranspositionTable.scoreToTable(loss, 6);
+        assertEquals(-Tablebases.WIN + 20, stored);
+        assertEquals(loss, TranspositionTable.scoreFromTable(stored, 6));
+        assertEquals(-Tablebases.WIN + 20 + 9, TranspositionTable.scoreFromTable(stored, 9));
+        // the longest win found at the deepest ply is still adjusted, an evaluation never is
+        int longest = Tablebases.WIN - Byte.MAX_VALUE - Search.MAX_PLY;
+        assertEquals(longest + Search.MAX_PLY, TranspositionTable.scoreToTable(longest, Search.MAX_PLY));
+        assertEquals(2500, TranspositionTable.scoreToTable(2500, 10));
+    }
+}
@@ -0,0 +1,430 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UciServer class speaks the Universal Chess Interface, so the engine can be driven by chess GUIs
+ * and tournament managers over standard input and output.
+ *
+ * Commands are read on the calling thread and every search runs on a thread of its own, so stop,
+ * isready and ponderhit are answered while the engine thinks. Each completed depth is reported with
+ * an info line giving the depth, score, nodes, nps, time and principal variation.
+ * The options are Hash (the transposition table size in MB), Threads (the Lazy SMP thread count)
+ * and Ponder.
+ *
+ * Usage: java Main uci
+ */
+public class UciServer {
+    public static final String NAME = "Chess";
+    public static final String AUTHOR = "the Chess authors";
+    public static final int MAX_HASH_MB = 4096;
+    public static final int MAX_THREADS = 256;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private TranspositionTable table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+    private int threads = 1;
+    private ParallelSearch parallelSearch;
+    // the position set by the last position command
+    private Position position = new Position();
+    // the thread of the search in progress, null when idle
+    private Thread searchThread;
+    // stops a ponder search once the time for the move has passed after ponderhit
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "uci-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // the stop scheduled by the last ponderhit, or null
+    private ScheduledFuture<?> scheduledStop;
+    // guards the waiting flag below
+    private final Object lock = new Object();
+    // true while an infinite or ponder search must hold back its bestmove until stop or ponderhit
+    private boolean waiting;
+    // time control a ponder search switches to on ponderhit
+    private TimeControl ponderTime = TimeControl.INFINITE;
+    // System.nanoTime when the search in progress started, for the info lines
+    private volatile long searchStart;
+
+    /**
+     * Constructor for the UciServer class
+     * @param in the stream the commands are read from
+     * @param out the stream the replies are written to
+     */
+    public UciServer(InputStream in, PrintStream out) {
+        this(new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII)), out);
+    }
+
+    /**
+     * Constructor for a server reading from an open reader, such as the console after it read "uci"
+     * @param in the reader the commands are read from
+     * @param out the stream the replies are written to
+     */
+    public UciServer(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+        position.setStartPosition();
+    }
+
+    /**
+     * Read and answer commands until quit or the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!handle(line)) {
+                break;
+            }
+        }
+        stopSearch();
+        if (parallelSearch != null) {
+            parallelSearch.shutdown();
+        }
+        timer.shutdownNow();
+    }
+
+    /**
+     * Answer one command
+     * @param line the command line
+     * @return false if the command was quit
+     */
+    public boolean handle(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                send("id name " + NAME);
+                send("id author " + AUTHOR);
+                send("option name Hash type spin default " + TranspositionTable.DEFAULT_SIZE_MB
+                        + " min 1 max " + MAX_HASH_MB);
+                send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                send("option name Ponder type check default false");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "setoption":
+                stopSearch();
+                setOption(tokens);
+                break;
+            case "ucinewgame":
+                stopSearch();
+                table.clear();
+                break;
+            case "position":
+                stopSearch();
+                setPosition(tokens);
+                break;
+            case "go":
+                stopSearch();
+                go(tokens);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "ponderhit":
+                ponderHit();
+                break;
+            case "quit":
+                return false;
+            default:
+                // the protocol asks engines to ignore unknown commands
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * @return the position set by the last position command
+     */
+    public Position getPosition() {
+        return new Position(position);
+    }
+
+    /**
+     * Handle setoption name Hash value 64 and setoption name Threads value 4
+     */
+    private void setOption(String[] tokens) {
+        StringBuilder name = new StringBuilder();
+        String value = null;
+        int i = 1;
+        if (i < tokens.length && tokens[i].equals("name")) {
+            i++;
+        }
+        // option names may hold spaces, they end at "value"
+        for (; i < tokens.length && !tokens[i].equals("value"); i++) {
+            name.append(name.length() > 0 ? " " : "").append(tokens[i]);
+        }
+        if (i + 1 < tokens.length) {
+            value = tokens[i + 1];
+        }
+        try {
+            switch (name.toString().toLowerCase()) {
+                case "hash":
+                    table = new TranspositionTable(clamp(Integer.parseInt(value), 1, MAX_HASH_MB));
+                    resetThreads();
+                    break;
+                case "threads":
+                    threads = clamp(Integer.parseInt(value), 1, MAX_THREADS);
+                    resetThreads();
+                    break;
+                case "ponder":
+                    // the GUI decides when to ponder, nothing to set up
+                    break;
+                default:
+                    send("info string unknown option " + name);
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            send("info string bad value for option " + name + ": " + value);
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(value, max));
+    }
+
+    private void resetThreads() {
+        if (parallelSearch != null) {
+            parallelSearch.shutdown();
+            parallelSearch = null;
+        }
+    }
+
+    /**
+     * Handle position startpos|fen ... [moves ...]
+     */
+    private void setPosition(String[] tokens) {
+        Position next = new Position();
+        int i = 1;
+        if (i < tokens.length && tokens[i].equals("startpos")) {
+            next.setStartPosition();
+            i++;
+        } else if (i < tokens.length && tokens[i].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+                fen.append(tokens[i]).append(' ');
+            }
+            try {
+                next.setFen(fen.toString().trim());
+            } catch (RuntimeException e) {
+                send("info string bad fen " + fen.toString().trim());
+                return;
+            }
+        } else {
+            return;
+        }
+        if (i < tokens.length && tokens[i].equals("moves")) {
+            for (i++; i < tokens.length; i++) {
+                int move = Move.parse(next, tokens[i]);
+                if (move == Move.NONE) {
+                    send("info string illegal move " + tokens[i]);
+                    break;
+                }
+                next.makeMove(move);
+            }
+        }
+        position = next;
+    }
+
+    /**
+     * Handle go with its limits and start the search thread
+     */
+    private void go(String[] tokens) {
+        long[] times = new long[2];
+        long[] increments = new long[2];
+        int movesToGo = 0;
+        int depth = Search.MAX_PLY;
+        long nodes = Long.MAX_VALUE;
+        long moveTime = 0;
+        boolean infinite = false;
+        boolean ponder = false;
+        try {
+            for (int i = 1; i < tokens.length; i++) {
+                switch (tokens[i]) {
+                    case "wtime":
+                        times[Position.WHITE] = Long.parseLong(tokens[++i]);
+                        break;
+                    case "btime":
+                        times[Position.BLACK] = Long.parseLong(tokens[++i]);
+                        break;
+                    case "winc":
+                        increments[Position.WHITE] = Long.parseLong(tokens[++i]);
+                        break;
+                    case "binc":
+                        increments[Position.BLACK] = Long.parseLong(tokens[++i]);
+                        break;
+                    case "movestogo":
+                        movesToGo = Integer.parseInt(tokens[++i]);
+                        break;
+                    case "depth":
+                        depth = clamp(Integer.parseInt(tokens[++i]), 1, Search.MAX_PLY);
+                        break;
+                    case "nodes":
+                        nodes = Long.parseLong(tokens[++i]);
+                        break;
+                    case "movetime":
+                        moveTime = Long.parseLong(tokens[++i]);
+                        break;
+                    case "infinite":
+                        infinite = true;
+                        break;
+                    case "ponder":
+                        ponder = true;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {
+            send("info string bad go command");
+            return;
+        }
+        int us = position.sideToMove();
+        TimeControl timeControl;
+        if (moveTime > 0) {
+            timeControl = TimeControl.moveTime(moveTime);
+        } else if (times[us] > 0) {
+            timeControl = TimeControl.clock(times[us], increments[us], movesToGo);
+        } else {
+            timeControl = TimeControl.INFINITE;
+        }
+        synchronized (lock) {
+            waiting = infinite || ponder;
+            ponderTime = timeControl;
+        }
+        if (parallelSearch == null) {
+            parallelSearch = new ParallelSearch(table, threads);
+            parallelSearch.setListener(this::sendInfo);
+        }
+        ParallelSearch search = parallelSearch;
+        Position root = new Position(position);
+        // a ponder search has no time limit until ponderhit
+        TimeControl limit = infinite || ponder ? TimeControl.INFINITE : timeControl;
+        int maxDepth = depth;
+        long nodeLimit = nodes;
+        searchStart = System.nanoTime();
+        searchThread = new Thread(() -> {
+            SearchResult result = search.search(root, maxDepth, nodeLimit, limit);
+            // infinite and ponder searches answer only once the GUI says so
+            synchronized (lock) {
+                while (waiting) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            sendBestMove(result);
+        }, "uci-search");
+        searchThread.start();
+    }
+
+    /**
+     * The opponent played the move pondered on: the search goes on as a normal search
+     * and stops once the time for the move has passed
+     */
+    private void ponderHit() {
+        TimeControl timeControl;
+        synchronized (lock) {
+            waiting = false;
+            lock.notifyAll();
+            timeControl = ponderTime;
+        }
+        ParallelSearch search = parallelSearch;
+        if (search != null && !timeControl.isInfinite()) {
+            scheduledStop = timer.schedule(search::stop, timeControl.getSoftLimitMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the search in progress and wait until it has sent its bestmove
+     */
+    private void stopSearch() {
+        if (scheduledStop != null) {
+            // it must not stop the next search
+            scheduledStop.cancel(false);
+            scheduledStop = null;
+        }
+        Thread thread = searchThread;
+        if (thread == null) {
+            return;
+        }
+        synchronized (lock) {
+            waiting = false;
+            lock.notifyAll();
+        }
+        // the search may not have started yet, keep asking until the thread ends
+        while (thread.isAlive()) {
+            parallelSearch.stop();
+            try {
+                thread.join(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        searchThread = null;
+    }
+
+    /**
+     * Report a completed depth, called on the search thread
+     */
+    private void sendInfo(SearchResult result) {
+        long elapsedMs = Math.max(1, (System.nanoTime() - searchStart) / 1000000);
+        StringBuilder line = new StringBuilder("info depth ").append(result.getDepth())
+                .append(" score ").append(scoreString(result.getScore()))
+                .append(" nodes ").append(result.getNodes())
+                .append(" nps ").append(result.getNodes() * 1000 / elapsedMs)
+                .append(" time ").append(elapsedMs)
+                .append(" pv");
+        for (int move : result.getPv()) {
+            line.append(' ').append(Move.toString(move));
+        }
+        send(line.toString());
+    }
+
+    private void sendBestMove(SearchResult result) {
+        int[] pv = result.getPv();
+        String line = "bestmove " + Move.toString(result.getBestMove());
+        if (pv.length > 1) {
+            line += " ponder " + Move.toString(pv[1]);
+        }
+        send(line);
+    }
+
+    /**
+     * Write a score as centipawns or as moves to mate
+     * @param score the search score
+     * @return "cp N" or "mate N", negative when the side to move is mated
+     */
+    static String scoreString(int score) {
+        if (score >= Search.MATE - Search.MAX_PLY) {
+            return "mate " + (Search.MATE - score + 1) / 2;
+        }
+        if (score <= -Search.MATE + Search.MAX_PLY) {
+            return "mate " + -(Search.MATE + score) / 2;
+        }
+        return "cp " + score;
+    }
+
+    /**
+     * Write one line, lines from the command thread and the search thread never mix
+     */
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+public class UciServer_Test {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(output, true);
+    private final UciServer server = new UciServer(new ByteArrayInputStream(new byte[0]), out);
+
+    private String output() {
+        synchronized (out) {
+            return new String(output.toByteArray(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Wait until the server has written a line starting with the prefix
+     * @return the line
+     */
+    private String awaitLine(String prefix, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            for (String line : output().split("\n")) {
+                if (line.startsWith(prefix)) {
+                    return line.trim();
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return null;
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Test the handshake and the options
+     */
+    @Test
+    public void testHandshake() {
+        server.handle("uci");
+        server.handle("setoption name Hash value 1");
+        server.handle("setoption name Threads value 2");
+        server.handle("isready");
+        String text = output();
+        assertTrue(text.contains("option name Hash type spin"));
+        assertTrue(text.contains("option name Threads type spin"));
+        assertTrue(text.contains("uciok"));
+        assertTrue(text.endsWith("readyok" + System.lineSeparator()));
+        assertFalse(text.contains("unknown option"));
+        assertFalse(server.handle("quit"));
+    }
+
+    /**
+     * Test that position plays the moves from the start position or from a FEN
+     */
+    @Test
+    public void testPosition() {
+        server.handle("position startpos moves e2e4 e7e5 g1f3");
+        assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2", server.getPosition().toFen());
+        server.handle("position fen 8/P6k/8/8/8/8/8/K7 w - - 0 1 moves a1b2 h7g6");
+        assertEquals("8/P7/6k1/8/8/8/1K6/8 w - - 2 2", server.getPosition().toFen());
+        // an illegal move leaves the moves before it played
+        server.handle("position startpos moves e2e4 e2e4");
+        assertTrue(server.getPosition().toFen().startsWith("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b"));
+    }
+
+    /**
+     * Test that a depth-limited search reports info lines and a mate in one
+     */
+    @Test
+    public void testGoDepth() throws InterruptedException {
+        server.handle("position fen 6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        server.handle("go depth 3");
+        assertEquals("bestmove a1a8", awaitLine("bestmove", 10000));
+        // the quiescence search finds that the checked king has no move at depth 1, which ends the search
+        String info = awaitLine("info depth 1", 0);
+        assertTrue(info, info.contains(" score mate 1 ") && info.contains(" nps ") && info.endsWith(" pv a1a8"));
+    }
+
+    /**
+     * Test that an infinite search holds back its move until stop and stops quickly
+     */
+    @Test
+    public void testGoInfiniteAndStop() throws InterruptedException {
+        server.handle("position startpos");
+        server.handle("go infinite");
+        assertNotNull(awaitLine("info depth 2", 10000));
+        assertNull(awaitLine("bestmove", 50));
+        long start = System.nanoTime();
+        server.handle("stop");
+        long stopMs = (System.nanoTime() - start) / 1000000;
+        assertNotNull(awaitLine("bestmove", 0));
+        assertTrue("stop took " + stopMs + " ms", stopMs < 500);
+    }
+
+    /**
+     * Test the score notation of mates
+     */
+    @Test
+    public void testScoreString() {
+        assertEquals("cp -35", UciServer.scoreString(-35));
+        assertEquals("mate 1", UciServer.scoreString(Search.MATE - 1));
+        assertEquals("mate 2", UciServer.scoreString(Search.MATE - 3));
+        assertEquals("mate -1", UciServer.scoreString(-Search.MATE + 2));
+    }
+}
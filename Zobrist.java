@@ -0,0 +1,96 @@
+/**
+ * Zobrist class holds the random numbers used to hash positions.
+ * The key of a position is the XOR of one number per piece on its square, one for the castling rights,
+ * one for the en passant file and one when black is to move, so it can be updated move by move.
+ * The pawn key is the XOR of the pawn numbers only and stays the same until a pawn moves or is taken,
+ * see PawnTable.
+ */
+public final class Zobrist {
+    // one key per piece code and square
+    static final long[][] PIECES = new long[12][64];
+    // the same keys for the pawns and 0 for the other pieces, so the pawn key is updated without a branch
+    static final long[][] PAWNS = new long[12][64];
+    // one key per combination of castling rights
+    static final long[] CASTLING = new long[16];
+    // one key per en passant file
+    static final long[] EN_PASSANT = new long[8];
+    // key added when black is to move
+    static final long SIDE;
+
+    static {
+        // fixed seed so keys are the same in every run
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int square = 0; square < 64; square++) {
+                seed = next(seed);
+                PIECES[piece][square] = mix(seed);
+                if (Position.typeOf(piece) == Position.PAWN) {
+                    PAWNS[piece][square] = PIECES[piece][square];
+                }
+            }
+        }
+        for (int i = 0; i < 16; i++) {
+            seed = next(seed);
+            CASTLING[i] = mix(seed);
+        }
+        for (int i = 0; i < 8; i++) {
+            seed = next(seed);
+            EN_PASSANT[i] = mix(seed);
+        }
+        seed = next(seed);
+        SIDE = mix(seed);
+    }
+
+    private Zobrist() {
+    }
+
+    // splitmix64 generator
+    private static long next(long seed) {
+        return seed + 0x9E3779B97F4A7C15L;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Compute the key of a position from scratch
+     * @param position the position
+     * @return the Zobrist key
+     */
+    public static long compute(Position position) {
+        long key = 0L;
+        long occupied = position.occupied();
+        while (occupied != 0) {
+            int square = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            key ^= PIECES[position.pieceAt(square)][square];
+        }
+        key ^= CASTLING[position.castlingRights()];
+        if (position.enPassantSquare() != Position.NO_SQUARE) {
+            key ^= EN_PASSANT[position.enPassantSquare() & 7];
+        }
+        if (position.sideToMove() == Position.BLACK) {
+            key ^= SIDE;
+        }
+        return key;
+    }
+
+    /**
+     * Compute the pawn key of a position from scratch
+     * @param position the position
+     * @return the Zobrist key of the pawns alone
+     */
+    public static long computePawnKey(Position position) {
+        long key = 0L;
+        long pawns = position.pieces(Position.WHITE, Position.PAWN) | position.pieces(Position.BLACK, Position.PAWN);
+        while (pawns != 0) {
+            int square = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            key ^= PAWNS[position.pieceAt(square)][square];
+        }
+        return key;
+    }
+}
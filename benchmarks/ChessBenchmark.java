@@ -0,0 +1,115 @@
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ChessBenchmark class holds the JMH benchmarks of the board and the move generator.
+ * Run it with the JMH runner on the classpath together with the engine classes, and add
+ * "-prof gc" to see the allocation rate next to the timings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChessBenchmark {
+
+    @Param({
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"
+    })
+    public String fen;
+
+    private Position position;
+    private ChessBoard chessBoard;
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private final TranspositionTable table = new TranspositionTable(16);
+
+    @Setup
+    public void setUp() {
+        position = Position.fromFen(fen);
+        chessBoard = new ChessBoard();
+    }
+
+    /**
+     * Play the knights out and back so the board returns to the starting position after each call
+     */
+    @Benchmark
+    public boolean movePiece() {
+        return chessBoard.movePiece(6, 7, 5, 5) & chessBoard.movePiece(6, 0, 5, 2)
+                & chessBoard.movePiece(5, 5, 6, 7) & chessBoard.movePiece(5, 2, 6, 0);
+    }
+
+    @Benchmark
+    public int generateLegal() {
+        return MoveGenerator.generateLegal(position, moves);
+    }
+
+    @Benchmark
+    public int generateCaptures() {
+        return MoveGenerator.generate(position, moves, MoveGenerator.CAPTURES);
+    }
+
+    /**
+     * Generate the moves and play and take back each of them
+     */
+    @Benchmark
+    public int makeUnmake() {
+        int count = MoveGenerator.generateLegal(position, moves);
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            position.unmakeMove(moves[i]);
+        }
+        return count;
+    }
+
+    @Benchmark
+    public boolean isCheck() {
+        return chessBoard.isCheck(true);
+    }
+
+    @Benchmark
+    public boolean isCheckmate() {
+        return chessBoard.isCheckmate();
+    }
+
+    @Benchmark
+    public boolean isStalemate() {
+        return chessBoard.isStalemate();
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return Evaluation.evaluate(position);
+    }
+
+    /**
+     * Fixed depth search, the node count of the result gives the nodes per second
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SearchResult search4() {
+        table.clear();
+        return new Search(position, table).search(4, Long.MAX_VALUE);
+    }
+
+    /**
+     * Perft to depth 3, divide the time by the node count for the cost per node
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long perft3() {
+        return Perft.perft(position, 3);
+    }
+}